@@ -332,7 +332,9 @@ create table y_main_sequence
   nuc_substitutions text,
   nuc_deletions text,
   nuc_insertions text,
-  nuc_unknowns text
+  nuc_unknowns text,
+  nuc_mutations_encoded bytea,
+  aa_mutations_encoded bytea
 );
 
 create table y_main_sequence_columnar
@@ -357,6 +359,24 @@ create table y_main_aa_sequence_columnar
   primary key (gene, position)
 );
 
+-- The changes of the rows of y_main_metadata and y_main_sequence per data version. The transform keeps the ids of the
+-- rows that are still present, so an API instance can apply the changes to the data of the previous version.
+create table y_main_change_log
+(
+  data_version bigint primary key,
+  base_data_version bigint,
+  number_rows integer not null
+);
+
+-- change: 'appended', 'updated' or 'deleted'
+create table y_main_change_log_entry
+(
+  data_version bigint not null,
+  id integer not null,
+  change text not null,
+  primary key (data_version, id)
+);
+
 
 -- Privileges
 
@@ -373,5 +393,7 @@ on
   y_main_sequence_columnar,
   y_main_aa_sequence,
   y_main_aa_sequence_columnar,
+  y_main_change_log,
+  y_main_change_log_entry,
   access_key
 to y_user;
@@ -21,6 +21,11 @@ public class LapisConfig implements Config {
     private Integer redisPort;
     private OpennessLevel apiOpennessLevel;
     private DatabaseConfig s3cVineyard;
+    private Integer columnCacheSizeMB;
+    private Boolean nucColumnsInMemory;
+    private Integer resultCacheSizeMB;
+    private Integer queryParallelism;
+    private String snapshotDirectory;
 
     private String notificationKey;
 
@@ -141,6 +146,55 @@ public class LapisConfig implements Config {
         return this;
     }
 
+    public Integer getColumnCacheSizeMB() {
+        return columnCacheSizeMB;
+    }
+
+    public LapisConfig setColumnCacheSizeMB(Integer columnCacheSizeMB) {
+        this.columnCacheSizeMB = columnCacheSizeMB;
+        return this;
+    }
+
+    public Boolean getNucColumnsInMemory() {
+        return nucColumnsInMemory;
+    }
+
+    public LapisConfig setNucColumnsInMemory(Boolean nucColumnsInMemory) {
+        this.nucColumnsInMemory = nucColumnsInMemory;
+        return this;
+    }
+
+    public Integer getResultCacheSizeMB() {
+        return resultCacheSizeMB;
+    }
+
+    public LapisConfig setResultCacheSizeMB(Integer resultCacheSizeMB) {
+        this.resultCacheSizeMB = resultCacheSizeMB;
+        return this;
+    }
+
+    public Integer getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    public LapisConfig setQueryParallelism(Integer queryParallelism) {
+        this.queryParallelism = queryParallelism;
+        return this;
+    }
+
+    /**
+     * The directory of the binary snapshots of the in-memory database. If it is set, the snapshot is written after the
+     * staging tables were switched in and the API loads the data from it.
+     */
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    public LapisConfig setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+        return this;
+    }
+
     public String getNotificationKey() {
         return notificationKey;
     }
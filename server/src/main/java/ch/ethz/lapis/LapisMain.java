@@ -1,5 +1,7 @@
 package ch.ethz.lapis;
 
+import ch.ethz.lapis.api.query.Database;
+import ch.ethz.lapis.api.query.RowPartitions;
 import ch.ethz.lapis.core.DatabaseService;
 import ch.ethz.lapis.core.GlobalProxyManager;
 import ch.ethz.lapis.core.SubProgram;
@@ -13,6 +15,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -39,6 +43,9 @@ public class LapisMain extends SubProgram<LapisConfig> {
         dbPool = DatabaseService.createDatabaseConnectionPool(LapisMain.globalConfig.getVineyard());
         GlobalProxyManager.setProxyFromConfig(config.getHttpProxy());
         if ("--api".equals(args[0])) {
+            if (config.getQueryParallelism() != null) {
+                RowPartitions.setParallelism(config.getQueryParallelism());
+            }
             String[] argsForSpring = Arrays.copyOfRange(args, 1, args.length);
             System.setProperty("spring.mvc.async.request-timeout", "600000"); // 10 minutes
             SpringApplication app = new SpringApplication(LapisMain.class);
@@ -96,8 +103,16 @@ public class LapisMain extends SubProgram<LapisConfig> {
                         new TransformService(dbPool, config.getMaxNumberWorkers()).mergeFromPangolinAssignment();
                     case UpdateSteps.finalTransforms ->
                         new TransformService(dbPool, config.getMaxNumberWorkers()).finalTransforms();
-                    case UpdateSteps.switchInStaging -> new TransformService(dbPool, config.getMaxNumberWorkers())
-                        .switchInStagingTables();
+                    case UpdateSteps.switchInStaging -> {
+                        // The snapshot is written before the switch so that it exists when the API sees the new
+                        // data version.
+                        long dataVersion = Instant.now().getEpochSecond();
+                        if (config.getSnapshotDirectory() != null) {
+                            Database.writeSnapshotOfStagingTables(dbPool, Path.of(config.getSnapshotDirectory()),
+                                dataVersion);
+                        }
+                        new TransformService(dbPool, config.getMaxNumberWorkers()).switchInStagingTables(dataVersion);
+                    }
                 }
             }
         }
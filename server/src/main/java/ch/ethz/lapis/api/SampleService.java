@@ -8,16 +8,23 @@ import ch.ethz.lapis.api.entity.Versioned;
 import ch.ethz.lapis.api.entity.req.OrderAndLimitConfig;
 import ch.ethz.lapis.api.entity.req.SampleAggregatedRequest;
 import ch.ethz.lapis.api.entity.req.SampleDetailRequest;
+import ch.ethz.lapis.api.entity.req.SampleFilter;
 import ch.ethz.lapis.api.entity.res.Contributor;
+import ch.ethz.lapis.api.entity.res.QueryExplanation;
 import ch.ethz.lapis.api.entity.res.SampleAggregated;
 import ch.ethz.lapis.api.entity.res.SampleDetail;
 import ch.ethz.lapis.api.entity.res.SampleMutationsResponse;
 import ch.ethz.lapis.api.exception.UnsupportedOrdering;
+import ch.ethz.lapis.api.query.AggregatedCube;
+import ch.ethz.lapis.api.query.Bitmaps;
 import ch.ethz.lapis.api.query.Database;
 import ch.ethz.lapis.api.query.Database.Columns;
 import ch.ethz.lapis.api.query.InsertionStore;
 import ch.ethz.lapis.api.query.MutationStore;
 import ch.ethz.lapis.api.query.QueryEngine;
+import ch.ethz.lapis.api.query.QueryPath;
+import ch.ethz.lapis.api.query.RowPartitions;
+import ch.ethz.lapis.api.query.StringColumn;
 import ch.ethz.lapis.util.ReferenceGenomeData;
 import ch.ethz.lapis.util.SeqCompressor;
 import ch.ethz.lapis.util.ZstdSeqCompressor;
@@ -43,6 +50,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -79,11 +88,43 @@ public class SampleService {
     }
 
 
-    public Versioned<List<SampleAggregated>> getAggregatedSamples(
-        SampleAggregatedRequest request
+    /**
+     * @param queryPath Whether the samples were counted from the cube or by the query engine
+     */
+    public record AggregatedSamples(long dataVersion, List<SampleAggregated> samples, QueryPath queryPath) {
+    }
+
+
+    /**
+     * @param useAggregatedCube If true, the request is answered from the pre-aggregated cube if it exists. The request
+     *                          must be supported by the cube (see
+     *                          {@link AggregatedCube#supports(SampleAggregatedRequest)}).
+     */
+    public AggregatedSamples getAggregatedSamples(
+        SampleAggregatedRequest request,
+        boolean useAggregatedCube
     ) throws SQLException {
         Database database = Database.getOrLoadInstance(dbPool);
-        return new Versioned<>(database.getDataVersion(), new QueryEngine().aggregate(database, request));
+        AggregatedCube cube = database.getAggregatedCube();
+        QueryEngine queryEngine = new QueryEngine();
+        // The cube might be missing if a new data version was loaded in the meantime.
+        if (useAggregatedCube && cube != null) {
+            return new AggregatedSamples(database.getDataVersion(), queryEngine.aggregateFromCube(cube, request),
+                QueryPath.CUBE);
+        }
+        return new AggregatedSamples(database.getDataVersion(), queryEngine.aggregate(database, request),
+            QueryPath.ENGINE);
+    }
+
+
+    public boolean hasAggregatedCube() throws SQLException {
+        return Database.getOrLoadInstance(dbPool).getAggregatedCube() != null;
+    }
+
+
+    public Versioned<QueryExplanation> explainQuery(SampleFilter<?> request) throws SQLException {
+        Database database = Database.getOrLoadInstance(dbPool);
+        return new Versioned<>(database.getDataVersion(), new QueryEngine().explain(database, request));
     }
 
 
@@ -236,8 +277,8 @@ public class SampleService {
         // Order and limit
         ids = applyOrderAndLimit(ids, orderAndLimit);
         // Fetch data
-        String[] strainColumn = database.getStringColumn(Database.Columns.STRAIN);
-        return ids.stream().map(id -> strainColumn[id]).collect(Collectors.toList());
+        StringColumn strainColumn = database.getStringColumn(Database.Columns.STRAIN);
+        return ids.stream().map(strainColumn::get).collect(Collectors.toList());
     }
 
 
@@ -254,8 +295,8 @@ public class SampleService {
         // Order and limit
         ids = applyOrderAndLimit(ids, orderAndLimit);
         // Fetch data
-        String[] gisaidEpiIslColumn = database.getStringColumn(Database.Columns.GISAID_EPI_ISL);
-        return ids.stream().map(id -> gisaidEpiIslColumn[id]).collect(Collectors.toList());
+        StringColumn gisaidEpiIslColumn = database.getStringColumn(Database.Columns.GISAID_EPI_ISL);
+        return ids.stream().map(gisaidEpiIslColumn::get).collect(Collectors.toList());
     }
 
 
@@ -272,8 +313,8 @@ public class SampleService {
         // Order and limit
         ids = applyOrderAndLimit(ids, orderAndLimit);
         // Fetch data
-        String[] genbankAccessionColumn = database.getStringColumn(Columns.GENBANK_ACCESSION);
-        return ids.stream().map(id -> genbankAccessionColumn[id]).collect(Collectors.toList());
+        StringColumn genbankAccessionColumn = database.getStringColumn(Columns.GENBANK_ACCESSION);
+        return ids.stream().map(genbankAccessionColumn::get).collect(Collectors.toList());
     }
 
 
@@ -284,15 +325,24 @@ public class SampleService {
     ) throws SQLException {
         Database database = Database.getOrLoadInstance(dbPool);
         ReferenceGenomeData reference = ReferenceGenomeData.getInstance();
-        // Filter
-        List<Integer> ids = new QueryEngine().filterIds(database, request);
-        if (ids.isEmpty()) {
-            return new SampleMutationsResponse();
+        // Requests that only filter by the Pango lineage are answered from the pre-computed profiles of the lineages.
+        QueryEngine queryEngine = new QueryEngine();
+        boolean[] pangoLineages = queryEngine.findPangoLineageGroups(database, request);
+        Function<MutationStore, List<MutationStore.MutationCount>> countMutations;
+        if (pangoLineages != null && database.getNucMutationStore().hasProfiles()) {
+            countMutations = mutationStore -> mutationStore.countMutationsOfGroups(pangoLineages);
+        } else {
+            // Filter
+            long[] matched = queryEngine.matchSampleFilter(database, request);
+            if (Bitmaps.cardinality(matched) == 0) {
+                return new SampleMutationsResponse();
+            }
+            countMutations = mutationStore -> mutationStore.countMutations(matched);
         }
         // Count mutations
         SampleMutationsResponse response = new SampleMutationsResponse();
         if (sequenceType == SequenceType.NUCLEOTIDE) {
-            List<MutationStore.MutationCount> mutationCounts = database.getNucMutationStore().countMutations(ids);
+            List<MutationStore.MutationCount> mutationCounts = countMutations.apply(database.getNucMutationStore());
             for (MutationStore.MutationCount mutationCount : mutationCounts) {
                 if (mutationCount.getProportion() < minProportion) {
                     continue;
@@ -307,9 +357,13 @@ public class SampleService {
                     mutationCount.getProportion(), mutationCount.getCount()));
             }
         } else {
-            database.getAaMutationStores().forEach((gene, mutationStore) -> {
-                List<MutationStore.MutationCount> mutationCounts = mutationStore.countMutations(ids);
-                for (MutationStore.MutationCount mutationCount : mutationCounts) {
+            // The genes are counted in parallel; every gene is in turn counted in parallel over the rows.
+            List<Map.Entry<String, MutationStore>> genes = new ArrayList<>(database.getAaMutationStores().entrySet());
+            List<List<MutationStore.MutationCount>> mutationCountsPerGene = RowPartitions.mapEach(genes,
+                gene -> countMutations.apply(gene.getValue()));
+            for (int i = 0; i < genes.size(); i++) {
+                String gene = genes.get(i).getKey();
+                for (MutationStore.MutationCount mutationCount : mutationCountsPerGene.get(i)) {
                     if (mutationCount.getProportion() < minProportion) {
                         continue;
                     }
@@ -323,7 +377,7 @@ public class SampleService {
                     response.add(new SampleMutationsResponse.MutationEntry(mutString,
                         mutationCount.getProportion(), mutationCount.getCount()));
                 }
-            });
+            }
         }
         return response;
     }
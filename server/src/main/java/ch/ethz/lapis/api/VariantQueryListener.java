@@ -8,63 +8,75 @@ import ch.ethz.lapis.api.parser.VariantQueryBaseListener;
 import ch.ethz.lapis.api.parser.VariantQueryParser;
 import ch.ethz.lapis.api.query.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 
+/**
+ * Builds the (immutable) VariantQueryExpr tree while walking the parse tree. For every operator that is entered, a new
+ * list of operands is pushed to the stack; when the operator is exited, the list is popped and the node is created.
+ */
 public class VariantQueryListener extends VariantQueryBaseListener {
 
-    private Stack<VariantQueryExpr> exprStack = new Stack<>();
+    private final Stack<List<VariantQueryExpr>> operandStack = new Stack<>();
 
     public VariantQueryListener() {
-        exprStack.push(new Single());
+        operandStack.push(new ArrayList<>());
+    }
+
+    private void enterOperator() {
+        operandStack.push(new ArrayList<>());
+    }
+
+    private List<VariantQueryExpr> exitOperator() {
+        return operandStack.pop();
+    }
+
+    private void add(VariantQueryExpr expr) {
+        operandStack.peek().add(expr);
     }
 
     @Override
     public void enterMaybe(VariantQueryParser.MaybeContext ctx) {
-        VariantQueryExpr expr = new Maybe();
-        exprStack.peek().putValue(expr);
-        exprStack.push(expr);
+        enterOperator();
     }
 
     @Override
     public void exitMaybe(VariantQueryParser.MaybeContext ctx) {
-        exprStack.pop();
+        add(new Maybe(exitOperator().get(0)));
     }
 
     @Override
     public void enterAnd(VariantQueryParser.AndContext ctx) {
-        VariantQueryExpr expr = new BiOp(BiOp.OpType.AND);
-        exprStack.peek().putValue(expr);
-        exprStack.push(expr);
+        enterOperator();
     }
 
     @Override
     public void enterOr(VariantQueryParser.OrContext ctx) {
-        VariantQueryExpr expr = new BiOp(BiOp.OpType.OR);
-        exprStack.peek().putValue(expr);
-        exprStack.push(expr);
+        enterOperator();
     }
 
     @Override
     public void enterNeg(VariantQueryParser.NegContext ctx) {
-        VariantQueryExpr expr = new Negation();
-        exprStack.peek().putValue(expr);
-        exprStack.push(expr);
+        enterOperator();
     }
 
     @Override
     public void exitNeg(VariantQueryParser.NegContext ctx) {
-        exprStack.pop();
+        add(new Negation(exitOperator().get(0)));
     }
 
     @Override
     public void exitAnd(VariantQueryParser.AndContext ctx) {
-        exprStack.pop();
+        List<VariantQueryExpr> operands = exitOperator();
+        add(new BiOp(BiOp.OpType.AND, operands.get(0), operands.get(1)));
     }
 
     @Override
     public void exitOr(VariantQueryParser.OrContext ctx) {
-        exprStack.pop();
+        List<VariantQueryExpr> operands = exitOperator();
+        add(new BiOp(BiOp.OpType.OR, operands.get(0), operands.get(1)));
     }
 
     @Override
@@ -77,7 +89,7 @@ public class VariantQueryListener extends VariantQueryBaseListener {
             ctx.pango_include_sub() != null,
             Database.Columns.PANGO_LINEAGE
         );
-        exprStack.peek().putValue(pangoQuery);
+        add(pangoQuery);
     }
 
     @Override
@@ -88,19 +100,19 @@ public class VariantQueryListener extends VariantQueryBaseListener {
             pangoQueryContext.pango_include_sub() != null,
             Database.Columns.NEXTCLADE_PANGO_LINEAGE
         );
-        exprStack.peek().putValue(pangoQuery);
+        add(pangoQuery);
     }
 
     @Override
     public void enterNextstrain_clade_query(VariantQueryParser.Nextstrain_clade_queryContext ctx) {
         NextstrainClade nextstrainClade = new NextstrainClade(ctx.nextstrain_clade().getText());
-        exprStack.peek().putValue(nextstrainClade);
+        add(nextstrainClade);
     }
 
     @Override
     public void enterGisaid_clade_query(VariantQueryParser.Gisaid_clade_queryContext ctx) {
         GisaidClade gisaidClade = new GisaidClade(ctx.gisaid_clade().getText());
-        exprStack.peek().putValue(gisaidClade);
+        add(gisaidClade);
     }
 
     @Override
@@ -110,7 +122,7 @@ public class VariantQueryListener extends VariantQueryBaseListener {
             Integer.parseInt(ctx.position().getText()),
             ctx.aa_mutated() != null ? ctx.aa_mutated().getText().charAt(0) : null
         );
-        exprStack.peek().putValue(aaMutation);
+        add(aaMutation);
     }
 
     @Override
@@ -119,36 +131,34 @@ public class VariantQueryListener extends VariantQueryBaseListener {
             Integer.parseInt(ctx.position().getText()),
             ctx.nuc_mutated() != null ? ctx.nuc_mutated().getText().charAt(0) : null
         );
-        exprStack.peek().putValue(nucMutation);
+        add(nucMutation);
     }
 
     @Override
     public void enterNuc_ins(VariantQueryParser.Nuc_insContext ctx) {
         NucInsertion nucInsertion = NucInsertion.parse(ctx.getText());
-        exprStack.peek().putValue(nucInsertion);
+        add(nucInsertion);
     }
 
     @Override
     public void enterAa_ins(VariantQueryParser.Aa_insContext ctx) {
         AAInsertion aaInsertion = AAInsertion.parse(ctx.getText());
-        exprStack.peek().putValue(aaInsertion);
+        add(aaInsertion);
     }
 
     @Override
     public void enterN_of(VariantQueryParser.N_ofContext ctx) {
-        boolean exactMode = ctx.n_of_exactly() != null;
-        int n = Integer.parseInt(ctx.n_of_n().getText());
-        NOf nOf = new NOf(exactMode, n);
-        exprStack.peek().putValue(nOf);
-        exprStack.push(nOf);
+        enterOperator();
     }
 
     @Override
     public void exitN_of(VariantQueryParser.N_ofContext ctx) {
-        exprStack.pop();
+        boolean exactMode = ctx.n_of_exactly() != null;
+        int n = Integer.parseInt(ctx.n_of_n().getText());
+        add(new NOf(exactMode, n, exitOperator()));
     }
 
     public VariantQueryExpr getExpr() {
-        return exprStack.peek();
+        return operandStack.peek().get(0);
     }
 }
@@ -8,7 +8,9 @@ import ch.ethz.lapis.api.entity.*;
 import ch.ethz.lapis.api.entity.req.*;
 import ch.ethz.lapis.api.entity.res.*;
 import ch.ethz.lapis.api.exception.*;
+import ch.ethz.lapis.api.query.AggregatedCube;
 import ch.ethz.lapis.api.query.InsertionStore;
+import ch.ethz.lapis.api.query.QueryPath;
 import ch.ethz.lapis.util.StopWatch;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -91,16 +93,25 @@ public class SampleController {
         checkDataVersion(generalConfig.getDataVersion());
         checkVariantFilter(request);
         checkDataFormat(generalConfig.getDataFormat(), List.of(DataFormat.JSON, DataFormat.CSV, DataFormat.TSV));
+        if (generalConfig.isExplain()) {
+            // The explanation contains timings and must never be served from a cache.
+            return explainQuery(request);
+        }
+        boolean useAggregatedCube = useAggregatedCube(request);
         stopWatch.round("Cache check");
         ApiCacheKey cacheKey = new ApiCacheKey(CacheService.SupportedEndpoints.SAMPLE_AGGREGATED, request);
+        // Stays CACHE if the body is taken from the cache
+        QueryPath[] queryPath = { QueryPath.CACHE };
         String body = useCacheOrCompute(cacheKey, () -> {
             try {
                 stopWatch.round("Query data");
-                Versioned<List<SampleAggregated>> aggregatedSamples = sampleService.getAggregatedSamples(request);
+                SampleService.AggregatedSamples aggregatedSamples = sampleService.getAggregatedSamples(request,
+                    useAggregatedCube);
+                queryPath[0] = aggregatedSamples.queryPath();
                 stopWatch.round("Result formatting");
                 V1Response<SampleAggregatedResponse> response = new V1Response<>(new SampleAggregatedResponse(
                     request.getFields(),
-                    aggregatedSamples.content()
+                    aggregatedSamples.samples()
                 ), aggregatedSamples.dataVersion(), openness);
                 return objectMapper.writeValueAsString(response);
             } catch (SQLException | JsonProcessingException e) {
@@ -130,11 +141,42 @@ public class SampleController {
             .setForDownload(generalConfig.isDownloadAsFile())
             .setDataFormat(generalConfig.getDataFormat())
             .setDownloadFileName("aggregated")
+            .setQueryPath(queryPath[0].getHeaderValue())
             .setBody(body)
             .build();
     }
 
 
+    /**
+     * Requests that only filter and group by the dimensions of the pre-aggregated cube (i.e., most dashboard requests)
+     * are answered from the cube. All other requests are evaluated by the query engine.
+     */
+    private boolean useAggregatedCube(SampleAggregatedRequest request) {
+        try {
+            return AggregatedCube.supports(request) && sampleService.hasAggregatedCube();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private ResponseEntity<String> explainQuery(SampleFilter<?> request) {
+        try {
+            Versioned<QueryExplanation> explanation = sampleService.explainQuery(request);
+            V1Response<QueryExplanation> response = new V1Response<>(explanation.content(),
+                explanation.dataVersion(), openness);
+            return new SampleResponseBuilder<String>()
+                .setAllowCaching(false)
+                .setDataVersion(dataVersionService.getVersion())
+                .setDataFormat(DataFormat.JSON)
+                .setBody(objectMapper.writeValueAsString(response))
+                .build();
+        } catch (SQLException | JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
     @PostMapping("/aggregated")
     public ResponseEntity<String> getAggregatedPost(
         @RequestBody SampleAggregatedRequest request,
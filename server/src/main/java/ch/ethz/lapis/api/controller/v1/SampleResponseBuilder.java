@@ -16,6 +16,7 @@ public class SampleResponseBuilder<E> {
     private boolean forDownload;
     private String downloadFileName;
     private boolean allowCaching;
+    private String queryPath;
     private DataFormat dataFormat = DataFormat.JSON;
     private E body;
 
@@ -30,6 +31,9 @@ public class SampleResponseBuilder<E> {
         if (dataVersion != null) {
             httpHeaders.set("LAPIS-Data-Version", String.valueOf(dataVersion));
         }
+        if (queryPath != null) {
+            httpHeaders.set("LAPIS-Query-Path", queryPath);
+        }
         if (forDownload) {
             String fileNameWithEnding = downloadFileName + switch (dataFormat) {
                 case CSV -> ".csv";
@@ -107,6 +111,18 @@ public class SampleResponseBuilder<E> {
         return this;
     }
 
+    public String getQueryPath() {
+        return queryPath;
+    }
+
+    /**
+     * @param queryPath How the response was obtained, see {@link ch.ethz.lapis.api.query.QueryPath#getHeaderValue()}
+     */
+    public SampleResponseBuilder<E> setQueryPath(String queryPath) {
+        this.queryPath = queryPath;
+        return this;
+    }
+
     public DataFormat getDataFormat() {
         return dataFormat;
     }
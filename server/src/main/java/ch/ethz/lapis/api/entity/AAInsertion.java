@@ -1,15 +1,17 @@
 package ch.ethz.lapis.api.entity;
 
+import ch.ethz.lapis.api.query.Bitmaps;
 import ch.ethz.lapis.api.query.Database;
 import ch.ethz.lapis.api.query.VariantQueryExpr;
 import ch.ethz.lapis.util.ReferenceGenomeData;
 
 import java.util.List;
+import java.util.Objects;
 
 public class AAInsertion implements VariantQueryExpr {
-    private String gene;
-    private int position;
-    private String query;
+    private final String gene;
+    private final int position;
+    private final String query;
 
     public AAInsertion(String gene, int position, String query) {
         this.gene  = gene;
@@ -32,37 +34,44 @@ public class AAInsertion implements VariantQueryExpr {
         return gene;
     }
 
-    public AAInsertion setGene(String gene) {
-        this.gene = gene;
-        return this;
-    }
-
     public int getPosition() {
         return position;
     }
 
-    public AAInsertion setPosition(int position) {
-        this.position = position;
-        return this;
-    }
-
     public String getQuery() {
         return query;
     }
 
-    public AAInsertion setQuery(String query) {
-        this.query = query;
-        return this;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AAInsertion that = (AAInsertion) o;
+        return Objects.equals(gene, that.gene) && position == that.position && Objects.equals(query, that.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gene, position, query);
+    }
+
+    @Override
+    public String toString() {
+        return "AAInsertion{" +
+            "gene='" + gene + '\'' +
+            ", position=" + position +
+            ", query='" + query + '\'' +
+            '}';
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        boolean[] matched = new boolean[database.size()];
+    public long[] evaluate(Database database) {
+        long[] matched = Bitmaps.allocate(database.size());
         String capitalizedGeneName = ReferenceGenomeData.getInstance().getCorrectlyCapitalizedGeneName(gene);
         List<Integer> ids = database.getAaInsertionStores().get(capitalizedGeneName)
             .find(position + ":" + query);
         for (Integer id : ids) {
-            matched[id] = true;
+            Bitmaps.set(matched, id);
         }
         return matched;
     }
@@ -1,37 +1,40 @@
 package ch.ethz.lapis.api.entity;
 
-import ch.ethz.lapis.api.query.VariantQueryExpr;
+import ch.ethz.lapis.api.query.Bitmaps;
 import ch.ethz.lapis.api.query.Database;
+import ch.ethz.lapis.api.query.VariantQueryExpr;
 import ch.ethz.lapis.util.ReferenceGenomeData;
 import ch.ethz.lapis.util.Utils;
+import java.util.Objects;
 
 public class AAMutation implements VariantQueryExpr {
 
     private static final ReferenceGenomeData referenceGenome = ReferenceGenomeData.getInstance();
 
-    private String gene;
+    private final String gene;
 
-    private int position;
+    private final int position;
 
-    private Character mutation;
+    private final Character mutation;
 
     /**
      * If true, unknowns will be mapped to true during the evaluation. If false, unknowns will be mapped to false.
      */
-    private boolean applyMaybe = false;
-
-    public AAMutation() {
-    }
+    private final boolean applyMaybe;
 
     public AAMutation(String gene, int position) {
-        this.gene = gene;
-        this.position = position;
+        this(gene, position, null);
     }
 
     public AAMutation(String gene, int position, Character mutation) {
+        this(gene, position, mutation, false);
+    }
+
+    public AAMutation(String gene, int position, Character mutation, boolean applyMaybe) {
         this.gene = gene;
         this.position = position;
         this.mutation = mutation;
+        this.applyMaybe = applyMaybe;
     }
 
     /**
@@ -55,36 +58,29 @@ public class AAMutation implements VariantQueryExpr {
         return gene;
     }
 
-    public AAMutation setGene(String gene) {
-        this.gene = gene;
-        return this;
-    }
-
     public int getPosition() {
         return position;
     }
 
-    public AAMutation setPosition(int position) {
-        this.position = position;
-        return this;
-    }
-
     public Character getMutation() {
         return mutation;
     }
 
-    public AAMutation setMutation(Character mutation) {
-        this.mutation = mutation;
-        return this;
-    }
-
     public boolean isApplyMaybe() {
         return applyMaybe;
     }
 
-    public AAMutation setApplyMaybe(boolean applyMaybe) {
-        this.applyMaybe = applyMaybe;
-        return this;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AAMutation that = (AAMutation) o;
+        return Objects.equals(gene, that.gene) && position == that.position && Objects.equals(mutation, that.mutation) && applyMaybe == that.applyMaybe;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gene, position, mutation, applyMaybe);
     }
 
     @Override
@@ -93,23 +89,93 @@ public class AAMutation implements VariantQueryExpr {
             "gene='" + gene + '\'' +
             ", position=" + position +
             ", mutation=" + mutation +
+            ", applyMaybe=" + applyMaybe +
             '}';
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        char[] data = database.getAAArray(gene, position);
-        boolean[] result = new boolean[data.length];
-        if (!applyMaybe) {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = isMatchingMutation(data[i], this);
+    public long[] evaluate(Database database) {
+        return evaluate(database, null);
+    }
+
+    /**
+     * @param candidates The rows to evaluate or null to evaluate all rows
+     */
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return match(database, gene, position, getAcceptedBases(), candidates);
+    }
+
+    /**
+     * The condition only has to be evaluated once per possible amino acid.
+     *
+     * @return A table that specifies for every amino acid (as byte, i.e., the index is base &amp; 0xFF) whether it
+     *     fulfills the condition
+     */
+    public boolean[] getAcceptedBases() {
+        boolean[] acceptedBases = new boolean[256];
+        for (int b = 0; b < acceptedBases.length; b++) {
+            char base = (char) (byte) b;
+            acceptedBases[b] = applyMaybe ? isMaybeMatchingMutation(base, this) : isMatchingMutation(base, this);
+        }
+        return acceptedBases;
+    }
+
+    /**
+     * Finds the rows whose amino acid at the position is accepted.
+     *
+     * @param acceptedBases See {@link #getAcceptedBases()}
+     * @param candidates The rows to evaluate or null to evaluate all rows
+     */
+    public static long[] match(
+        Database database,
+        String gene,
+        int position,
+        boolean[] acceptedBases,
+        long[] candidates
+    ) {
+        String indexedBases = findIndexedBases(gene, position, acceptedBases);
+        if (indexedBases != null) {
+            String geneName = referenceGenome.getCorrectlyCapitalizedGeneName(gene);
+            long[] rows = database.getAaMutationStores().get(geneName)
+                .findRowsWithMutation((short) position, indexedBases);
+            if (rows != null) {
+                if (candidates != null) {
+                    Bitmaps.and(rows, candidates);
+                }
+                return rows;
             }
-        } else {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = isMaybeMatchingMutation(data[i], this);
+        }
+        byte[] data = database.getAAArray(gene, position);
+        return candidates != null ?
+            Bitmaps.match(data, acceptedBases, candidates) : Bitmaps.match(data, acceptedBases);
+    }
+
+    /**
+     * The mutation store contains exactly the rows in which the amino acid differs from the reference and is not
+     * unknown (X). Rows without a sequence are neither mutated nor unknown in the store, so X has to be evaluated on
+     * the column.
+     *
+     * @return The accepted amino acids if they can be looked up in the index of the mutation store, otherwise null
+     */
+    private static String findIndexedBases(String gene, int position, boolean[] acceptedBases) {
+        String geneName = referenceGenome.getCorrectlyCapitalizedGeneName(gene);
+        char[] reference = geneName != null ? referenceGenome.getGeneAASequencesArr().get(geneName) : null;
+        if (reference == null || position <= 0 || position > reference.length) {
+            return null;
+        }
+        char referenceBase = reference[position - 1];
+        StringBuilder bases = new StringBuilder();
+        for (int b = 0; b < acceptedBases.length; b++) {
+            if (acceptedBases[b]) {
+                char base = (char) b;
+                if (base == 'X' || base == referenceBase) {
+                    return null;
+                }
+                bases.append(base);
             }
         }
-        return result;
+        return bases.toString();
     }
 
     public static boolean isMatchingMutation(Character foundBase, AAMutation searchedMutation) {
@@ -1,13 +1,15 @@
 package ch.ethz.lapis.api.entity;
 
+import ch.ethz.lapis.api.query.Bitmaps;
 import ch.ethz.lapis.api.query.Database;
 import ch.ethz.lapis.api.query.VariantQueryExpr;
 
 import java.util.List;
+import java.util.Objects;
 
 public class NucInsertion implements VariantQueryExpr {
-    private int position;
-    private String query;
+    private final int position;
+    private final String query;
 
     public NucInsertion(int position, String query) {
         this.position = position;
@@ -29,26 +31,37 @@ public class NucInsertion implements VariantQueryExpr {
         return position;
     }
 
-    public NucInsertion setPosition(int position) {
-        this.position = position;
-        return this;
-    }
-
     public String getQuery() {
         return query;
     }
 
-    public NucInsertion setQuery(String query) {
-        this.query = query;
-        return this;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NucInsertion that = (NucInsertion) o;
+        return position == that.position && Objects.equals(query, that.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(position, query);
+    }
+
+    @Override
+    public String toString() {
+        return "NucInsertion{" +
+            "position=" + position +
+            ", query='" + query + '\'' +
+            '}';
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        boolean[] matched = new boolean[database.size()];
+    public long[] evaluate(Database database) {
+        long[] matched = Bitmaps.allocate(database.size());
         List<Integer> ids = database.getNucInsertionStore().find(position + ":" + query);
         for (Integer id : ids) {
-            matched[id] = true;
+            Bitmaps.set(matched, id);
         }
         return matched;
     }
@@ -1,11 +1,14 @@
 package ch.ethz.lapis.api.entity;
 
+import ch.ethz.lapis.api.query.Bitmaps;
 import ch.ethz.lapis.api.query.Database;
+import ch.ethz.lapis.api.query.PackedNucleotideStore;
 import ch.ethz.lapis.api.query.VariantQueryExpr;
 import ch.ethz.lapis.util.ReferenceGenomeData;
 import ch.ethz.lapis.util.Utils;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class NucMutation implements VariantQueryExpr {
@@ -26,26 +29,28 @@ public class NucMutation implements VariantQueryExpr {
        put('X', Set.of('G', 'A', 'T', 'C', '-'));
     }};
 
-    private int position;
+    private final int position;
 
-    private Character mutation;
+    private final Character mutation;
 
     /**
      * If true, unknowns/ambiguity will be mapped to true during the evaluation. If false, unknowns/ambiguity will be
      * mapped to false.
      */
-    private boolean applyMaybe = false;
-
-    public NucMutation() {
-    }
+    private final boolean applyMaybe;
 
     public NucMutation(int position) {
-        this.position = position;
+        this(position, null);
     }
 
     public NucMutation(int position, Character mutation) {
+        this(position, mutation, false);
+    }
+
+    public NucMutation(int position, Character mutation, boolean applyMaybe) {
         this.position = position;
         this.mutation = mutation;
+        this.applyMaybe = applyMaybe;
     }
 
     /**
@@ -67,27 +72,25 @@ public class NucMutation implements VariantQueryExpr {
         return position;
     }
 
-    public NucMutation setPosition(int position) {
-        this.position = position;
-        return this;
-    }
-
     public Character getMutation() {
         return mutation;
     }
 
-    public NucMutation setMutation(Character mutation) {
-        this.mutation = mutation;
-        return this;
-    }
-
     public boolean isApplyMaybe() {
         return applyMaybe;
     }
 
-    public NucMutation setApplyMaybe(boolean applyMaybe) {
-        this.applyMaybe = applyMaybe;
-        return this;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NucMutation that = (NucMutation) o;
+        return position == that.position && Objects.equals(mutation, that.mutation) && applyMaybe == that.applyMaybe;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(position, mutation, applyMaybe);
     }
 
     @Override
@@ -95,23 +98,92 @@ public class NucMutation implements VariantQueryExpr {
         return "NucMutation{" +
             "position=" + position +
             ", mutation=" + mutation +
+            ", applyMaybe=" + applyMaybe +
             '}';
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        char[] data = database.getNucArray(position);
-        boolean[] result = new boolean[data.length];
-        if (!applyMaybe) {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = isMatchingMutation(data[i], this);
+    public long[] evaluate(Database database) {
+        return evaluate(database, null);
+    }
+
+    /**
+     * @param candidates The rows to evaluate or null to evaluate all rows
+     */
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return match(database, position, getAcceptedBases(), candidates);
+    }
+
+    /**
+     * The condition only has to be evaluated once per possible base.
+     *
+     * @return A table that specifies for every base (as byte, i.e., the index is base &amp; 0xFF) whether it fulfills
+     *     the condition
+     */
+    public boolean[] getAcceptedBases() {
+        boolean[] acceptedBases = new boolean[256];
+        for (int b = 0; b < acceptedBases.length; b++) {
+            char base = (char) (byte) b;
+            acceptedBases[b] = applyMaybe ? isMaybeMatchingMutation(base, this) : isMatchingMutation(base, this);
+        }
+        return acceptedBases;
+    }
+
+    /**
+     * Finds the rows whose base at the position is accepted.
+     *
+     * @param acceptedBases See {@link #getAcceptedBases()}
+     * @param candidates The rows to evaluate or null to evaluate all rows
+     */
+    public static long[] match(Database database, int position, boolean[] acceptedBases, long[] candidates) {
+        String indexedBases = findIndexedBases(position, acceptedBases);
+        if (indexedBases != null) {
+            long[] rows = database.getNucMutationStore().findRowsWithMutation((short) position, indexedBases);
+            if (rows != null) {
+                if (candidates != null) {
+                    Bitmaps.and(rows, candidates);
+                }
+                return rows;
             }
-        } else {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = isMaybeMatchingMutation(data[i], this);
+        }
+        PackedNucleotideStore packedStore = database.getPackedNucStore();
+        if (packedStore != null && packedStore.hasColumn(position)) {
+            boolean[] acceptedCodes = new boolean[PackedNucleotideStore.BASES.length];
+            for (int code = 0; code < acceptedCodes.length; code++) {
+                acceptedCodes[code] = acceptedBases[PackedNucleotideStore.BASES[code]];
+            }
+            return candidates != null ?
+                packedStore.match(position, acceptedCodes, candidates) : packedStore.match(position, acceptedCodes);
+        }
+        byte[] data = database.getNucArray(position);
+        return candidates != null ?
+            Bitmaps.match(data, acceptedBases, candidates) : Bitmaps.match(data, acceptedBases);
+    }
+
+    /**
+     * The mutation store contains exactly the rows in which the base is an A, C, G or T that differs from the
+     * reference. Deletions at the start and the end of a sequence and ambiguous bases are stored as unknowns, so all
+     * other conditions have to be evaluated on the column.
+     *
+     * @return The accepted bases if they can be looked up in the index of the mutation store, otherwise null
+     */
+    private static String findIndexedBases(int position, boolean[] acceptedBases) {
+        if (position <= 0 || position > referenceGenome.getNucleotideSequenceArr().length) {
+            return null;
+        }
+        char referenceBase = referenceGenome.getNucleotideBase(position);
+        StringBuilder bases = new StringBuilder();
+        for (int b = 0; b < acceptedBases.length; b++) {
+            if (acceptedBases[b]) {
+                char base = (char) b;
+                if ("ACGT".indexOf(base) < 0 || base == referenceBase) {
+                    return null;
+                }
+                bases.append(base);
             }
         }
-        return result;
+        return bases.toString();
     }
 
     public static boolean isMatchingMutation(Character foundBase, NucMutation searchedMutation) {
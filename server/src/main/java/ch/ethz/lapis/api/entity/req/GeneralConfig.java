@@ -6,6 +6,7 @@ public class GeneralConfig {
     private Long dataVersion;
     private boolean downloadAsFile = false;
     private DataFormat dataFormat = DataFormat.JSON;
+    private boolean explain = false;
 
     public Long getDataVersion() {
         return dataVersion;
@@ -33,4 +34,13 @@ public class GeneralConfig {
         this.dataFormat = dataFormat;
         return this;
     }
+
+    public boolean isExplain() {
+        return explain;
+    }
+
+    public GeneralConfig setExplain(boolean explain) {
+        this.explain = explain;
+        return this;
+    }
 }
@@ -0,0 +1,152 @@
+package ch.ethz.lapis.api.entity.res;
+
+import java.util.List;
+
+/**
+ * Describes how a sample filter was evaluated: the time spent in the metadata filters and in the variant query and the
+ * executed plan of the variant query.
+ */
+public class QueryExplanation {
+
+    private double metadataFilterTimeMs;
+    private int numberCandidates;
+    private double variantQueryTimeMs;
+    private int numberMatched;
+    private Node plan;
+
+    public double getMetadataFilterTimeMs() {
+        return metadataFilterTimeMs;
+    }
+
+    public QueryExplanation setMetadataFilterTimeMs(double metadataFilterTimeMs) {
+        this.metadataFilterTimeMs = metadataFilterTimeMs;
+        return this;
+    }
+
+    /**
+     * The number of rows that remain after applying the metadata filters
+     */
+    public int getNumberCandidates() {
+        return numberCandidates;
+    }
+
+    public QueryExplanation setNumberCandidates(int numberCandidates) {
+        this.numberCandidates = numberCandidates;
+        return this;
+    }
+
+    public double getVariantQueryTimeMs() {
+        return variantQueryTimeMs;
+    }
+
+    public QueryExplanation setVariantQueryTimeMs(double variantQueryTimeMs) {
+        this.variantQueryTimeMs = variantQueryTimeMs;
+        return this;
+    }
+
+    public int getNumberMatched() {
+        return numberMatched;
+    }
+
+    public QueryExplanation setNumberMatched(int numberMatched) {
+        this.numberMatched = numberMatched;
+        return this;
+    }
+
+    /**
+     * The plan of the variant query or null if the filter does not have a variant query
+     */
+    public Node getPlan() {
+        return plan;
+    }
+
+    public QueryExplanation setPlan(Node plan) {
+        this.plan = plan;
+        return this;
+    }
+
+
+    public static class Node {
+
+        private String operator;
+        private String expression;
+        private double estimatedSelectivity;
+        private int inputRows;
+        private int outputRows;
+        private double timeMs;
+        private boolean fromCache;
+        private List<Node> children;
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Node setOperator(String operator) {
+            this.operator = operator;
+            return this;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        public Node setExpression(String expression) {
+            this.expression = expression;
+            return this;
+        }
+
+        public double getEstimatedSelectivity() {
+            return estimatedSelectivity;
+        }
+
+        public Node setEstimatedSelectivity(double estimatedSelectivity) {
+            this.estimatedSelectivity = estimatedSelectivity;
+            return this;
+        }
+
+        public int getInputRows() {
+            return inputRows;
+        }
+
+        public Node setInputRows(int inputRows) {
+            this.inputRows = inputRows;
+            return this;
+        }
+
+        public int getOutputRows() {
+            return outputRows;
+        }
+
+        public Node setOutputRows(int outputRows) {
+            this.outputRows = outputRows;
+            return this;
+        }
+
+        public double getTimeMs() {
+            return timeMs;
+        }
+
+        public Node setTimeMs(double timeMs) {
+            this.timeMs = timeMs;
+            return this;
+        }
+
+        public boolean isFromCache() {
+            return fromCache;
+        }
+
+        public Node setFromCache(boolean fromCache) {
+            this.fromCache = fromCache;
+            return this;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public Node setChildren(List<Node> children) {
+            this.children = children;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.AAMutation;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Combines several mutations at the same amino acid position of a gene with AND or OR, see {@link NucMutationSet}.
+ */
+public class AAMutationSet implements VariantQueryExpr {
+
+    private final BiOp.OpType opType;
+
+    private final String gene;
+
+    private final int position;
+
+    private final List<AAMutation> mutations;
+
+    private final boolean[] acceptedBases;
+
+    public AAMutationSet(BiOp.OpType opType, List<AAMutation> mutations) {
+        this.opType = opType;
+        this.gene = mutations.get(0).getGene();
+        this.position = mutations.get(0).getPosition();
+        this.mutations = List.copyOf(mutations);
+        this.acceptedBases = BiOp.combine(opType, mutations.stream().map(m -> {
+            if (!m.getGene().equalsIgnoreCase(gene) || m.getPosition() != position) {
+                throw new IllegalArgumentException("All mutations must be at the position " + gene + ":" + position);
+            }
+            return m.getAcceptedBases();
+        }).collect(Collectors.toList()));
+    }
+
+    @Override
+    public long[] evaluate(Database database) {
+        return AAMutation.match(database, gene, position, acceptedBases, null);
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return AAMutation.match(database, gene, position, acceptedBases, candidates);
+    }
+
+    public BiOp.OpType getOpType() {
+        return opType;
+    }
+
+    boolean[] getAcceptedBases() {
+        return acceptedBases;
+    }
+
+    public List<AAMutation> getMutations() {
+        return mutations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AAMutationSet that = (AAMutationSet) o;
+        return opType == that.opType && Objects.equals(mutations, that.mutations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(opType, mutations);
+    }
+
+    @Override
+    public String toString() {
+        return "AAMutationSet{" +
+            "opType=" + opType +
+            ", mutations=" + mutations +
+            '}';
+    }
+}
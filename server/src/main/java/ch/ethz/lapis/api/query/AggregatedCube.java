@@ -0,0 +1,239 @@
+package ch.ethz.lapis.api.query;
+
+import static ch.ethz.lapis.api.query.Database.Columns.COUNTRY;
+import static ch.ethz.lapis.api.query.Database.Columns.DATE;
+import static ch.ethz.lapis.api.query.Database.Columns.DIVISION;
+import static ch.ethz.lapis.api.query.Database.Columns.NEXTSTRAIN_CLADE;
+import static ch.ethz.lapis.api.query.Database.Columns.PANGO_LINEAGE;
+import static ch.ethz.lapis.api.query.Database.Columns.REGION;
+
+import ch.ethz.lapis.api.entity.AggregationField;
+import ch.ethz.lapis.api.entity.req.SampleAggregatedRequest;
+import ch.ethz.lapis.api.entity.req.SampleFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A pre-aggregated data cube: the number of sequences for every combination of the dimensions that most aggregated
+ * requests group and filter by (region, country, division, Pango lineage, Nextstrain clade and date). It is built when
+ * a data version is loaded and answers the requests that only use these dimensions (see
+ * {@link #supports(SampleAggregatedRequest)}) without scanning the rows.
+ * <p>
+ * The combinations (cells) are stored as keys packed by a {@link GroupKeyPacker}. The date occupies the highest bits
+ * and the keys are sorted so that a date range corresponds to a contiguous range of cells.
+ */
+public class AggregatedCube {
+
+    private static final List<String> DIMENSIONS = List.of(
+        REGION, COUNTRY, DIVISION, PANGO_LINEAGE, NEXTSTRAIN_CLADE, DATE);
+
+    /**
+     * The aggregation fields in the order of the dimensions
+     */
+    private static final List<AggregationField> FIELDS = List.of(
+        AggregationField.REGION, AggregationField.COUNTRY, AggregationField.DIVISION, AggregationField.PANGOLINEAGE,
+        AggregationField.NEXTSTRAINCLADE, AggregationField.DATE);
+
+    private static final int DATE_INDEX = DIMENSIONS.indexOf(DATE);
+
+    private final Database database;
+    private final GroupKeyPacker packer;
+    private final long[] keys;
+    private final int[] counts;
+
+    private AggregatedCube(Database database, GroupKeyPacker packer, long[] keys, int[] counts) {
+        this.database = database;
+        this.packer = packer;
+        this.keys = keys;
+        this.counts = counts;
+    }
+
+
+    /**
+     * @return The cube or null if the combinations of the dimensions cannot be packed into a long
+     */
+    public static AggregatedCube build(Database database) {
+        GroupKeyPacker packer = GroupKeyPacker.create(database, DIMENSIONS);
+        if (packer == null) {
+            return null;
+        }
+        int size = database.size();
+        List<LongIntHashMap> partialCounts = RowPartitions.map((size + 63) >>> 6, (fromWord, toWord) -> {
+            LongIntHashMap partitionCounts = new LongIntHashMap();
+            for (int i = fromWord << 6; i < Math.min(toWord << 6, size); i++) {
+                partitionCounts.addTo(packer.pack(i), 1);
+            }
+            return partitionCounts;
+        });
+        LongIntHashMap mergedCounts = partialCounts.get(0);
+        for (LongIntHashMap partitionCounts : partialCounts.subList(1, partialCounts.size())) {
+            partitionCounts.forEach(mergedCounts::addTo);
+        }
+        long[] keys = new long[mergedCounts.size()];
+        int[] index = { 0 };
+        mergedCounts.forEach((key, count) -> keys[index[0]++] = key);
+        Arrays.sort(keys);
+        int[] counts = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            counts[i] = mergedCounts.get(keys[i]);
+        }
+        return new AggregatedCube(database, packer, keys, counts);
+    }
+
+
+    /**
+     * A request can be answered by the cube if it only groups by and filters (by equality or, for the date, by a
+     * range) on the dimensions of the cube. In particular, it must not have a variant query or mutation filters.
+     */
+    public static boolean supports(SampleAggregatedRequest request) {
+        return FIELDS.containsAll(request.getFields()) && filtersOnlyDimensions(request);
+    }
+
+
+    /**
+     * @return True if the request does not filter by anything else than the dimensions of the cube
+     */
+    static boolean filtersOnlyDimensions(SampleFilter<?> request) {
+        return Stream.of(
+            request.getGenbankAccession(), request.getSraAccession(), request.getGisaidEpiIsl(), request.getStrain(),
+            request.getDateSubmittedFrom(), request.getDateSubmittedTo(), request.getYearFrom(), request.getYearTo(),
+            request.getYearMonthFrom(), request.getYearMonthTo(), request.getLocation(), request.getRegionExposure(),
+            request.getCountryExposure(), request.getDivisionExposure(), request.getAgeFrom(), request.getAgeTo(),
+            request.getSex(), request.getHospitalized(), request.getDied(), request.getFullyVaccinated(),
+            request.getHost(), request.getSamplingStrategy(), request.getNextcladePangoLineage(),
+            request.getGisaidClade(), request.getSubmittingLab(), request.getOriginatingLab(),
+            request.getNextcladeQcOverallScoreFrom(), request.getNextcladeQcOverallScoreTo(),
+            request.getNextcladeQcMissingDataScoreFrom(), request.getNextcladeQcMissingDataScoreTo(),
+            request.getNextcladeQcMixedSitesScoreFrom(), request.getNextcladeQcMixedSitesScoreTo(),
+            request.getNextcladeQcPrivateMutationsScoreFrom(), request.getNextcladeQcPrivateMutationsScoreTo(),
+            request.getNextcladeQcSnpClustersScoreFrom(), request.getNextcladeQcSnpClustersScoreTo(),
+            request.getNextcladeQcFrameShiftsScoreFrom(), request.getNextcladeQcFrameShiftsScoreTo(),
+            request.getNextcladeQcStopCodonsScoreFrom(), request.getNextcladeQcStopCodonsScoreTo(),
+            request.getNextcladeCoverageFrom(), request.getNextcladeCoverageTo(),
+            request.getNucMutations(), request.getAaMutations(), request.getNucInsertions(), request.getAaInsertions(),
+            request.getVariantQuery()
+        ).allMatch(value -> value == null || (value instanceof Collection<?> c && c.isEmpty()));
+    }
+
+
+    public int getNumberCells() {
+        return keys.length;
+    }
+
+
+    /**
+     * Counts the sequences per group. The filters have the same semantics as in {@link QueryEngine}.
+     *
+     * @param request A request that is supported by the cube
+     * @return The counts per group with the values in the order of the requested fields; dates are given as epoch days.
+     */
+    public Map<List<Object>, Integer> count(SampleAggregatedRequest request) {
+        Map<List<Object>, Integer> result = new HashMap<>();
+
+        // Date range
+        int fromCell = 0;
+        int toCell = keys.length;
+        if (request.getDateFrom() != null || request.getDateTo() != null) {
+            int from = request.getDateFrom() != null ? Database.dateToInt(request.getDateFrom()) : Integer.MIN_VALUE;
+            int to = request.getDateTo() != null ? Database.dateToInt(request.getDateTo()) : Integer.MAX_VALUE;
+            // The codes are ordered by the date; code 0 (null) never matches a range.
+            int numberCodes = packer.getNumberCodes(DATE_INDEX);
+            int firstCode = numberCodes;
+            int lastCode = 0;
+            for (int code = 1; code < numberCodes; code++) {
+                int date = (Integer) packer.decode(DATE_INDEX, code);
+                if (date >= from && date <= to) {
+                    firstCode = Math.min(firstCode, code);
+                    lastCode = code;
+                }
+            }
+            int shift = packer.getShift(DATE_INDEX);
+            if (firstCode > lastCode) {
+                toCell = 0;
+            } else {
+                fromCell = lowerBound((long) firstCode << shift);
+                toCell = lastCode + 1 < numberCodes ? lowerBound((long) (lastCode + 1) << shift) : keys.length;
+            }
+        }
+
+        // Filters on the string dimensions
+        boolean[][] acceptedCodes = new boolean[DIMENSIONS.size()][];
+        acceptedCodes[DIMENSIONS.indexOf(REGION)] = findCodes(REGION, request.getRegion(), true);
+        acceptedCodes[DIMENSIONS.indexOf(COUNTRY)] = findCodes(COUNTRY, request.getCountry(), true);
+        acceptedCodes[DIMENSIONS.indexOf(DIVISION)] = findCodes(DIVISION, request.getDivision(), true);
+        acceptedCodes[DIMENSIONS.indexOf(NEXTSTRAIN_CLADE)] =
+            findCodes(NEXTSTRAIN_CLADE, request.getNextstrainClade(), false);
+        String pangoLineage = request.getPangoLineage();
+        if (pangoLineage != null) {
+            PangoQuery pangoQuery = pangoLineage.endsWith("*") ?
+                new PangoQuery(pangoLineage.substring(0, pangoLineage.length() - 1), true, PANGO_LINEAGE) :
+                new PangoQuery(pangoLineage, false, PANGO_LINEAGE);
+            acceptedCodes[DIMENSIONS.indexOf(PANGO_LINEAGE)] = pangoQuery.findAcceptedCodes(database,
+                database.getStringColumn(PANGO_LINEAGE));
+        }
+
+        // Group by removing the bits of the other dimensions from the keys
+        List<AggregationField> fields = request.getFields();
+        long groupMask = 0;
+        for (AggregationField field : fields) {
+            groupMask |= packer.getColumnMask(FIELDS.indexOf(field));
+        }
+        LongIntHashMap groupCounts = new LongIntHashMap();
+        for (int cell = fromCell; cell < toCell; cell++) {
+            long key = keys[cell];
+            if (isAccepted(key, acceptedCodes)) {
+                groupCounts.addTo(key & groupMask, counts[cell]);
+            }
+        }
+        groupCounts.forEach((key, count) -> {
+            List<Object> values = new ArrayList<>(fields.size());
+            for (AggregationField field : fields) {
+                int dimension = FIELDS.indexOf(field);
+                values.add(packer.decode(dimension, packer.getCode(key, dimension)));
+            }
+            result.put(values, count);
+        });
+        if (fields.isEmpty() && result.isEmpty()) {
+            // Like the query engine, the total count is always returned.
+            result.put(List.of(), 0);
+        }
+        return result;
+    }
+
+
+    private boolean isAccepted(long key, boolean[][] acceptedCodes) {
+        for (int dimension = 0; dimension < acceptedCodes.length; dimension++) {
+            boolean[] accepted = acceptedCodes[dimension];
+            if (accepted != null && !accepted[packer.getCode(key, dimension)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return The accepted dictionary codes or null if there is no filter
+     */
+    private boolean[] findCodes(String columnName, String value, boolean caseSensitive) {
+        if (value == null) {
+            return null;
+        }
+        StringColumn column = database.getStringColumn(columnName);
+        return caseSensitive ? column.findCodes(value::equals) : column.findCodes(value::equalsIgnoreCase);
+    }
+
+
+    /**
+     * @return The index of the first cell with a key that is not smaller than the given key
+     */
+    private int lowerBound(long key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? index : -index - 1;
+    }
+}
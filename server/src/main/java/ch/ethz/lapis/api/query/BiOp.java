@@ -1,5 +1,8 @@
 package ch.ethz.lapis.api.query;
 
+import java.util.List;
+import java.util.Objects;
+
 public class BiOp implements VariantQueryExpr {
 
     public enum OpType {
@@ -9,40 +12,55 @@ public class BiOp implements VariantQueryExpr {
 
     private final OpType opType;
 
-    private VariantQueryExpr left;
+    private final VariantQueryExpr left;
 
-    private VariantQueryExpr right;
+    private final VariantQueryExpr right;
 
-    public BiOp(OpType opType) {
+    public BiOp(OpType opType, VariantQueryExpr left, VariantQueryExpr right) {
         this.opType = opType;
+        this.left = left;
+        this.right = right;
     }
 
     @Override
-    public void putValue(VariantQueryExpr value) {
-        if (left == null) {
-            left = value;
-        } else {
-            right = value;
+    public long[] evaluate(Database database) {
+        // The result of the left side is reused for the result.
+        long[] result = left.evaluate(database);
+        long[] rightEvaluated = right.evaluate(database);
+        if (opType == OpType.AND) {
+            Bitmaps.and(result, rightEvaluated);
+        } else if (opType == OpType.OR) {
+            Bitmaps.or(result, rightEvaluated);
         }
+        return result;
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        boolean[] leftEvaluated = left.evaluate(database);
-        boolean[] rightEvaluated = right.evaluate(database);
-        boolean[] result = new boolean[leftEvaluated.length];
+    public long[] evaluate(Database database, long[] candidates) {
+        long[] result = left.evaluate(database, candidates);
+        long[] rightEvaluated = right.evaluate(database, candidates);
         if (opType == OpType.AND) {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = leftEvaluated[i] && rightEvaluated[i];
-            }
+            Bitmaps.and(result, rightEvaluated);
         } else if (opType == OpType.OR) {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = leftEvaluated[i] || rightEvaluated[i];
-            }
+            Bitmaps.or(result, rightEvaluated);
         }
         return result;
     }
 
+    /**
+     * Combines tables that specify for every possible value (e.g., a base or a dictionary code) whether it fulfills a
+     * condition.
+     */
+    static boolean[] combine(OpType opType, List<boolean[]> tables) {
+        boolean[] combined = tables.get(0).clone();
+        for (boolean[] table : tables.subList(1, tables.size())) {
+            for (int i = 0; i < combined.length; i++) {
+                combined[i] = opType == OpType.AND ? combined[i] && table[i] : combined[i] || table[i];
+            }
+        }
+        return combined;
+    }
+
     public OpType getOpType() {
         return opType;
     }
@@ -55,6 +73,19 @@ public class BiOp implements VariantQueryExpr {
         return right;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BiOp that = (BiOp) o;
+        return opType == that.opType && Objects.equals(left, that.left) && Objects.equals(right, that.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(opType, left, right);
+    }
+
     @Override
     public String toString() {
         return "BiOp{" +
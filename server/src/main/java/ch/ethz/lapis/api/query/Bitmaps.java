@@ -0,0 +1,187 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Helper functions for bitmaps that are stored as long[]: bit i is stored in the word i / 64 at the bit position
+ * i % 64.
+ * <p>
+ * The bitmaps that represent query results have one bit per row of the database. The bits after the last row (in the
+ * last word) are always 0 so that the words can be combined and counted without looking at the number of rows.
+ */
+public final class Bitmaps {
+
+    private Bitmaps() {
+    }
+
+
+    /**
+     * @return An empty bitmap that can hold at least numberBits bits
+     */
+    public static long[] allocate(int numberBits) {
+        return new long[(numberBits + 63) >>> 6];
+    }
+
+
+    /**
+     * @return A bitmap in which the first numberBits bits are set
+     */
+    public static long[] full(int numberBits) {
+        long[] bitmap = allocate(numberBits);
+        Arrays.fill(bitmap, -1L);
+        clearTail(bitmap, numberBits);
+        return bitmap;
+    }
+
+
+    public static boolean get(long[] bitmap, int i) {
+        // Shifts of longs only take the lowest six bits of the shift distance into account.
+        return (bitmap[i >>> 6] & (1L << i)) != 0;
+    }
+
+
+    public static void set(long[] bitmap, int i) {
+        bitmap[i >>> 6] |= 1L << i;
+    }
+
+
+    public static void clear(long[] bitmap, int i) {
+        bitmap[i >>> 6] &= ~(1L << i);
+    }
+
+
+    /**
+     * @return A copy of the first numberBits bits of the bitmap; the bitmap may have fewer bits.
+     */
+    public static long[] copyOf(long[] bitmap, int numberBits) {
+        long[] copy = Arrays.copyOf(bitmap, allocate(numberBits).length);
+        clearTail(copy, numberBits);
+        return copy;
+    }
+
+
+    /**
+     * target = target AND other
+     */
+    public static void and(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] &= other[w];
+        }
+    }
+
+
+    /**
+     * target = target OR other
+     */
+    public static void or(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= other[w];
+        }
+    }
+
+
+    /**
+     * target = target AND NOT other
+     */
+    public static void andNot(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] &= ~other[w];
+        }
+    }
+
+
+    /**
+     * Flips the first numberBits bits.
+     */
+    public static void not(long[] target, int numberBits) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] = ~target[w];
+        }
+        clearTail(target, numberBits);
+    }
+
+
+    public static int cardinality(long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+
+    /**
+     * Calls the consumer with the index of every set bit in ascending order.
+     */
+    public static void forEach(long[] bitmap, IntConsumer consumer) {
+        for (int w = 0; w < bitmap.length; w++) {
+            long word = bitmap[w];
+            while (word != 0) {
+                consumer.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+
+    public static List<Integer> toList(long[] bitmap) {
+        List<Integer> result = new ArrayList<>(cardinality(bitmap));
+        forEach(bitmap, result::add);
+        return result;
+    }
+
+
+    /**
+     * @param values One byte per row, e.g., the bases of a sequence column
+     * @param acceptedValues An array of length 256 that specifies for every value (as unsigned byte) whether it
+     *                       should be matched
+     * @return A bitmap in which the bit of every row whose value is accepted is set
+     */
+    public static long[] match(byte[] values, boolean[] acceptedValues) {
+        long[] result = allocate(values.length);
+        RowPartitions.forEach(result.length, (fromWord, toWord) -> {
+            for (int w = fromWord; w < toWord; w++) {
+                int start = w << 6;
+                int end = Math.min(start + 64, values.length);
+                long word = 0;
+                for (int i = start; i < end; i++) {
+                    if (acceptedValues[values[i] & 0xFF]) {
+                        word |= 1L << i;
+                    }
+                }
+                result[w] = word;
+            }
+        });
+        return result;
+    }
+
+
+    /**
+     * Like {@link #match(byte[], boolean[])} but only looks at the candidate rows. The bits of all other rows are
+     * unset.
+     */
+    public static long[] match(byte[] values, boolean[] acceptedValues, long[] candidates) {
+        long[] result = new long[candidates.length];
+        for (int w = 0; w < candidates.length; w++) {
+            long word = candidates[w];
+            while (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (acceptedValues[values[i] & 0xFF]) {
+                    result[w] |= 1L << i;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static void clearTail(long[] bitmap, int numberBits) {
+        if ((numberBits & 63) != 0) {
+            bitmap[bitmap.length - 1] &= (1L << numberBits) - 1;
+        }
+    }
+}
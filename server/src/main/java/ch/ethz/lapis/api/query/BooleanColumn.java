@@ -0,0 +1,86 @@
+package ch.ethz.lapis.api.query;
+
+import java.io.IOException;
+
+/**
+ * A boolean column that stores the values as well as the validity (i.e., whether a row is not null) in bitmaps.
+ */
+public class BooleanColumn {
+
+    private final int size;
+    private final long[] values;
+    private final long[] validity;
+
+    public BooleanColumn(int size) {
+        this(size, Bitmaps.allocate(size), Bitmaps.allocate(size));
+    }
+
+
+    private BooleanColumn(int size, long[] values, long[] validity) {
+        this.size = size;
+        this.values = values;
+        this.validity = validity;
+    }
+
+
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(size);
+        writer.writeLongs(values);
+        writer.writeLongs(validity);
+    }
+
+
+    static BooleanColumn readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        int size = reader.readInt();
+        int numberWords = Bitmaps.allocate(size).length;
+        return new BooleanColumn(size, reader.readLongs(numberWords), reader.readLongs(numberWords));
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return A copy of the first size rows; rows after the end of this column are null. The copy can be modified
+     *     without affecting this column.
+     */
+    public BooleanColumn copyOf(int size) {
+        return new BooleanColumn(size, Bitmaps.copyOf(values, size), Bitmaps.copyOf(validity, size));
+    }
+
+
+    public void set(int row, Boolean value) {
+        if (value != null && value) {
+            Bitmaps.set(values, row);
+        } else {
+            Bitmaps.clear(values, row);
+        }
+        if (value != null) {
+            Bitmaps.set(validity, row);
+        } else {
+            Bitmaps.clear(validity, row);
+        }
+    }
+
+
+    public boolean isNull(int row) {
+        return !Bitmaps.get(validity, row);
+    }
+
+
+    public Boolean get(int row) {
+        return isNull(row) ? null : Bitmaps.get(values, row);
+    }
+
+
+    /**
+     * Clears the bit of every row in the bitmap that is null or does not have the given value.
+     */
+    public void filterEquals(long[] matched, boolean value) {
+        for (int w = 0; w < matched.length; w++) {
+            matched[w] &= validity[w] & (value ? values[w] : ~values[w]);
+        }
+    }
+}
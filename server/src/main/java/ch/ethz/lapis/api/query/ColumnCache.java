@@ -0,0 +1,101 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded LRU cache for decompressed sequence columns (i.e., the bases of all sequences at one position). The
+ * size of the cache is measured in bytes. A cache belongs to one Database instance and is thus automatically
+ * discarded when a new data version is loaded.
+ */
+public class ColumnCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBytes The memory budget; the cache is disabled if it is 0
+     */
+    public ColumnCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * Returns the cached column or loads it with the loader. The loader is called outside the lock so that slow loads
+     * do not block the cache. If two threads miss at the same time, both load the column.
+     *
+     * @param loader Returns the column or null if it does not exist. Null results are not cached.
+     */
+    public byte[] getOrLoad(String key, Supplier<byte[]> loader) {
+        synchronized (this) {
+            byte[] cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        byte[] loaded = loader.get();
+        if (loaded != null && loaded.length <= maxBytes) {
+            put(key, loaded);
+        }
+        return loaded;
+    }
+
+
+    private synchronized void put(String key, byte[] value) {
+        byte[] previous = entries.put(key, value);
+        if (previous != null) {
+            currentBytes -= previous.length;
+        }
+        currentBytes += value.length;
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            currentBytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    public synchronized int getNumberEntries() {
+        return entries.size();
+    }
+
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "ColumnCache{" +
+            "entries=" + entries.size() +
+            ", bytes=" + currentBytes + "/" + maxBytes +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+    }
+}
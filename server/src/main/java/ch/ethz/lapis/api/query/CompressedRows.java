@@ -0,0 +1,123 @@
+package ch.ethz.lapis.api.query;
+
+/**
+ * An immutable set of rows that is stored as a sorted array of row ids if it is sparse and otherwise as a bitmap (see
+ * {@link Bitmaps}), whichever takes less memory.
+ */
+public final class CompressedRows {
+
+    /**
+     * Either rows or bitmap is set.
+     */
+    private final int[] rows;
+    private final long[] bitmap;
+    private final int cardinality;
+
+    private CompressedRows(int[] rows, long[] bitmap, int cardinality) {
+        this.rows = rows;
+        this.bitmap = bitmap;
+        this.cardinality = cardinality;
+    }
+
+
+    /**
+     * @param bitmap The bitmap is copied if it is kept.
+     */
+    public static CompressedRows of(long[] bitmap) {
+        int cardinality = Bitmaps.cardinality(bitmap);
+        if (isSparse(cardinality, bitmap.length)) {
+            int[] rows = new int[cardinality];
+            int i = 0;
+            for (int w = 0; w < bitmap.length; w++) {
+                long word = bitmap[w];
+                while (word != 0) {
+                    rows[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return new CompressedRows(rows, null, cardinality);
+        }
+        return new CompressedRows(null, bitmap.clone(), cardinality);
+    }
+
+
+    /**
+     * @param rows Sorted row ids; the array is not copied if it is kept.
+     * @param size The number of rows of the database
+     */
+    public static CompressedRows ofSortedRows(int[] rows, int size) {
+        int numberWords = (size + 63) >>> 6;
+        if (isSparse(rows.length, numberWords)) {
+            return new CompressedRows(rows, null, rows.length);
+        }
+        long[] bitmap = Bitmaps.allocate(size);
+        for (int row : rows) {
+            Bitmaps.set(bitmap, row);
+        }
+        return new CompressedRows(null, bitmap, rows.length);
+    }
+
+
+    private static boolean isSparse(int cardinality, int numberWords) {
+        // An id takes 32 bits, a row in the bitmap 1 bit.
+        return (long) cardinality * 32 < (long) numberWords * 64;
+    }
+
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+
+    /**
+     * @param size The number of rows of the database
+     * @return A new bitmap
+     */
+    public long[] toBitmap(int size) {
+        if (bitmap != null) {
+            return bitmap.clone();
+        }
+        long[] result = Bitmaps.allocate(size);
+        orInto(result);
+        return result;
+    }
+
+
+    /**
+     * @return The number of the rows that are also set in the bitmap
+     */
+    public int countIn(long[] other) {
+        int count = 0;
+        if (bitmap != null) {
+            for (int w = 0; w < bitmap.length; w++) {
+                count += Long.bitCount(bitmap[w] & other[w]);
+            }
+        } else {
+            for (int row : rows) {
+                if (Bitmaps.get(other, row)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Sets the bits of the rows in the target bitmap.
+     */
+    public void orInto(long[] target) {
+        if (bitmap != null) {
+            Bitmaps.or(target, bitmap);
+        } else {
+            for (int row : rows) {
+                Bitmaps.set(target, row);
+            }
+        }
+    }
+
+
+    public long bytes() {
+        return rows != null ? 4L * rows.length : 8L * bitmap.length;
+    }
+}
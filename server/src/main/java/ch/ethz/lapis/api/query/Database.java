@@ -1,15 +1,23 @@
 package ch.ethz.lapis.api.query;
 
+import ch.ethz.lapis.LapisMain;
 import ch.ethz.lapis.api.exception.OutdatedDataVersionException;
 import ch.ethz.lapis.util.*;
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Date;
 import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Database {
 
@@ -83,31 +91,54 @@ public class Database {
         Columns.HOSPITALIZED, Columns.DIED, Columns.FULLY_VACCINATED
     };
 
+    /**
+     * The memory budget of the column cache if it is not set in the config
+     */
+    private static final int DEFAULT_COLUMN_CACHE_SIZE_MB = 1024;
+    private static final int DEFAULT_RESULT_CACHE_SIZE_MB = 256;
+
+    /**
+     * If more rows changed since the data version of the current database, the new data version is loaded completely
+     * instead of applying the changes.
+     */
+    private static final double MAX_CHANGED_PROPORTION = 0.3;
+
     private static Database instance;
 
-    private static final SeqCompressor columnarCompressor = new ZstdSeqCompressor(ZstdSeqCompressor.DICT.NONE);
+    private static final String STAGING_TABLE_SUFFIX = "_staging";
+
+    private static final ZstdSeqCompressor columnarCompressor = new ZstdSeqCompressor(ZstdSeqCompressor.DICT.NONE);
     private final long dataVersion;
     private final int size;
     private final PangoLineageQueryConverter pangoLineageQueryConverter;
     private final ComboPooledDataSource databasePool;
-    private final Map<String, String[]> stringColumns = new HashMap<>();
-    private final Map<String, Integer[]> integerColumns = new HashMap<>();
-    private final Map<String, Float[]> floatColumns = new HashMap<>();
-    private final Map<String, Boolean[]> booleanColumns = new HashMap<>();
-    private final MutationStore nucMutationStore;
+    private final ColumnCache columnCache;
+    private final ResultCache resultCache;
+    private final Map<String, StringColumn> stringColumns = new HashMap<>();
+    private final Map<String, IntColumn> integerColumns = new HashMap<>();
+    private final Map<String, FloatColumn> floatColumns = new HashMap<>();
+    private final Map<String, BooleanColumn> booleanColumns = new HashMap<>();
+    private MutationStore nucMutationStore;
     private final Map<String, MutationStore> aaMutationStores; // One store per gene
-    private final InsertionStore nucInsertionStore;
+    private InsertionStore nucInsertionStore;
     private final Map<String, InsertionStore> aaInsertionStores; // One store per gene
+    private PackedNucleotideStore packedNucStore; // Only loaded if nucColumnsInMemory is enabled
+    private AggregatedCube aggregatedCube;
+    private final Map<String, PangoLineageTree> pangoLineageTrees = new HashMap<>();
 
     private Database(
         long dataVersion,
         int size,
         ComboPooledDataSource databasePool,
-        PangoLineageQueryConverter pangoLineageQueryConverter
+        PangoLineageQueryConverter pangoLineageQueryConverter,
+        ColumnCache columnCache,
+        ResultCache resultCache
     ) {
         this.dataVersion = dataVersion;
         this.size = size;
         this.databasePool = databasePool;
+        this.columnCache = columnCache;
+        this.resultCache = resultCache;
         this.pangoLineageQueryConverter = pangoLineageQueryConverter;
         this.nucMutationStore = new MutationStore(size);
         this.nucInsertionStore = new InsertionStore();
@@ -134,43 +165,26 @@ public class Database {
     }
 
 
-    public String[] getStringColumn(String columnName) {
+    public StringColumn getStringColumn(String columnName) {
         return stringColumns.get(columnName);
     }
 
 
-    public Integer[] getIntColumn(String columnName) {
+    public IntColumn getIntColumn(String columnName) {
         return integerColumns.get(columnName);
     }
 
 
-    public Float[] getFloatColumn(String columnName) {
+    public FloatColumn getFloatColumn(String columnName) {
         return floatColumns.get(columnName);
     }
 
 
-    public Boolean[] getBoolColumn(String columnName) {
+    public BooleanColumn getBoolColumn(String columnName) {
         return booleanColumns.get(columnName);
     }
 
 
-    public Object[] getColumn(String columnName) {
-        if (stringColumns.containsKey(columnName)) {
-            return stringColumns.get(columnName);
-        }
-        if (integerColumns.containsKey(columnName)) {
-            return integerColumns.get(columnName);
-        }
-        if (floatColumns.containsKey(columnName)) {
-            return floatColumns.get(columnName);
-        }
-        if (booleanColumns.containsKey(columnName)) {
-            return booleanColumns.get(columnName);
-        }
-        return null;
-    }
-
-
     public MutationStore getNucMutationStore() {
         return nucMutationStore;
     }
@@ -191,7 +205,59 @@ public class Database {
     }
 
 
-    public char[] getNucArray(int position) {
+    /**
+     * @return The in-memory nucleotide columns or null if they are not loaded
+     */
+    public PackedNucleotideStore getPackedNucStore() {
+        return packedNucStore;
+    }
+
+
+    /**
+     * @return The pre-aggregated cube or null if it could not be built
+     */
+    public AggregatedCube getAggregatedCube() {
+        return aggregatedCube;
+    }
+
+
+    /**
+     * @return The lineage tree of a Pango lineage column or null if it has not been built
+     */
+    public PangoLineageTree getPangoLineageTree(String columnName) {
+        return pangoLineageTrees.get(columnName);
+    }
+
+
+    public ColumnCache getColumnCache() {
+        return columnCache;
+    }
+
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+
+    /**
+     * Returns the nucleotide bases of all sequences at the given position. The returned array is shared through the
+     * column cache and must not be modified.
+     */
+    public byte[] getNucArray(int position) {
+        return columnCache.getOrLoad("nuc:" + position, () -> fetchNucArray(position));
+    }
+
+
+    /**
+     * Returns the amino acids of all sequences at the given position of the gene. The returned array is shared through
+     * the column cache and must not be modified.
+     */
+    public byte[] getAAArray(String gene, int position) {
+        return columnCache.getOrLoad("aa:" + gene.toLowerCase() + ":" + position, () -> fetchAAArray(gene, position));
+    }
+
+
+    private byte[] fetchNucArray(int position) {
         String sql = """
             select data_compressed
             from y_main_sequence_columnar
@@ -205,7 +271,7 @@ public class Database {
                         return null;
                     }
                     byte[] compressed = rs.getBytes("data_compressed");
-                    char[] result = columnarCompressor.decompress(compressed).toCharArray();
+                    byte[] result = columnarCompressor.decompressBytes(compressed);
                     if (result.length != size) {
                         // New data arrived. The available sequence data does not match the current database anymore.
                         throw new OutdatedDataVersionException();
@@ -219,7 +285,7 @@ public class Database {
     }
 
 
-    public char[] getAAArray(String gene, int position) {
+    private byte[] fetchAAArray(String gene, int position) {
         String sql = """
             select data_compressed
             from y_main_aa_sequence_columnar
@@ -234,7 +300,7 @@ public class Database {
                         return null;
                     }
                     byte[] compressed = rs.getBytes("data_compressed");
-                    char[] result = columnarCompressor.decompress(compressed).toCharArray();
+                    byte[] result = columnarCompressor.decompressBytes(compressed);
                     if (result.length != size) {
                         // New data arrived. The available sequence data does not match the current database anymore.
                         throw new OutdatedDataVersionException();
@@ -272,7 +338,25 @@ public class Database {
 
     public static void updateInstance(ComboPooledDataSource databasePool) {
         try {
-            instance = loadDatabase(databasePool);
+            if (instance != null) {
+                System.out.println(LocalDateTime.now() + " Column cache of the replaced database: " +
+                    instance.columnCache);
+                System.out.println(LocalDateTime.now() + " Result cache of the replaced database: " +
+                    instance.resultCache);
+            }
+            Database database = null;
+            if (instance != null) {
+                try {
+                    database = loadDatabaseWithChanges(databasePool, instance);
+                } catch (SQLException | RuntimeException e) {
+                    System.out.println(LocalDateTime.now() + " The changes since the data version " +
+                        instance.dataVersion + " cannot be applied, loading all data: " + e.getMessage());
+                }
+            }
+            if (database == null) {
+                database = loadDatabase(databasePool);
+            }
+            instance = database;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -285,189 +369,828 @@ public class Database {
         return instance;
     }
 
+    /**
+     * Loads the database from the snapshot of the current data version if a snapshot directory is configured and the
+     * snapshot exists, and otherwise from the tables.
+     */
     private static Database loadDatabase(ComboPooledDataSource databasePool) throws SQLException {
-        try (Connection conn = databasePool.getConnection()) {
-            conn.setAutoCommit(false);
-            String dataVersionSql = """
-                select timestamp
-                from data_version
-                where dataset = 'merged';
-                """;
-            String lengthSql = """
-                select count(*) as count
-                from y_main_metadata
-                """;
-            String metadataSql = """
-                select *
-                from y_main_metadata
-                order by id;
-                """;
-            String sequenceSql = """
-                select
-                  id,
-                  coalesce(aa_mutations, '') as aa_mutations,
-                  coalesce(aa_insertions, '') as aa_insertions,
-                  coalesce(aa_unknowns, '') as aa_unknowns,
-                  coalesce(nuc_substitutions, '') as nuc_substitutions,
-                  coalesce(nuc_deletions, '') as nuc_deletions,
-                  coalesce(nuc_insertions, '') as nuc_insertions,
-                  coalesce(nuc_unknowns, '') as nuc_unknowns
-                from y_main_sequence
-                order by id;
-                """;
-            Database database;
-            try (Statement statement = conn.createStatement()) {
-                // Fetch data version
-                long dataVersion;
-                try (ResultSet rs = statement.executeQuery(dataVersionSql)) {
-                    if (!rs.next()) {
-                        throw new RuntimeException("The data version cannot be found in the database.");
-                    }
-                    dataVersion = rs.getLong("timestamp");
+        Database database = null;
+        String snapshotDirectory = LapisMain.globalConfig.getSnapshotDirectory();
+        if (snapshotDirectory != null) {
+            database = loadDatabaseFromSnapshot(databasePool, Path.of(snapshotDirectory));
+        }
+        if (database == null) {
+            database = loadDatabaseFromTables(databasePool, "", null);
+        }
+        buildIndexes(database);
+        loadPackedNucStoreIfEnabled(databasePool, database);
+        return database;
+    }
 
+
+    /**
+     * Loads the nucleotide columns into off-heap memory if nucColumnsInMemory is enabled. A store takes about
+     * rows / 2 bytes per position. When a new data version is loaded, the store of the replaced database is still in
+     * use until the new one is complete, so -XX:MaxDirectMemorySize has to fit two stores. If the direct memory is
+     * exhausted, the database is used without the store and the nucleotide columns are read from the column cache.
+     */
+    private static void loadPackedNucStoreIfEnabled(ComboPooledDataSource databasePool, Database database)
+        throws SQLException {
+        if (Boolean.TRUE.equals(LapisMain.globalConfig.getNucColumnsInMemory())) {
+            try (Connection conn = databasePool.getConnection()) {
+                conn.setAutoCommit(false);
+                database.packedNucStore = loadPackedNucStore(conn, database.size);
+                conn.setAutoCommit(true);
+            } catch (OutOfMemoryError e) {
+                // The buffers that were already allocated are released with the incomplete store.
+                System.out.println(LocalDateTime.now() + " The nucleotide columns cannot be kept in memory, " +
+                    "continuing without them: " + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Builds the structures that are derived from the loaded data: the lineage trees, the pre-aggregated cube and the
+     * index and profiles of the mutation stores.
+     */
+    private static void buildIndexes(Database database) {
+        for (String column : List.of(Columns.PANGO_LINEAGE, Columns.NEXTCLADE_PANGO_LINEAGE)) {
+            database.pangoLineageTrees.put(column, PangoLineageTree.build(database.getStringColumn(column)));
+        }
+        database.aggregatedCube = AggregatedCube.build(database);
+        System.out.println(LocalDateTime.now() + " Aggregated cube: " + (database.aggregatedCube != null ?
+            database.aggregatedCube.getNumberCells() + " cells" : "not built, the dimensions are too large"));
+        // The index and the profiles of the Pango lineages are built in parallel for the genes.
+        StringColumn pangoLineages = database.getStringColumn(Columns.PANGO_LINEAGE);
+        List<MutationStore> mutationStores = new ArrayList<>();
+        mutationStores.add(database.nucMutationStore);
+        mutationStores.addAll(database.aaMutationStores.values());
+        RowPartitions.mapEach(mutationStores, mutationStore -> {
+            mutationStore.buildIndex();
+            mutationStore.buildProfiles(pangoLineages);
+            return null;
+        });
+        long profilesBytes = mutationStores.stream().mapToLong(MutationStore::getProfilesBytes).sum();
+        System.out.println(LocalDateTime.now() + " Mutation profiles of " +
+            pangoLineages.getDictionarySize() + " Pango lineages: " + profilesBytes / 1024 / 1024 + " MB");
+    }
+
+
+    private static long fetchDataVersion(Connection conn) throws SQLException {
+        String sql = """
+            select timestamp
+            from data_version
+            where dataset = 'merged';
+            """;
+        try (Statement statement = conn.createStatement()) {
+            try (ResultSet rs = statement.executeQuery(sql)) {
+                if (!rs.next()) {
+                    throw new RuntimeException("The data version cannot be found in the database.");
                 }
-                // Fetch number of rows
-                int numberRows;
+                return rs.getLong("timestamp");
+            }
+        }
+    }
+
+
+    private static Database createDatabase(
+        long dataVersion,
+        int numberRows,
+        ComboPooledDataSource databasePool,
+        PangoLineageQueryConverter pangoLineageQueryConverter
+    ) {
+        Integer columnCacheSizeMB = LapisMain.globalConfig.getColumnCacheSizeMB();
+        if (columnCacheSizeMB == null) {
+            columnCacheSizeMB = DEFAULT_COLUMN_CACHE_SIZE_MB;
+        }
+        Integer resultCacheSizeMB = LapisMain.globalConfig.getResultCacheSizeMB();
+        if (resultCacheSizeMB == null) {
+            resultCacheSizeMB = DEFAULT_RESULT_CACHE_SIZE_MB;
+        }
+        return new Database(
+            dataVersion,
+            numberRows,
+            databasePool,
+            pangoLineageQueryConverter,
+            new ColumnCache(columnCacheSizeMB * 1024L * 1024L),
+            new ResultCache(resultCacheSizeMB * 1024L * 1024L, numberRows)
+        );
+    }
+
+
+    /**
+     * Creates a database that is not backed by the SQL database and only consists of the given metadata columns. The
+     * other metadata columns contain only null values and the mutation and insertion stores are empty.
+     */
+    static Database createInMemory(
+        int numberRows,
+        Map<String, StringColumn> stringColumns,
+        Map<String, IntColumn> integerColumns,
+        Map<String, FloatColumn> floatColumns,
+        Map<String, BooleanColumn> booleanColumns
+    ) {
+        Database database = new Database(
+            0,
+            numberRows,
+            null,
+            new PangoLineageQueryConverter(List.of()),
+            new ColumnCache(0),
+            new ResultCache(0, numberRows)
+        );
+        for (String column : STRING_COLUMNS) {
+            database.stringColumns.put(column, stringColumns.getOrDefault(column,
+                new StringColumn.Builder(numberRows).build()));
+        }
+        for (String column : DATE_COLUMNS) {
+            database.integerColumns.put(column, integerColumns.getOrDefault(column, new IntColumn(numberRows)));
+        }
+        for (String column : INTEGER_COLUMNS) {
+            database.integerColumns.put(column, integerColumns.getOrDefault(column, new IntColumn(numberRows)));
+        }
+        for (String column : FLOAT_COLUMNS) {
+            database.floatColumns.put(column, floatColumns.getOrDefault(column, new FloatColumn(numberRows)));
+        }
+        for (String column : BOOLEAN_COLUMNS) {
+            database.booleanColumns.put(column, booleanColumns.getOrDefault(column, new BooleanColumn(numberRows)));
+        }
+        buildIndexes(database);
+        return database;
+    }
+
+
+    /**
+     * @return The database or null if there is no readable snapshot of the current data version
+     */
+    private static Database loadDatabaseFromSnapshot(ComboPooledDataSource databasePool, Path directory)
+        throws SQLException {
+        long dataVersion;
+        List<PangoLineageAlias> aliases;
+        try (Connection conn = databasePool.getConnection()) {
+            dataVersion = fetchDataVersion(conn);
+            aliases = getPangoLineageAliases(conn);
+        }
+        Path file = DatabaseSnapshot.getFile(directory, dataVersion);
+        if (!Files.exists(file)) {
+            System.out.println(LocalDateTime.now() + " No snapshot of the data version " + dataVersion + " in " +
+                directory + ", loading the data from the database.");
+            return null;
+        }
+        System.out.println(LocalDateTime.now() + " Loading the in-memory database from the snapshot " + file);
+        try (DatabaseSnapshot.Reader reader = new DatabaseSnapshot.Reader(file)) {
+            if (reader.getDataVersion() != dataVersion) {
+                throw new RuntimeException("The snapshot has the data version " + reader.getDataVersion() + ".");
+            }
+            Database database = createDatabase(dataVersion, reader.readInt(), databasePool,
+                new PangoLineageQueryConverter(aliases));
+            database.readFrom(reader);
+            reader.verify();
+            System.out.println(LocalDateTime.now() + " Loaded the snapshot with " + database.size + " rows.");
+            return database;
+        } catch (IOException | RuntimeException e) {
+            System.out.println(LocalDateTime.now() + " The snapshot " + file + " cannot be read, loading the data " +
+                "from the database: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Loads the _staging tables and writes them as the snapshot of the given data version into the directory. It has
+     * to be called before the staging tables are switched in under this data version so that the snapshot exists as
+     * soon as the API sees the new data version. The snapshots of older data versions are deleted except of the
+     * current one which replicas might still be loading.
+     */
+    public static void writeSnapshotOfStagingTables(ComboPooledDataSource databasePool, Path directory,
+                                                    long dataVersion) throws SQLException, IOException {
+        Database database = loadDatabaseFromTables(databasePool, STAGING_TABLE_SUFFIX, dataVersion);
+        Path file = DatabaseSnapshot.getFile(directory, database.dataVersion);
+        System.out.println(LocalDateTime.now() + " Writing the snapshot " + file);
+        try (DatabaseSnapshot.Writer writer = new DatabaseSnapshot.Writer(file, database.dataVersion)) {
+            writer.writeInt(database.size);
+            database.writeTo(writer);
+            writer.commit();
+        }
+        DatabaseSnapshot.deleteOldSnapshots(directory, 2);
+        System.out.println(LocalDateTime.now() + " Snapshot written: " + Files.size(file) / 1024 / 1024 + " MB");
+    }
+
+
+    private void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(stringColumns.size());
+        for (Map.Entry<String, StringColumn> column : stringColumns.entrySet()) {
+            writer.writeString(column.getKey());
+            column.getValue().writeTo(writer);
+        }
+        writer.writeInt(integerColumns.size());
+        for (Map.Entry<String, IntColumn> column : integerColumns.entrySet()) {
+            writer.writeString(column.getKey());
+            column.getValue().writeTo(writer);
+        }
+        writer.writeInt(floatColumns.size());
+        for (Map.Entry<String, FloatColumn> column : floatColumns.entrySet()) {
+            writer.writeString(column.getKey());
+            column.getValue().writeTo(writer);
+        }
+        writer.writeInt(booleanColumns.size());
+        for (Map.Entry<String, BooleanColumn> column : booleanColumns.entrySet()) {
+            writer.writeString(column.getKey());
+            column.getValue().writeTo(writer);
+        }
+        nucMutationStore.writeTo(writer);
+        writer.writeInt(aaMutationStores.size());
+        for (Map.Entry<String, MutationStore> store : aaMutationStores.entrySet()) {
+            writer.writeString(store.getKey());
+            store.getValue().writeTo(writer);
+        }
+        nucInsertionStore.writeTo(writer);
+        writer.writeInt(aaInsertionStores.size());
+        for (Map.Entry<String, InsertionStore> store : aaInsertionStores.entrySet()) {
+            writer.writeString(store.getKey());
+            store.getValue().writeTo(writer);
+        }
+    }
+
+
+    private void readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        int numberColumns = reader.readInt();
+        for (int i = 0; i < numberColumns; i++) {
+            stringColumns.put(reader.readString(), StringColumn.readFrom(reader));
+        }
+        numberColumns = reader.readInt();
+        for (int i = 0; i < numberColumns; i++) {
+            integerColumns.put(reader.readString(), IntColumn.readFrom(reader));
+        }
+        numberColumns = reader.readInt();
+        for (int i = 0; i < numberColumns; i++) {
+            floatColumns.put(reader.readString(), FloatColumn.readFrom(reader));
+        }
+        numberColumns = reader.readInt();
+        for (int i = 0; i < numberColumns; i++) {
+            booleanColumns.put(reader.readString(), BooleanColumn.readFrom(reader));
+        }
+        nucMutationStore = MutationStore.readFrom(reader);
+        int numberGenes = reader.readInt();
+        for (int i = 0; i < numberGenes; i++) {
+            aaMutationStores.put(reader.readString(), MutationStore.readFrom(reader));
+        }
+        nucInsertionStore = InsertionStore.readFrom(reader);
+        numberGenes = reader.readInt();
+        for (int i = 0; i < numberGenes; i++) {
+            aaInsertionStores.put(reader.readString(), InsertionStore.readFrom(reader));
+        }
+    }
+
+
+    /**
+     * Loads the metadata and the mutations from the tables. The rows are split into id ranges that are fetched over
+     * separate connections and parsed concurrently by maxNumberWorkers threads; the metadata and the sequences of a
+     * range are loaded in parallel. The numeric columns are written directly into the preallocated arrays whereas the
+     * dictionaries and the mutation and insertion stores of the partitions are merged in the order of the ids.
+     */
+    /**
+     * @param tableSuffix The suffix of the tables to load: "" for the active tables or {@link #STAGING_TABLE_SUFFIX}
+     * @param dataVersion The data version of the loaded tables or null to use the current data version
+     */
+    private static Database loadDatabaseFromTables(ComboPooledDataSource databasePool, String tableSuffix,
+                                                   Long dataVersion) throws SQLException {
+        String lengthSql = """
+            select count(*) as count
+            from y_main_metadata%s
+            """.formatted(tableSuffix);
+        int numberRows;
+        List<PangoLineageAlias> aliases;
+        boolean hasEncodedMutations;
+        try (Connection conn = databasePool.getConnection()) {
+            // Fetch data version
+            if (dataVersion == null) {
+                dataVersion = fetchDataVersion(conn);
+            }
+            // Fetch number of rows
+            try (Statement statement = conn.createStatement()) {
                 try (ResultSet rs = statement.executeQuery(lengthSql)) {
                     rs.next();
                     numberRows = rs.getInt("count");
-
                 }
-                // Fetch pango lineage aliases
-                List<PangoLineageAlias> aliases = getPangoLineageAliases(conn);
-                PangoLineageQueryConverter pangoLineageQueryConverter = new PangoLineageQueryConverter(aliases);
-                // Create database object
-                database = new Database(
-                    dataVersion,
-                    numberRows,
-                    databasePool,
-                    pangoLineageQueryConverter
-                );
-                // Fetch metadata
-                for (String stringColumn : STRING_COLUMNS) {
-                    database.stringColumns.put(stringColumn, new String[numberRows]);
-                }
-                for (String integerColumn : INTEGER_COLUMNS) {
-                    database.integerColumns.put(integerColumn, new Integer[numberRows]);
+            }
+            // Fetch pango lineage aliases
+            aliases = getPangoLineageAliases(conn);
+            hasEncodedMutations = hasEncodedMutations(conn, tableSuffix);
+        }
+        // Create database object
+        Database database = createDatabase(dataVersion, numberRows, databasePool,
+            new PangoLineageQueryConverter(aliases));
+        for (String integerColumn : INTEGER_COLUMNS) {
+            database.integerColumns.put(integerColumn, new IntColumn(numberRows));
+        }
+        for (String floatColumn : FLOAT_COLUMNS) {
+            database.floatColumns.put(floatColumn, new FloatColumn(numberRows));
+        }
+        for (String dateColumn : DATE_COLUMNS) {
+            database.integerColumns.put(dateColumn, new IntColumn(numberRows));
+        }
+        for (String booleanColumn : BOOLEAN_COLUMNS) {
+            database.booleanColumns.put(booleanColumn, new BooleanColumn(numberRows));
+        }
+
+        // The boundaries of the partitions are multiples of 64 so that the partitions do not share words of the
+        // validity bitmaps.
+        int numberWorkers = getNumberWorkers();
+        int partitionSize = Math.max(64, ((numberRows + numberWorkers - 1) / numberWorkers + 63) & ~63);
+        List<Integer> partitionStarts = new ArrayList<>();
+        for (int from = 0; from < numberRows; from += partitionSize) {
+            partitionStarts.add(from);
+        }
+        AtomicInteger loadedMetadata = new AtomicInteger();
+        AtomicInteger loadedSequences = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numberWorkers);
+        try {
+            List<Future<Map<String, StringColumn.Builder>>> metadataPartitions = new ArrayList<>();
+            List<Future<SequencePartition>> sequencePartitions = new ArrayList<>();
+            for (int from : partitionStarts) {
+                IdSelection selection = IdSelection.ofRange(from, Math.min(from + partitionSize, numberRows));
+                metadataPartitions.add(executor.submit(() ->
+                    loadMetadataPartition(databasePool, tableSuffix, database, selection, loadedMetadata)));
+                sequencePartitions.add(executor.submit(() -> loadSequencePartition(databasePool, tableSuffix,
+                    hasEncodedMutations, numberRows, selection, loadedSequences)));
+            }
+            // Merge the partitions
+            Map<String, StringColumn.Builder> stringColumnBuilders = new HashMap<>();
+            for (String stringColumn : STRING_COLUMNS) {
+                stringColumnBuilders.put(stringColumn, new StringColumn.Builder(numberRows));
+            }
+            for (int i = 0; i < partitionStarts.size(); i++) {
+                Map<String, StringColumn.Builder> partition = getResult(metadataPartitions.get(i));
+                int from = partitionStarts.get(i);
+                stringColumnBuilders.forEach((column, builder) -> builder.setAll(from, partition.get(column)));
+            }
+            stringColumnBuilders.forEach((column, builder) -> database.stringColumns.put(column, builder.build()));
+            for (int i = 0; i < partitionStarts.size(); i++) {
+                SequencePartition partition = getResult(sequencePartitions.get(i));
+                int from = partitionStarts.get(i);
+                database.nucMutationStore.putAll(from, partition.nucMutationStore());
+                database.aaMutationStores.forEach((gene, mutationStore) ->
+                    mutationStore.putAll(from, partition.aaMutationStores().get(gene)));
+                database.nucInsertionStore.putAll(partition.nucInsertionStore());
+                database.aaInsertionStores.forEach((gene, insertionStore) ->
+                    insertionStore.putAll(partition.aaInsertionStores().get(gene)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        database.nucMutationStore.trimToSize();
+        database.aaMutationStores.values().forEach(MutationStore::trimToSize);
+        return database;
+    }
+
+
+    /**
+     * Loads the current data version by applying the changes that the transform recorded in y_main_change_log since
+     * the data version of the base database. Only the changed rows are fetched; the columns and stores of the base
+     * database are copied with the changed rows replaced, so the base database stays unmodified and can serve queries
+     * until the new database is ready. Afterwards, the indexes are built as for a full load.
+     *
+     * @return The database or null if the changes are not available (e.g., the change log was pruned) or if they
+     *     affect so many rows that a full load is faster
+     */
+    private static Database loadDatabaseWithChanges(ComboPooledDataSource databasePool, Database base)
+        throws SQLException {
+        long dataVersion;
+        int numberRows;
+        List<PangoLineageAlias> aliases;
+        boolean hasEncodedMutations;
+        int[] changedIds;
+        try (Connection conn = databasePool.getConnection()) {
+            try (ResultSet rs = conn.getMetaData().getTables(null, null, "y_main_change_log", null)) {
+                if (!rs.next()) {
+                    return null;
                 }
-                for (String floatColumn : FLOAT_COLUMNS) {
-                    database.floatColumns.put(floatColumn, new Float[numberRows]);
+            }
+            dataVersion = fetchDataVersion(conn);
+            // Follow the data versions back to the version of the base database
+            Map<Long, long[]> baseVersionAndNumberRows = new HashMap<>();
+            String versionsSql = """
+                select data_version, base_data_version, number_rows
+                from y_main_change_log
+                where data_version > ?;
+                """;
+            try (PreparedStatement statement = conn.prepareStatement(versionsSql)) {
+                statement.setLong(1, base.dataVersion);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        baseVersionAndNumberRows.put(rs.getLong("data_version"),
+                            new long[] { rs.getLong("base_data_version"), rs.getLong("number_rows") });
+                    }
                 }
-                for (String dateColumn : DATE_COLUMNS) {
-                    database.integerColumns.put(dateColumn, new Integer[numberRows]);
+            }
+            if (!baseVersionAndNumberRows.containsKey(dataVersion)) {
+                return null;
+            }
+            numberRows = (int) baseVersionAndNumberRows.get(dataVersion)[1];
+            List<Long> versions = new ArrayList<>();
+            for (long version = dataVersion; version != base.dataVersion; ) {
+                long[] entry = baseVersionAndNumberRows.get(version);
+                if (entry == null) {
+                    return null;
                 }
-                for (String booleanColumn : BOOLEAN_COLUMNS) {
-                    database.booleanColumns.put(booleanColumn, new Boolean[numberRows]);
+                versions.add(version);
+                version = entry[0];
+            }
+            // The appended and updated rows of all versions; the rows after the end of the base database are always
+            // loaded and deleted rows are dropped by the number of rows.
+            String changedIdsSql = """
+                select distinct id
+                from y_main_change_log_entry
+                where data_version = any(?) and change <> 'deleted' and id < ?
+                order by id;
+                """;
+            List<Integer> changedIdList = new ArrayList<>();
+            try (PreparedStatement statement = conn.prepareStatement(changedIdsSql)) {
+                statement.setArray(1, conn.createArrayOf("bigint", versions.toArray()));
+                statement.setInt(2, Math.min(base.size, numberRows));
+                statement.setFetchSize(100000);
+                conn.setAutoCommit(false);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        changedIdList.add(rs.getInt("id"));
+                    }
                 }
+                conn.setAutoCommit(true);
+            }
+            for (int id = base.size; id < numberRows; id++) {
+                changedIdList.add(id);
+            }
+            if (changedIdList.size() > numberRows * MAX_CHANGED_PROPORTION) {
+                System.out.println(LocalDateTime.now() + " " + changedIdList.size() + " of " + numberRows +
+                    " rows changed since the data version " + base.dataVersion + ", loading all data.");
+                return null;
+            }
+            changedIds = changedIdList.stream().mapToInt(Integer::intValue).toArray();
+            aliases = getPangoLineageAliases(conn);
+            hasEncodedMutations = hasEncodedMutations(conn, "");
+        }
+        System.out.println(LocalDateTime.now() + " Loading " + changedIds.length + " changed rows of the data version " +
+            dataVersion + " on top of the data version " + base.dataVersion);
+        long[] changedBitmap = Bitmaps.allocate(numberRows);
+        for (int id : changedIds) {
+            Bitmaps.set(changedBitmap, id);
+        }
+
+        // Copy the columns of the base database; the copies are modified by loadMetadataPartition.
+        Database database = createDatabase(dataVersion, numberRows, databasePool,
+            new PangoLineageQueryConverter(aliases));
+        base.integerColumns.forEach((column, values) -> database.integerColumns.put(column,
+            values.copyOf(numberRows)));
+        base.floatColumns.forEach((column, values) -> database.floatColumns.put(column, values.copyOf(numberRows)));
+        base.booleanColumns.forEach((column, values) -> database.booleanColumns.put(column,
+            values.copyOf(numberRows)));
+
+        // The partitions must not share words of the validity bitmaps, so a partition only ends where the next id
+        // is in another word.
+        int numberWorkers = getNumberWorkers();
+        int partitionSize = Math.max(64, (changedIds.length + numberWorkers - 1) / numberWorkers);
+        List<Integer> partitionStarts = new ArrayList<>();
+        for (int i = 0; i < changedIds.length; i++) {
+            if (i == 0 || (i - partitionStarts.get(partitionStarts.size() - 1) >= partitionSize
+                && changedIds[i] >>> 6 != changedIds[i - 1] >>> 6)) {
+                partitionStarts.add(i);
+            }
+        }
+        partitionStarts.add(changedIds.length);
+        AtomicInteger loadedMetadata = new AtomicInteger();
+        AtomicInteger loadedSequences = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numberWorkers);
+        try {
+            List<IdSelection> selections = new ArrayList<>();
+            List<Future<Map<String, StringColumn.Builder>>> metadataPartitions = new ArrayList<>();
+            List<Future<SequencePartition>> sequencePartitions = new ArrayList<>();
+            for (int i = 0; i < partitionStarts.size() - 1; i++) {
+                IdSelection selection = IdSelection.ofIds(
+                    Arrays.copyOfRange(changedIds, partitionStarts.get(i), partitionStarts.get(i + 1)));
+                selections.add(selection);
+                metadataPartitions.add(executor.submit(() ->
+                    loadMetadataPartition(databasePool, "", database, selection, loadedMetadata)));
+                sequencePartitions.add(executor.submit(() -> loadSequencePartition(databasePool, "",
+                    hasEncodedMutations, numberRows, selection, loadedSequences)));
+            }
+            // Replace the changed values of the string columns
+            Map<String, StringColumn.Builder> stringColumnBuilders = new HashMap<>();
+            for (String stringColumn : STRING_COLUMNS) {
+                stringColumnBuilders.put(stringColumn,
+                    StringColumn.Builder.of(base.getStringColumn(stringColumn), numberRows));
+            }
+            for (int i = 0; i < selections.size(); i++) {
+                Map<String, StringColumn.Builder> partition = getResult(metadataPartitions.get(i));
+                int[] ids = selections.get(i).ids();
+                stringColumnBuilders.forEach((column, builder) -> {
+                    StringColumn values = partition.get(column).build();
+                    for (int j = 0; j < ids.length; j++) {
+                        builder.set(ids[j], values.get(j));
+                    }
+                });
+            }
+            stringColumnBuilders.forEach((column, builder) -> database.stringColumns.put(column, builder.build()));
+            // Collect the changed mutations and insertions; the mutation stores hold them in the order of the ids.
+            SequencePartition changes = new SequencePartition(new MutationStore(changedIds.length), new HashMap<>(),
+                new InsertionStore(), new HashMap<>());
+            for (String name : ReferenceGenomeData.getInstance().getGeneNames()) {
+                changes.aaMutationStores().put(name, new MutationStore(changedIds.length));
+                changes.aaInsertionStores().put(name, new InsertionStore());
+            }
+            for (int i = 0; i < selections.size(); i++) {
+                SequencePartition partition = getResult(sequencePartitions.get(i));
+                int from = partitionStarts.get(i);
+                changes.nucMutationStore().putAll(from, partition.nucMutationStore());
+                changes.aaMutationStores().forEach((gene, mutationStore) ->
+                    mutationStore.putAll(from, partition.aaMutationStores().get(gene)));
+                changes.nucInsertionStore().putAll(partition.nucInsertionStore());
+                changes.aaInsertionStores().forEach((gene, insertionStore) ->
+                    insertionStore.putAll(partition.aaInsertionStores().get(gene)));
+            }
+            database.nucMutationStore = MutationStore.withChanges(base.nucMutationStore, numberRows, changedBitmap,
+                changes.nucMutationStore());
+            base.aaMutationStores.forEach((gene, mutationStore) -> database.aaMutationStores.put(gene,
+                MutationStore.withChanges(mutationStore, numberRows, changedBitmap,
+                    changes.aaMutationStores().get(gene))));
+            database.nucInsertionStore = InsertionStore.withChanges(base.nucInsertionStore, numberRows, changedBitmap,
+                changes.nucInsertionStore());
+            base.aaInsertionStores.forEach((gene, insertionStore) -> database.aaInsertionStores.put(gene,
+                InsertionStore.withChanges(insertionStore, numberRows, changedBitmap,
+                    changes.aaInsertionStores().get(gene))));
+        } finally {
+            executor.shutdownNow();
+        }
+        database.nucMutationStore.trimToSize();
+        database.aaMutationStores.values().forEach(MutationStore::trimToSize);
+        buildIndexes(database);
+        loadPackedNucStoreIfEnabled(databasePool, database);
+        return database;
+    }
+
+
+    private static int getNumberWorkers() {
+        Integer maxNumberWorkers = LapisMain.globalConfig.getMaxNumberWorkers();
+        return maxNumberWorkers != null ? maxNumberWorkers : Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * The binary encoded mutations are only available if the columns were added to the schema.
+     */
+    private static boolean hasEncodedMutations(Connection conn, String tableSuffix) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, "y_main_sequence" + tableSuffix,
+            "nuc_mutations_encoded")) {
+            return rs.next();
+        }
+    }
+
+
+    /**
+     * The ids of the rows that are loaded by a partition: either the range [from, to) or the given ascending ids. The
+     * partitions hold the rows at their index within the selection.
+     */
+    private record IdSelection(int from, int to, int[] ids) {
+
+        static IdSelection ofRange(int from, int to) {
+            return new IdSelection(from, to, null);
+        }
+
+        static IdSelection ofIds(int[] ids) {
+            return new IdSelection(-1, -1, ids);
+        }
+
+        String condition() {
+            return ids == null ? "id >= ? and id < ?" : "id = any(?)";
+        }
+
+        void bind(Connection conn, PreparedStatement statement) throws SQLException {
+            if (ids == null) {
+                statement.setInt(1, from);
+                statement.setInt(2, to);
+            } else {
+                statement.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+            }
+        }
+
+        int size() {
+            return ids == null ? to - from : ids.length;
+        }
+
+        int indexOf(int id) {
+            return ids == null ? id - from : Arrays.binarySearch(ids, id);
+        }
+    }
+
+
+    /**
+     * Loads the metadata of the selected rows. The integer, float, date and boolean values are set in the columns of
+     * the database, the string values in the returned builders which hold the rows at their index in the selection.
+     */
+    private static Map<String, StringColumn.Builder> loadMetadataPartition(
+        ComboPooledDataSource databasePool,
+        String tableSuffix,
+        Database database,
+        IdSelection selection,
+        AtomicInteger loadedRows
+    ) throws SQLException {
+        String metadataSql = """
+            select *
+            from y_main_metadata%s
+            where %s
+            order by id;
+            """.formatted(tableSuffix, selection.condition());
+        Map<String, StringColumn.Builder> stringColumnBuilders = new HashMap<>();
+        for (String stringColumn : STRING_COLUMNS) {
+            stringColumnBuilders.put(stringColumn, new StringColumn.Builder(selection.size()));
+        }
+        try (Connection conn = databasePool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(metadataSql)) {
+                selection.bind(conn, statement);
                 statement.setFetchSize(20000);
-                try (ResultSet rs = statement.executeQuery(metadataSql)) {
-                    int i = 0;
+                try (ResultSet rs = statement.executeQuery()) {
                     while (rs.next()) {
-                        if (i % 100000 == 0) {
+                        int i = rs.getInt("id");
+                        int loaded = loadedRows.incrementAndGet();
+                        if (loaded % 100000 == 0) {
                             System.out.println(LocalDateTime.now() +
-                                " Loading metadata to in-memory database: " + i + "/" + numberRows);
+                                " Loading metadata to in-memory database: " + loaded + "/" + database.size);
                         }
                         for (String stringColumn : STRING_COLUMNS) {
-                            String s = rs.getString(stringColumn);
-                            database.stringColumns.get(stringColumn)[i] = s != null ? s.intern() : null;
+                            stringColumnBuilders.get(stringColumn).set(selection.indexOf(i),
+                                rs.getString(stringColumn));
                         }
                         for (String integerColumn : INTEGER_COLUMNS) {
-                            database.integerColumns.get(integerColumn)[i] = rs.getObject(integerColumn, Integer.class);
+                            database.integerColumns.get(integerColumn)
+                                .set(i, rs.getObject(integerColumn, Integer.class));
                         }
                         for (String floatColumn : FLOAT_COLUMNS) {
-                            database.floatColumns.get(floatColumn)[i] = Utils.nullableDoubleToFloat(
-                                rs.getObject(floatColumn, Double.class));
+                            database.floatColumns.get(floatColumn).set(i, Utils.nullableDoubleToFloat(
+                                rs.getObject(floatColumn, Double.class)));
                         }
                         for (String dateColumn : DATE_COLUMNS) {
                             Date dateObj = rs.getDate(dateColumn);
                             Integer dateInt = dateObj != null ? dateToInt(dateObj.toLocalDate()) : null;
-                            database.integerColumns.get(dateColumn)[i] = dateInt;
+                            database.integerColumns.get(dateColumn).set(i, dateInt);
                         }
                         for (String booleanColumn : BOOLEAN_COLUMNS) {
-                            database.booleanColumns.get(booleanColumn)[i] = rs.getObject(booleanColumn, Boolean.class);
+                            database.booleanColumns.get(booleanColumn)
+                                .set(i, rs.getObject(booleanColumn, Boolean.class));
                         }
-                        ++i;
                     }
                 }
-                // Fetch mutations and insertions
+            }
+            conn.setAutoCommit(true);
+        }
+        return stringColumnBuilders;
+    }
+
+
+    /**
+     * The mutations and insertions of the sequences of a partition. The mutation stores hold the sequences at their
+     * index in the selection, the ids in the insertion stores are the ids of the sequences.
+     */
+    private record SequencePartition(
+        MutationStore nucMutationStore,
+        Map<String, MutationStore> aaMutationStores,
+        InsertionStore nucInsertionStore,
+        Map<String, InsertionStore> aaInsertionStores
+    ) {
+    }
+
+
+    /**
+     * Loads the mutations and insertions of the selected sequences. The mutations and unknowns are read
+     * from the binary encoded columns (see {@link MutationEncoding}) if they are available and filled and parsed from
+     * the text columns otherwise. The strings are parsed by a {@link SequenceEntryScanner}.
+     *
+     * @param tableSuffix The suffix of the tables to load (see {@link #loadDatabaseFromTables})
+     * @param hasEncodedMutations Whether y_main_sequence has the columns with the encoded mutations
+     */
+    private static SequencePartition loadSequencePartition(
+        ComboPooledDataSource databasePool,
+        String tableSuffix,
+        boolean hasEncodedMutations,
+        int numberRows,
+        IdSelection selection,
+        AtomicInteger loadedRows
+    ) throws SQLException {
+        // The text columns are only fetched for the rows without encoded mutations.
+        String sequenceSql = hasEncodedMutations ? """
+            select
+              id,
+              nuc_mutations_encoded,
+              aa_mutations_encoded,
+              case when aa_mutations_encoded is null then coalesce(aa_mutations, '') end as aa_mutations,
+              coalesce(aa_insertions, '') as aa_insertions,
+              case when aa_mutations_encoded is null then coalesce(aa_unknowns, '') end as aa_unknowns,
+              case when nuc_mutations_encoded is null then coalesce(nuc_substitutions, '') end as nuc_substitutions,
+              case when nuc_mutations_encoded is null then coalesce(nuc_deletions, '') end as nuc_deletions,
+              coalesce(nuc_insertions, '') as nuc_insertions,
+              case when nuc_mutations_encoded is null then coalesce(nuc_unknowns, '') end as nuc_unknowns
+            from y_main_sequence%s
+            where %s
+            order by id;
+            """.formatted(tableSuffix, selection.condition()) : """
+            select
+              id,
+              null::bytea as nuc_mutations_encoded,
+              null::bytea as aa_mutations_encoded,
+              coalesce(aa_mutations, '') as aa_mutations,
+              coalesce(aa_insertions, '') as aa_insertions,
+              coalesce(aa_unknowns, '') as aa_unknowns,
+              coalesce(nuc_substitutions, '') as nuc_substitutions,
+              coalesce(nuc_deletions, '') as nuc_deletions,
+              coalesce(nuc_insertions, '') as nuc_insertions,
+              coalesce(nuc_unknowns, '') as nuc_unknowns
+            from y_main_sequence%s
+            where %s
+            order by id;
+            """.formatted(tableSuffix, selection.condition());
+        SequencePartition partition = new SequencePartition(new MutationStore(selection.size()), new HashMap<>(),
+            new InsertionStore(), new HashMap<>());
+        for (String name : ReferenceGenomeData.getInstance().getGeneNames()) {
+            partition.aaMutationStores().put(name, new MutationStore(selection.size()));
+            partition.aaInsertionStores().put(name, new InsertionStore());
+        }
+        SequenceEntryScanner scanner = new SequenceEntryScanner(partition.nucMutationStore(),
+            partition.aaMutationStores(), partition.nucInsertionStore(), partition.aaInsertionStores());
+        try (Connection conn = databasePool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(sequenceSql)) {
+                selection.bind(conn, statement);
                 statement.setFetchSize(20000);
-                try (ResultSet rs = statement.executeQuery(sequenceSql)) {
-                    int i = 0;
+                try (ResultSet rs = statement.executeQuery()) {
                     while (rs.next()) {
-                        if (i % 100000 == 0) {
-                            System.out.println(LocalDateTime.now() +
-                                " Loading mutations (and insertions) to in-memory database: " + i + "/" + numberRows);
+                        int loaded = loadedRows.incrementAndGet();
+                        if (loaded % 100000 == 0) {
+                            System.out.println(LocalDateTime.now() + " Loading mutations (and insertions) to " +
+                                "in-memory database: " + loaded + "/" + numberRows);
                         }
                         int id = rs.getInt("id");
-                        // Nuc mutations
-                        String nucMutationsString = rs.getString("nuc_substitutions") +
-                            "," + rs.getString("nuc_deletions");
-                        List<MutationStore.Mutation> nucMutations = new ArrayList<>();
-                        for (String mut : nucMutationsString.split(",")) {
-                            if (mut.isBlank() || mut.equals("null")) {
-                                continue;
-                            }
-                            nucMutations.add(MutationStore.Mutation.parse(mut));
+                        int index = selection.indexOf(id);
+                        byte[] nucMutationsEncoded = rs.getBytes("nuc_mutations_encoded");
+                        if (nucMutationsEncoded != null) {
+                            scanner.putEncodedNucEntry(index, nucMutationsEncoded);
+                        } else {
+                            scanner.putNucEntry(index, rs.getString("nuc_substitutions"),
+                                rs.getString("nuc_deletions"), rs.getString("nuc_unknowns"));
                         }
-                        String nucUnknownsString = rs.getString("nuc_unknowns");
-                        List<String> nucUnknowns = Arrays.stream(nucUnknownsString.split(","))
-                            .filter(s -> !s.isBlank())
-                            .collect(Collectors.toList());
-                        database.nucMutationStore.putEntry(id, nucMutations, nucUnknowns);
-                        // AA mutations
-                        String aaMutationsString = rs.getString("aa_mutations");
-                        String aaUnknownsString = rs.getString("aa_unknowns");
-                        Map<String, List<MutationStore.Mutation>> aaMutationsPerGene = new HashMap<>();
-                        Map<String, List<String>> aaUnknownsPerGene = new HashMap<>();
-                        for (String name : ReferenceGenomeData.getInstance().getGeneNames()) {
-                            aaMutationsPerGene.put(name, new ArrayList<>());
-                            aaUnknownsPerGene.put(name, new ArrayList<>());
+                        byte[] aaMutationsEncoded = rs.getBytes("aa_mutations_encoded");
+                        if (aaMutationsEncoded != null) {
+                            scanner.putEncodedAaEntry(index, aaMutationsEncoded);
+                        } else {
+                            scanner.putAaEntry(index, rs.getString("aa_mutations"), rs.getString("aa_unknowns"));
                         }
-                        for (String mutWithGene : aaMutationsString.split(",")) {
-                            if (mutWithGene.isBlank()) {
-                                continue;
-                            }
-                            String[] parts = mutWithGene.split(":");
-                            String gene = parts[0];
-                            String mut = parts[1];
-                            aaMutationsPerGene.get(gene).add(MutationStore.Mutation.parse(mut));
-                        }
-                        Arrays.stream(aaUnknownsString.split(","))
-                            .filter(s -> !s.isBlank())
-                            .forEach(unknownsWithGene -> {
-                                String[] parts = unknownsWithGene.split(":");
-                                String gene = parts[0];
-                                String unknowns = parts[1];
-                                aaUnknownsPerGene.get(gene).add(unknowns);
-                            });
-                        database.aaMutationStores.forEach((gene, mutationStore) -> {
-                            mutationStore.putEntry(id, aaMutationsPerGene.get(gene), aaUnknownsPerGene.get(gene));
-                        });
-                        // Nuc insertions
-                        String nucInsertionsString = rs.getString("nuc_insertions");
-                        if (!nucInsertionsString.isBlank()) {
-                            Arrays.stream(nucInsertionsString.split(","))
-                                .forEach(ins -> database.nucInsertionStore.putInsertions(id, ins));
-                        }
-                        // AA insertions
-                        String aaInsertionsString = rs.getString("aa_insertions");
-                        if (!aaInsertionsString.isBlank()) {
-                            Arrays.stream(aaInsertionsString.split(","))
-                                .forEach(geneIns -> {
-                                    String[] split = geneIns.split(":", 2);
-                                    String gene = split[0];
-                                    String ins = split[1];
-                                    database.aaInsertionStores.get(gene).putInsertions(id, ins);
-                                });
-                        }
-                        // Done
-                        ++i;
+                        scanner.putNucInsertions(id, rs.getString("nuc_insertions"));
+                        scanner.putAaInsertions(id, rs.getString("aa_insertions"));
                     }
                 }
             }
             conn.setAutoCommit(true);
-            return database;
         }
+        return partition;
+    }
+
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Loading a partition of the database failed.", e.getCause());
+        }
+    }
+
+    private static PackedNucleotideStore loadPackedNucStore(Connection conn, int numberRows) throws SQLException {
+        String sql = """
+            select position, data_compressed
+            from y_main_sequence_columnar;
+            """;
+        int numberPositions = ReferenceGenomeData.getInstance().getNucleotideSequence().length();
+        PackedNucleotideStore store = new PackedNucleotideStore(numberRows, numberPositions);
+        try (Statement statement = conn.createStatement()) {
+            statement.setFetchSize(100);
+            try (ResultSet rs = statement.executeQuery(sql)) {
+                int i = 0;
+                while (rs.next()) {
+                    if (i % 1000 == 0) {
+                        System.out.println(LocalDateTime.now() +
+                            " Loading nucleotide columns to in-memory database: " + i + "/" + numberPositions);
+                    }
+                    byte[] bases = columnarCompressor.decompressBytes(rs.getBytes("data_compressed"));
+                    if (bases.length != numberRows) {
+                        // New data arrived while loading.
+                        throw new OutdatedDataVersionException();
+                    }
+                    store.putColumn(rs.getInt("position"), bases);
+                    ++i;
+                }
+            }
+        }
+        return store;
     }
 
     public static Integer dateToInt(LocalDate date) {
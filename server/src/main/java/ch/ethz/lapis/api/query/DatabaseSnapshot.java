@@ -0,0 +1,415 @@
+package ch.ethz.lapis.api.query;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot file of the in-memory database of one data version. It is written from the staging tables before
+ * they are switched in (see {@link Database#writeSnapshotOfStagingTables}) and read when the API loads the data
+ * version so that the data do not have to be fetched and parsed row by row.
+ * <p>
+ * The file starts with a header (magic number, format version, data version, payload length and a CRC32 checksum of
+ * the payload) followed by the payload. The payload is a sequence of values and arrays in little-endian order; it is
+ * written by {@link Writer} and read in the same order by {@link Reader}. The reader maps the file into memory window
+ * by window and copies the arrays with bulk operations.
+ */
+public final class DatabaseSnapshot {
+
+    private static final int MAGIC = 0x4C415053; // "LAPS"
+
+    /**
+     * Has to be increased whenever the layout of the payload changes. Files of other versions are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("database-(\\d+)\\.snapshot");
+
+    private DatabaseSnapshot() {
+    }
+
+
+    public static Path getFile(Path directory, long dataVersion) {
+        return directory.resolve("database-" + dataVersion + ".snapshot");
+    }
+
+
+    /**
+     * Deletes all snapshots in the directory except of the ones of the newest data versions. Replicas that have mapped
+     * a deleted file can still read it.
+     */
+    public static void deleteOldSnapshots(Path directory, int numberToKeep) throws IOException {
+        List<Long> dataVersions = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_NAME_PATTERN.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    dataVersions.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        dataVersions.sort(Comparator.reverseOrder());
+        for (Long dataVersion : dataVersions.subList(Math.min(numberToKeep, dataVersions.size()),
+            dataVersions.size())) {
+            Files.deleteIfExists(getFile(directory, dataVersion));
+        }
+    }
+
+
+    /**
+     * Writes the payload to a temporary file. The header is written and the file is moved to its final name by
+     * {@link #commit()} so that readers never see an incomplete snapshot.
+     */
+    public static class Writer implements Closeable {
+
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        private final Path file;
+        private final Path temporaryFile;
+        private final long dataVersion;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 checksum = new CRC32();
+        private long payloadLength = 0;
+        private boolean committed = false;
+
+        public Writer(Path file, long dataVersion) throws IOException {
+            this.file = file;
+            this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.dataVersion = dataVersion;
+            this.channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+
+        public void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+
+        public void writeLong(long value) throws IOException {
+            ensureRemaining(8);
+            buffer.putLong(value);
+        }
+
+
+        /**
+         * @param value The string may be null.
+         */
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (int i = 0; i < bytes.length; i += BUFFER_SIZE) {
+                int length = Math.min(BUFFER_SIZE, bytes.length - i);
+                ensureRemaining(length);
+                buffer.put(bytes, i, length);
+            }
+        }
+
+
+        /**
+         * Writes the first length values of the array; they are read by {@link Reader#readInts(int)}.
+         */
+        public void writeInts(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensureRemaining(4);
+                int n = Math.min(buffer.remaining() / 4, length - i);
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+
+        public void writeShorts(short[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensureRemaining(2);
+                int n = Math.min(buffer.remaining() / 2, length - i);
+                buffer.asShortBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 2);
+                i += n;
+            }
+        }
+
+
+        public void writeLongs(long[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                ensureRemaining(8);
+                int n = Math.min(buffer.remaining() / 8, values.length - i);
+                buffer.asLongBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 8);
+                i += n;
+            }
+        }
+
+
+        public void writeFloats(float[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                ensureRemaining(4);
+                int n = Math.min(buffer.remaining() / 4, values.length - i);
+                buffer.asFloatBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+
+        private void flush() throws IOException {
+            buffer.flip();
+            payloadLength += buffer.remaining();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+
+        /**
+         * Writes the header and moves the file to its final name.
+         */
+        public void commit() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putLong(dataVersion);
+            header.putLong(payloadLength);
+            header.putLong(checksum.getValue());
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the values in the order in which they were written. The file is mapped into memory in windows. The
+     * checksum of the payload is verified when the reader is opened, before any length is read from the payload.
+     */
+    public static class Reader implements Closeable {
+
+        private static final int WINDOW_SIZE = 1 << 28;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long dataVersion;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        /**
+         * @throws RuntimeException If the file is not a snapshot of the supported format or the checksum does not match
+         */
+        public Reader(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                channel.close();
+                throw new RuntimeException("The snapshot " + file + " is truncated.");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            int magic = header.getInt();
+            int formatVersion = header.getInt();
+            this.dataVersion = header.getLong();
+            long payloadLength = header.getLong();
+            long expectedChecksum = header.getLong();
+            if (magic != MAGIC || formatVersion != FORMAT_VERSION || payloadLength != fileSize - HEADER_SIZE) {
+                channel.close();
+                throw new RuntimeException("The file " + file + " is not a complete snapshot of format version " +
+                    FORMAT_VERSION + ".");
+            }
+            // A corrupted length in the payload could otherwise lead to a huge allocation.
+            CRC32 checksum = new CRC32();
+            for (long start = HEADER_SIZE; start < fileSize; start += WINDOW_SIZE) {
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(WINDOW_SIZE, fileSize - start)));
+            }
+            if (checksum.getValue() != expectedChecksum) {
+                channel.close();
+                throw new RuntimeException("The checksum of the snapshot " + file + " does not match.");
+            }
+            mapWindow(HEADER_SIZE);
+        }
+
+
+        public long getDataVersion() {
+            return dataVersion;
+        }
+
+
+        public int readInt() throws IOException {
+            ensureRemaining(4);
+            return window.getInt();
+        }
+
+
+        public long readLong() throws IOException {
+            ensureRemaining(8);
+            return window.getLong();
+        }
+
+
+        public String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            checkLength(length, 1);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; ) {
+                ensureRemaining(1);
+                int n = Math.min(window.remaining(), length - i);
+                window.get(bytes, i, n);
+                i += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+
+        public int[] readInts(int length) throws IOException {
+            checkLength(length, 4);
+            int[] values = new int[length];
+            for (int i = 0; i < length; ) {
+                ensureRemaining(4);
+                int n = Math.min(window.remaining() / 4, length - i);
+                window.asIntBuffer().get(values, i, n);
+                window.position(window.position() + n * 4);
+                i += n;
+            }
+            return values;
+        }
+
+
+        public short[] readShorts(int length) throws IOException {
+            checkLength(length, 2);
+            short[] values = new short[length];
+            for (int i = 0; i < length; ) {
+                ensureRemaining(2);
+                int n = Math.min(window.remaining() / 2, length - i);
+                window.asShortBuffer().get(values, i, n);
+                window.position(window.position() + n * 2);
+                i += n;
+            }
+            return values;
+        }
+
+
+        public long[] readLongs(int length) throws IOException {
+            checkLength(length, 8);
+            long[] values = new long[length];
+            for (int i = 0; i < length; ) {
+                ensureRemaining(8);
+                int n = Math.min(window.remaining() / 8, length - i);
+                window.asLongBuffer().get(values, i, n);
+                window.position(window.position() + n * 8);
+                i += n;
+            }
+            return values;
+        }
+
+
+        public float[] readFloats(int length) throws IOException {
+            checkLength(length, 4);
+            float[] values = new float[length];
+            for (int i = 0; i < length; ) {
+                ensureRemaining(4);
+                int n = Math.min(window.remaining() / 4, length - i);
+                window.asFloatBuffer().get(values, i, n);
+                window.position(window.position() + n * 4);
+                i += n;
+            }
+            return values;
+        }
+
+
+        /**
+         * @throws RuntimeException If the rest of the payload is shorter than the given number of values
+         */
+        private void checkLength(int length, int bytesPerValue) {
+            if (length < 0 || (long) length * bytesPerValue > fileSize - (windowStart + window.position())) {
+                throw new RuntimeException("Invalid length " + length + " in the snapshot.");
+            }
+        }
+
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (fileSize - position < bytes) {
+                    throw new RuntimeException("Unexpected end of the snapshot.");
+                }
+                mapWindow(position);
+            }
+        }
+
+
+        private void mapWindow(long start) throws IOException {
+            long length = Math.min(WINDOW_SIZE, fileSize - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+            windowStart = start;
+        }
+
+
+        /**
+         * @throws RuntimeException If the payload was not read completely
+         */
+        public void verify() {
+            if (windowStart + window.position() != fileSize) {
+                throw new RuntimeException("The snapshot has unread data.");
+            }
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ch.ethz.lapis.api.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A float column. The values are kept in a primitive array and a separate validity bitmap marks the rows that are not
+ * null. The value of a null row is 0 and must not be read.
+ */
+public class FloatColumn {
+
+    private final float[] values;
+    private final long[] validity;
+
+    public FloatColumn(int size) {
+        this(new float[size], Bitmaps.allocate(size));
+    }
+
+
+    private FloatColumn(float[] values, long[] validity) {
+        this.values = values;
+        this.validity = validity;
+    }
+
+
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(values.length);
+        writer.writeFloats(values);
+        writer.writeLongs(validity);
+    }
+
+
+    static FloatColumn readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        int size = reader.readInt();
+        return new FloatColumn(reader.readFloats(size), reader.readLongs(Bitmaps.allocate(size).length));
+    }
+
+
+    public int size() {
+        return values.length;
+    }
+
+
+    /**
+     * @return A copy of the first size rows; rows after the end of this column are null. The copy can be modified
+     *     without affecting this column.
+     */
+    public FloatColumn copyOf(int size) {
+        return new FloatColumn(Arrays.copyOf(values, size), Bitmaps.copyOf(validity, size));
+    }
+
+
+    public void set(int row, Float value) {
+        if (value != null) {
+            values[row] = value;
+            Bitmaps.set(validity, row);
+        } else {
+            values[row] = 0;
+            Bitmaps.clear(validity, row);
+        }
+    }
+
+
+    public boolean isNull(int row) {
+        return !Bitmaps.get(validity, row);
+    }
+
+
+    /**
+     * @return The value of a row that is not null
+     */
+    public float getFloat(int row) {
+        return values[row];
+    }
+
+
+    public Float get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+
+    /**
+     * Clears the bit of every row in the bitmap that is null or not within [from, to].
+     */
+    public void filterBetween(long[] matched, float from, float to) {
+        RowPartitions.forEach(matched.length, (fromWord, toWord) -> {
+            for (int w = fromWord; w < toWord; w++) {
+                long word = matched[w] & validity[w];
+                if (word == 0) {
+                    matched[w] = 0;
+                    continue;
+                }
+                int start = w << 6;
+                int end = Math.min(start + 64, values.length);
+                long inRange = 0;
+                for (int i = start; i < end; i++) {
+                    float value = values[i];
+                    if (value >= from && value <= to) {
+                        inRange |= 1L << i;
+                    }
+                }
+                matched[w] = word & inRange;
+            }
+        });
+    }
+}
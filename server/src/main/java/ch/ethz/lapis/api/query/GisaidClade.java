@@ -2,7 +2,16 @@ package ch.ethz.lapis.api.query;
 
 public record GisaidClade(String clade) implements VariantQueryExpr {
     @Override
-    public boolean[] evaluate(Database database) {
-        return new StringValue(clade, Database.Columns.GISAID_CLADE, false).evaluate(database);
+    public long[] evaluate(Database database) {
+        return toStringValue().evaluate(database);
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return toStringValue().evaluate(database, candidates);
+    }
+
+    StringValue toStringValue() {
+        return new StringValue(clade, Database.Columns.GISAID_CLADE, false);
     }
 }
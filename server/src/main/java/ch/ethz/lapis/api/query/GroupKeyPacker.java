@@ -0,0 +1,217 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs the values of the grouping columns of a row into one long so that the rows can be counted per group without
+ * creating objects. Every column is mapped to a small non-negative code (0 always stands for null):
+ * <ul>
+ *     <li>String columns: the dictionary code</li>
+ *     <li>Integer columns (including dates): the value minus the smallest value of the column plus one</li>
+ *     <li>Boolean columns: 1 for false and 2 for true</li>
+ * </ul>
+ * The codes are concatenated, every column taking as many bits as its largest code needs. The values are only decoded
+ * for the keys of the final groups. The codes of integer columns are ordered like the values so that the keys are
+ * ordered by the last column first.
+ */
+public class GroupKeyPacker {
+
+    private static final int MAX_BITS = 63;
+
+    private interface Column {
+        int getNumberCodes();
+
+        int getCode(int row);
+
+        Object decode(int code);
+    }
+
+    private final Column[] columns;
+    private final int[] shifts;
+    private final long[] masks;
+    private final int totalBits;
+
+
+    private GroupKeyPacker(Column[] columns) {
+        this.columns = columns;
+        this.shifts = new int[columns.length];
+        this.masks = new long[columns.length];
+        int shift = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int bits = bitsFor(columns[i].getNumberCodes());
+            shifts[i] = shift;
+            masks[i] = (1L << bits) - 1;
+            shift += bits;
+        }
+        this.totalBits = shift;
+    }
+
+
+    /**
+     * @return The packer or null if one of the columns cannot be encoded (float columns or integer columns with a huge
+     * range) or the key would not fit into a long.
+     */
+    public static GroupKeyPacker create(Database database, List<String> columnNames) {
+        Column[] columns = new Column[columnNames.size()];
+        int totalBits = 0;
+        for (int i = 0; i < columns.length; i++) {
+            String columnName = columnNames.get(i);
+            StringColumn stringColumn = database.getStringColumn(columnName);
+            IntColumn intColumn = database.getIntColumn(columnName);
+            BooleanColumn boolColumn = database.getBoolColumn(columnName);
+            if (stringColumn != null) {
+                columns[i] = ofStringColumn(stringColumn);
+            } else if (intColumn != null) {
+                columns[i] = ofIntColumn(intColumn);
+            } else if (boolColumn != null) {
+                columns[i] = ofBoolColumn(boolColumn);
+            }
+            if (columns[i] == null) {
+                return null;
+            }
+            totalBits += bitsFor(columns[i].getNumberCodes());
+        }
+        if (totalBits > MAX_BITS) {
+            return null;
+        }
+        return new GroupKeyPacker(columns);
+    }
+
+
+    /**
+     * @return The number of bits of a key; all keys are smaller than 2^totalBits.
+     */
+    public int getTotalBits() {
+        return totalBits;
+    }
+
+
+    public long pack(int row) {
+        long key = 0;
+        for (int i = 0; i < columns.length; i++) {
+            key |= (long) columns[i].getCode(row) << shifts[i];
+        }
+        return key;
+    }
+
+
+    /**
+     * @return The values of the columns; dates are returned as epoch days.
+     */
+    public List<Object> unpack(long key) {
+        List<Object> values = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            values.add(decode(i, getCode(key, i)));
+        }
+        return values;
+    }
+
+
+    public int getNumberCodes(int columnIndex) {
+        return columns[columnIndex].getNumberCodes();
+    }
+
+
+    /**
+     * @return The position of the lowest bit of the column in a key
+     */
+    public int getShift(int columnIndex) {
+        return shifts[columnIndex];
+    }
+
+
+    /**
+     * @return A mask that selects the bits of the column in a key
+     */
+    public long getColumnMask(int columnIndex) {
+        return masks[columnIndex] << shifts[columnIndex];
+    }
+
+
+    public int getCode(long key, int columnIndex) {
+        return (int) ((key >>> shifts[columnIndex]) & masks[columnIndex]);
+    }
+
+
+    public Object decode(int columnIndex, int code) {
+        return columns[columnIndex].decode(code);
+    }
+
+
+    private static int bitsFor(int numberCodes) {
+        return numberCodes <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(numberCodes - 1);
+    }
+
+
+    private static Column ofStringColumn(StringColumn column) {
+        return new Column() {
+            @Override
+            public int getNumberCodes() {
+                return column.getDictionarySize();
+            }
+
+            @Override
+            public int getCode(int row) {
+                return column.getCode(row);
+            }
+
+            @Override
+            public Object decode(int code) {
+                return column.decode(code);
+            }
+        };
+    }
+
+
+    /**
+     * @return The column or null if the range of the values is too large for the codes
+     */
+    private static Column ofIntColumn(IntColumn column) {
+        int[] range = column.getRange();
+        int min = range != null ? range[0] : 0;
+        long numberCodes = range != null ? (long) range[1] - range[0] + 2 : 1;
+        if (numberCodes > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new Column() {
+            @Override
+            public int getNumberCodes() {
+                return (int) numberCodes;
+            }
+
+            @Override
+            public int getCode(int row) {
+                return column.isNull(row) ? 0 : column.getInt(row) - min + 1;
+            }
+
+            @Override
+            public Object decode(int code) {
+                return code == 0 ? null : code - 1 + min;
+            }
+        };
+    }
+
+
+    private static Column ofBoolColumn(BooleanColumn column) {
+        List<Boolean> values = Arrays.asList(null, false, true);
+        return new Column() {
+            @Override
+            public int getNumberCodes() {
+                return 3;
+            }
+
+            @Override
+            public int getCode(int row) {
+                Boolean value = column.get(row);
+                return value == null ? 0 : value ? 2 : 1;
+            }
+
+            @Override
+            public Object decode(int code) {
+                return values.get(code);
+            }
+        };
+    }
+}
@@ -1,5 +1,6 @@
 package ch.ethz.lapis.api.query;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -17,22 +18,55 @@ public class InsertionStore {
      * @param insertion In the format as generated by Nextclade, e.g., 1234:AATCCG or 2345:EPE (only upper-case)
      */
     public void putInsertions(int sequenceId, String insertion) {
-        String[] split = insertion.split(":");
-        short position = Short.parseShort(split[0]);
-        String insertedBases = split[1];
-        if (!positionMap.containsKey(position)) {
-            positionMap.put(position, new HashMap<>());
+        int colon = insertion.indexOf(':');
+        if (colon < 0) {
+            throw new RuntimeException("Invalid insertion: " + insertion);
+        }
+        short position = Short.parseShort(insertion.substring(0, colon));
+        String insertedBases = insertion.substring(colon + 1);
+        positionMap.computeIfAbsent(position, p -> new HashMap<>())
+            .computeIfAbsent(insertedBases, b -> new ArrayList<>())
+            .add(sequenceId);
+        sequenceMap.computeIfAbsent(sequenceId, id -> new ArrayList<>()).add(insertion);
+    }
+
+    /**
+     * Puts the insertions of the other store in the order of the sequence ids.
+     */
+    public void putAll(InsertionStore other) {
+        List<Integer> sequenceIds = new ArrayList<>(other.sequenceMap.keySet());
+        Collections.sort(sequenceIds);
+        for (int sequenceId : sequenceIds) {
+            for (String insertion : other.sequenceMap.get(sequenceId)) {
+                putInsertions(sequenceId, insertion);
+            }
         }
-        var insertionMapAtPosition = positionMap.get(position);
-        if (!insertionMapAtPosition.containsKey(insertedBases)) {
-            insertionMapAtPosition.put(insertedBases, new ArrayList<>());
+    }
+
+    /**
+     * Creates a new store that contains the insertions of the base store except of the changed sequences whose
+     * insertions are taken from the store of the changes. The base store is not modified.
+     *
+     * @param numberRows The insertions of the sequences of the base store with larger ids are dropped.
+     * @param changedIds A bitmap of the sequence ids in [0, numberRows) whose insertions are replaced
+     */
+    public static InsertionStore withChanges(InsertionStore base, int numberRows, long[] changedIds,
+                                             InsertionStore changes) {
+        List<Integer> sequenceIds = new ArrayList<>(changes.sequenceMap.keySet());
+        for (int sequenceId : base.sequenceMap.keySet()) {
+            if (sequenceId < numberRows && !Bitmaps.get(changedIds, sequenceId)) {
+                sequenceIds.add(sequenceId);
+            }
         }
-        var sequencesWithInsertion = insertionMapAtPosition.get(insertedBases);
-        sequencesWithInsertion.add(sequenceId);
-        if (!sequenceMap.containsKey(sequenceId)) {
-            sequenceMap.put(sequenceId, new ArrayList<>());
+        Collections.sort(sequenceIds);
+        InsertionStore store = new InsertionStore();
+        for (int sequenceId : sequenceIds) {
+            InsertionStore source = Bitmaps.get(changedIds, sequenceId) ? changes : base;
+            for (String insertion : source.sequenceMap.get(sequenceId)) {
+                store.putInsertions(sequenceId, insertion);
+            }
         }
-        sequenceMap.get(sequenceId).add(insertion);
+        return store;
     }
 
     /**
@@ -82,6 +116,36 @@ public class InsertionStore {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Writes the insertions of every sequence. The reader puts them again in the order of the sequence ids.
+     */
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        List<Integer> sequenceIds = new ArrayList<>(sequenceMap.keySet());
+        Collections.sort(sequenceIds);
+        writer.writeInt(sequenceIds.size());
+        for (int sequenceId : sequenceIds) {
+            List<String> insertions = sequenceMap.get(sequenceId);
+            writer.writeInt(sequenceId);
+            writer.writeInt(insertions.size());
+            for (String insertion : insertions) {
+                writer.writeString(insertion);
+            }
+        }
+    }
+
+    static InsertionStore readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        InsertionStore store = new InsertionStore();
+        int numberSequences = reader.readInt();
+        for (int i = 0; i < numberSequences; i++) {
+            int sequenceId = reader.readInt();
+            int numberInsertions = reader.readInt();
+            for (int j = 0; j < numberInsertions; j++) {
+                store.putInsertions(sequenceId, reader.readString());
+            }
+        }
+        return store;
+    }
+
     public record InsertionCount(String insertion, int count) {
     }
 }
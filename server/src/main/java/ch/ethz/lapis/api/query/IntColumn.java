@@ -0,0 +1,133 @@
+package ch.ethz.lapis.api.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An integer column (also used for dates which are stored as epoch days). The values are kept in a primitive array
+ * and a separate validity bitmap marks the rows that are not null. The value of a null row is 0 and must not be read.
+ */
+public class IntColumn {
+
+    private final int[] values;
+    private final long[] validity;
+    private volatile int[] range;
+
+    public IntColumn(int size) {
+        this(new int[size], Bitmaps.allocate(size));
+    }
+
+
+    private IntColumn(int[] values, long[] validity) {
+        this.values = values;
+        this.validity = validity;
+    }
+
+
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(values.length);
+        writer.writeInts(values, values.length);
+        writer.writeLongs(validity);
+    }
+
+
+    static IntColumn readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        int size = reader.readInt();
+        return new IntColumn(reader.readInts(size), reader.readLongs(Bitmaps.allocate(size).length));
+    }
+
+
+    public int size() {
+        return values.length;
+    }
+
+
+    /**
+     * @return A copy of the first size rows; rows after the end of this column are null. The copy can be modified
+     *     without affecting this column.
+     */
+    public IntColumn copyOf(int size) {
+        return new IntColumn(Arrays.copyOf(values, size), Bitmaps.copyOf(validity, size));
+    }
+
+
+    public void set(int row, Integer value) {
+        if (value != null) {
+            values[row] = value;
+            Bitmaps.set(validity, row);
+        } else {
+            values[row] = 0;
+            Bitmaps.clear(validity, row);
+        }
+    }
+
+
+    public boolean isNull(int row) {
+        return !Bitmaps.get(validity, row);
+    }
+
+
+    /**
+     * @return The value of a row that is not null
+     */
+    public int getInt(int row) {
+        return values[row];
+    }
+
+
+    public Integer get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+
+    /**
+     * Clears the bit of every row in the bitmap that is null or not within [from, to].
+     */
+    public void filterBetween(long[] matched, int from, int to) {
+        RowPartitions.forEach(matched.length, (fromWord, toWord) -> {
+            for (int w = fromWord; w < toWord; w++) {
+                long word = matched[w] & validity[w];
+                if (word == 0) {
+                    matched[w] = 0;
+                    continue;
+                }
+                int start = w << 6;
+                int end = Math.min(start + 64, values.length);
+                long inRange = 0;
+                for (int i = start; i < end; i++) {
+                    int value = values[i];
+                    if (value >= from && value <= to) {
+                        inRange |= 1L << i;
+                    }
+                }
+                matched[w] = word & inRange;
+            }
+        });
+    }
+
+
+    /**
+     * The range is computed on the first call and cached; the column must not be modified afterwards.
+     *
+     * @return {min, max} of the values that are not null or null if all values are null
+     */
+    public int[] getRange() {
+        int[] range = this.range;
+        if (range == null) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            boolean found = false;
+            for (int i = 0; i < values.length; i++) {
+                if (!isNull(i)) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                    found = true;
+                }
+            }
+            // An empty array marks a column without values.
+            range = found ? new int[] { min, max } : new int[0];
+            this.range = range;
+        }
+        return range.length == 0 ? null : range;
+    }
+}
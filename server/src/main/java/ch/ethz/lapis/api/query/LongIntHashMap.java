@@ -0,0 +1,119 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from non-negative long keys to int counts that uses open addressing with linear probing on primitive
+ * arrays. It avoids the boxing and the entry objects of a HashMap and is used to count the rows per group.
+ */
+public class LongIntHashMap {
+
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    @FunctionalInterface
+    public interface LongIntConsumer {
+        void accept(long key, int value);
+    }
+
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+
+    /**
+     * @param expectedSize The number of keys that can be inserted without resizing
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return The value of the key or 0 if the key is not in the map
+     */
+    public int get(long key) {
+        int slot = findSlot(keys, key);
+        return keys[slot] == EMPTY ? 0 : values[slot];
+    }
+
+
+    /**
+     * Adds the delta to the value of the key. A key that is not in the map yet starts with 0.
+     *
+     * @param key A non-negative key
+     */
+    public void addTo(long key, int delta) {
+        if (key < 0) {
+            throw new IllegalArgumentException("The key must not be negative: " + key);
+        }
+        int slot = findSlot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+            values[slot] = delta;
+            // The load factor is kept below 0.5 so that the probe sequences stay short.
+            if (size * 2 > keys.length) {
+                resize();
+            }
+        } else {
+            values[slot] += delta;
+        }
+    }
+
+
+    public void forEach(LongIntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+
+    private static int findSlot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+    }
+
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -6,25 +6,33 @@ import ch.ethz.lapis.api.entity.NucInsertion;
 import ch.ethz.lapis.api.entity.NucMutation;
 import ch.ethz.lapis.api.exception.MalformedVariantQueryException;
 
+import java.util.stream.Collectors;
+
 public class Maybe extends Single {
 
+    public Maybe(VariantQueryExpr value) {
+        super(value);
+    }
+
     /**
      * The maybe operator does not do anything by itself. The maybe logic must be pushed down to the tips of the query
-     * tree before calling the evalute() method.
+     * tree with {@link #pushDownMaybe(VariantQueryExpr)} which removes all Maybe nodes.
      */
-    private boolean pushedDown = false;
+    @Override
+    public long[] evaluate(Database database) {
+        throw new RuntimeException("Unexpected error: The maybe operator must be pushed down before evaluating.");
+    }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        if (!pushedDown) {
-            throw new RuntimeException("Unexpected error: The maybe operator must be pushed down before evaluating.");
-        }
-        return getValue().evaluate(database);
+    public long[] evaluate(Database database, long[] candidates) {
+        throw new RuntimeException("Unexpected error: The maybe operator must be pushed down before evaluating.");
     }
 
-    public Maybe setPushedDown(boolean pushedDown) {
-        this.pushedDown = pushedDown;
-        return this;
+    @Override
+    public String toString() {
+        return "Maybe{" +
+            "value=" + getValue() +
+            '}';
     }
 
     /**
@@ -46,29 +54,34 @@ public class Maybe extends Single {
      * </ul>
      * where definitely() is the "normal" mode where unknowns are treated like false.
      * <p>
-     * If there is no maybe in the query, the function won't change anything.
+     * The given tree is not modified. The returned tree does not contain any Maybe nodes; the mutations within a maybe
+     * are replaced by copies that apply the maybe logic.
      */
-    public static void pushDownMaybe(VariantQueryExpr expr) {
-        pushDownMaybeInternal(expr, false);
+    public static VariantQueryExpr pushDownMaybe(VariantQueryExpr expr) {
+        return pushDownMaybeInternal(expr, false);
     }
 
-    private static void pushDownMaybeInternal(VariantQueryExpr expr, boolean inMaybeMode) {
+    private static VariantQueryExpr pushDownMaybeInternal(VariantQueryExpr expr, boolean inMaybeMode) {
         if (expr instanceof Maybe x) {
             // maybe(A) => go into maybe mode; maybe(maybe(A)) won't have an effect.
-            x.setPushedDown(true);
-            pushDownMaybeInternal(x.getValue(), true);
+            return pushDownMaybeInternal(x.getValue(), true);
         } else if (expr instanceof Negation x) {
-            pushDownMaybeInternal(x.getValue(), false);
+            return new Negation(pushDownMaybeInternal(x.getValue(), false));
         } else if (expr instanceof Single x) {
-            pushDownMaybeInternal(x.getValue(), inMaybeMode);
+            return new Single(pushDownMaybeInternal(x.getValue(), inMaybeMode));
         } else if (expr instanceof BiOp x) {
-            pushDownMaybeInternal(x.getLeft(), inMaybeMode);
-            pushDownMaybeInternal(x.getRight(), inMaybeMode);
+            return new BiOp(
+                x.getOpType(),
+                pushDownMaybeInternal(x.getLeft(), inMaybeMode),
+                pushDownMaybeInternal(x.getRight(), inMaybeMode)
+            );
         } else if (expr instanceof NOf x) {
             if (inMaybeMode && x.isExactMode()) {
                 throw new MalformedVariantQueryException("exactly-n-of may not occur within a maybe().");
             }
-            x.getSubExprs().forEach(e -> pushDownMaybeInternal(e, inMaybeMode));
+            return new NOf(x.isExactMode(), x.getN(), x.getSubExprs().stream()
+                .map(e -> pushDownMaybeInternal(e, inMaybeMode))
+                .collect(Collectors.toList()));
         } else if (expr instanceof NucMutation x) {
             if (inMaybeMode && NucMutation.isAmbiguityCode(x.getMutation())) {
                 throw new MalformedVariantQueryException(
@@ -76,7 +89,7 @@ public class Maybe extends Single {
                         + "operator (\"|\") to query for different possible values."
                 );
             }
-            x.setApplyMaybe(inMaybeMode);
+            return inMaybeMode ? new NucMutation(x.getPosition(), x.getMutation(), true) : x;
         } else if (expr instanceof AAMutation x) {
             if (inMaybeMode && AAMutation.isAmbiguityCode(x.getMutation())) {
                 throw new MalformedVariantQueryException(
@@ -84,13 +97,14 @@ public class Maybe extends Single {
                         + "operator (\"|\") to query for different possible values."
                 );
             }
-            x.setApplyMaybe(inMaybeMode);
+            return inMaybeMode ? new AAMutation(x.getGene(), x.getPosition(), x.getMutation(), true) : x;
         } else if (expr instanceof NucInsertion || expr instanceof AAInsertion) {
             if (inMaybeMode) {
                 throw new MalformedVariantQueryException("insertions may not occur within a maybe().");
             }
+            return expr;
         } else if (expr instanceof PangoQuery || expr instanceof GisaidClade ||expr instanceof NextstrainClade) {
-          // Nothing to do
+            return expr;
         } else {
             throw new RuntimeException("Unexpected error: unexpected instance of VariantQueryExpr: " +
                 expr.getClass().getName());
@@ -0,0 +1,73 @@
+package ch.ethz.lapis.api.query;
+
+/**
+ * The mutation counts and the unknowns of groups of rows (e.g., of all sequences of a Pango lineage). The counts of a
+ * union of groups are the sums of the counts of the groups, so that a query for a lineage and its sub-lineages does not
+ * have to visit the rows.
+ * <p>
+ * The profiles are stored like the {@link MutationStore}: the non-zero mutation counts of all groups are concatenated
+ * in one array, and so are the non-zero entries of the difference arrays of the unknowns. The entries of the group g
+ * are at [offsets[g], offsets[g + 1]) of these arrays.
+ */
+final class MutationProfiles {
+
+    private final int[] numberRows;
+
+    private final int[] mutationOffsets;
+    private final int[] mutationIds;
+    private final int[] mutationCounts;
+
+    private final int[] unknownOffsets;
+    private final short[] unknownPositions;
+    private final int[] unknownDeltas;
+
+    MutationProfiles(
+        int[] numberRows,
+        int[] mutationOffsets,
+        int[] mutationIds,
+        int[] mutationCounts,
+        int[] unknownOffsets,
+        short[] unknownPositions,
+        int[] unknownDeltas
+    ) {
+        this.numberRows = numberRows;
+        this.mutationOffsets = mutationOffsets;
+        this.mutationIds = mutationIds;
+        this.mutationCounts = mutationCounts;
+        this.unknownOffsets = unknownOffsets;
+        this.unknownPositions = unknownPositions;
+        this.unknownDeltas = unknownDeltas;
+    }
+
+
+    /**
+     * Adds the counts of the accepted groups to the arrays.
+     *
+     * @param acceptedGroups Indexed by the group
+     * @param mutationIdCounts The counts per mutation id
+     * @param unknownCounts The difference array of the unknowns (see {@link MutationStore#countMutations(long[])})
+     * @return The number of rows of the accepted groups
+     */
+    int addCounts(boolean[] acceptedGroups, int[] mutationIdCounts, int[] unknownCounts) {
+        int totalRows = 0;
+        for (int group = 0; group < numberRows.length; group++) {
+            if (!acceptedGroups[group]) {
+                continue;
+            }
+            totalRows += numberRows[group];
+            for (int i = mutationOffsets[group]; i < mutationOffsets[group + 1]; i++) {
+                mutationIdCounts[mutationIds[i]] += mutationCounts[i];
+            }
+            for (int i = unknownOffsets[group]; i < unknownOffsets[group + 1]; i++) {
+                unknownCounts[unknownPositions[i]] += unknownDeltas[i];
+            }
+        }
+        return totalRows;
+    }
+
+
+    long bytes() {
+        return 4L * (numberRows.length + mutationOffsets.length + mutationIds.length + mutationCounts.length
+            + unknownOffsets.length + unknownDeltas.length) + 2L * unknownPositions.length;
+    }
+}
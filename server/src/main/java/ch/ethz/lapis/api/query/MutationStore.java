@@ -1,26 +1,136 @@
 package ch.ethz.lapis.api.query;
 
+import ch.ethz.lapis.util.MutationEncoding;
+import java.io.IOException;
 import java.util.*;
 
 
-public class MutationStore {
+/**
+ * Stores the mutations and unknown positions of all sequences in a compressed sparse row layout: the mutation ids of
+ * all sequences are concatenated in one array, and so are the unknown ranges. The entries of the sequence with the id
+ * i are at [offsets[i], offsets[i + 1]) of these arrays.
+ * <p>
+ * After loading, an inverted index from every mutation to the rows that have it can be built (see
+ * {@link #buildIndex()}).
+ */
+public class MutationStore implements MutationEncoding.BlockConsumer {
 
-    private final InternalEntry[] data;
+    private final int capacity;
     private final MutationDict mutationDict = new MutationDict();
 
+    /**
+     * The entries must be added in the order of the ids; this is the id of the next entry.
+     */
+    private int nextId = 0;
+
+    /**
+     * The id of the entry that was started but not finished yet or -1
+     */
+    private int entryId = -1;
+
+    private int[] mutationIds = new int[1024];
+    private final int[] mutationOffsets;
+    private int numberMutationIds = 0;
+
+    /**
+     * Every unknown range takes two values: the start and the (inclusive) end. Single unknown positions are stored as
+     * ranges with the same start and end.
+     */
+    private short[] unknownRanges = new short[1024];
+    private final int[] unknownOffsets;
+    private int numberUnknownRangeValues = 0;
+
     /**
      * The largest position at which a mutation or unknown was found. Following the conventions, the position counter
      * starts with 1.
      */
     private short maxPosition = 0;
 
+    /**
+     * The rows that have the mutation; indexed by the mutation id. It is null until the index is built.
+     */
+    private volatile CompressedRows[] rowsByMutation;
+
+    /**
+     * The estimated cost of counting the mutations with the index: the number of row ids and bitmap words to visit
+     */
+    private long indexScanCost;
+
+    /**
+     * The difference array of the unknowns of all rows, see {@link #countRows(long[], boolean, boolean)}. It is
+     * computed together with the index.
+     */
+    private int[] totalUnknownCounts;
+
+    /**
+     * The counts of the groups of rows (e.g., of the Pango lineages). It is null until the profiles are built.
+     */
+    private volatile MutationProfiles profiles;
+
 
     public MutationStore(int capacity) {
-        data = new InternalEntry[capacity];
+        this(capacity, new int[capacity + 1], new int[capacity + 1]);
+    }
+
+
+    private MutationStore(int capacity, int[] mutationOffsets, int[] unknownOffsets) {
+        this.capacity = capacity;
+        this.mutationOffsets = mutationOffsets;
+        this.unknownOffsets = unknownOffsets;
+    }
+
+
+    /**
+     * Writes the entries and the dictionary. The index and the profiles are not written; they have to be built again
+     * after reading.
+     */
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(capacity);
+        writer.writeInt(nextId);
+        writer.writeInt(maxPosition);
+        writer.writeInt(mutationDict.size());
+        for (int mutationId = 0; mutationId < mutationDict.size(); mutationId++) {
+            Mutation mutation = mutationDict.idToMutation(mutationId);
+            writer.writeInt(mutation.position);
+            writer.writeInt(mutation.mutationTo);
+            writer.writeInt(mutationDict.getCount(mutationId));
+        }
+        writer.writeInts(mutationOffsets, nextId + 1);
+        writer.writeInt(numberMutationIds);
+        writer.writeInts(mutationIds, numberMutationIds);
+        writer.writeInts(unknownOffsets, nextId + 1);
+        writer.writeInt(numberUnknownRangeValues);
+        writer.writeShorts(unknownRanges, numberUnknownRangeValues);
+    }
+
+
+    static MutationStore readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        int capacity = reader.readInt();
+        int nextId = reader.readInt();
+        short maxPosition = (short) reader.readInt();
+        int numberMutations = reader.readInt();
+        int[] mutationOffsets = new int[capacity + 1];
+        int[] unknownOffsets = new int[capacity + 1];
+        MutationStore store = new MutationStore(capacity, mutationOffsets, unknownOffsets);
+        for (int mutationId = 0; mutationId < numberMutations; mutationId++) {
+            Mutation mutation = new Mutation((short) reader.readInt(), (char) reader.readInt());
+            store.mutationDict.mutationToId(mutation);
+            store.mutationDict.addCount(mutationId, reader.readInt());
+        }
+        System.arraycopy(reader.readInts(nextId + 1), 0, mutationOffsets, 0, nextId + 1);
+        store.numberMutationIds = reader.readInt();
+        store.mutationIds = reader.readInts(store.numberMutationIds);
+        System.arraycopy(reader.readInts(nextId + 1), 0, unknownOffsets, 0, nextId + 1);
+        store.numberUnknownRangeValues = reader.readInt();
+        store.unknownRanges = reader.readShorts(store.numberUnknownRangeValues);
+        store.nextId = nextId;
+        store.maxPosition = maxPosition;
+        return store;
     }
 
 
     /**
+     * The entries must be put in the order of the ids. Ids that are skipped get an empty entry.
      *
      * @param id The id is at the same time also the index in the array; it holds 0 <= id < capacity
      * @param unknownsCompressedPositions As produced by MutationFinder.compressPositionsAsStrings(); e.g. 1,5-8,20
@@ -30,104 +140,626 @@ public class MutationStore {
         Collection<Mutation> mutations,
         Collection<String> unknownsCompressedPositions
     ) {
-        // Encode the mutations using the MutationDict
-        int[] mutationIds = new int[mutations.size()];
-        int i = 0;
+        startEntry(id);
         for (Mutation mutation : mutations) {
-            mutationIds[i] = mutationDict.mutationToId(mutation);
-            i++;
-            if (mutation.position > maxPosition) {
-                maxPosition = mutation.position;
-            }
+            addMutation(mutation.position, mutation.mutationTo);
         }
         // Parse the compressed unknown position strings
-        List<Short> unknownPositionsList = new ArrayList<>();
-        List<Boolean> unknownIsStartRangeList = new ArrayList<>();
         for (String s : unknownsCompressedPositions) {
+            short rangeStart;
+            short rangeEnd;
             if (!s.contains("-")) {
                 // It's a single value
-                short position = Short.parseShort(s);
-                unknownPositionsList.add(position);
-                unknownIsStartRangeList.add(false);
-                if (position > maxPosition) {
-                    maxPosition = position;
-                }
+                rangeStart = Short.parseShort(s);
+                rangeEnd = rangeStart;
             } else {
                 // It's a range
                 String[] parts = s.split("-");
-                short rangeStart = Short.parseShort(parts[0]);
-                short rangeEnd = Short.parseShort(parts[1]);
-                unknownPositionsList.add(rangeStart);
-                unknownPositionsList.add(rangeEnd);
-                unknownIsStartRangeList.add(true);
-                unknownIsStartRangeList.add(false);
-                if (rangeEnd > maxPosition) {
-                    maxPosition = rangeEnd;
+                rangeStart = Short.parseShort(parts[0]);
+                rangeEnd = Short.parseShort(parts[1]);
+            }
+            addUnknownRange(rangeStart, rangeEnd);
+        }
+        finishEntry();
+    }
+
+
+    /**
+     * Starts the entry of the id. The mutations and unknowns of the entry are added with
+     * {@link #addMutation(short, char)} and {@link #addUnknownRange(short, short)} and the entry is completed by
+     * {@link #finishEntry()}. This way, a parser can put the values without creating objects for them.
+     */
+    public void startEntry(int id) {
+        if (id < nextId || id >= capacity || entryId != -1) {
+            throw new RuntimeException("The entries of the mutation store must be put one at a time in the order of " +
+                "the ids and the id must be smaller than the capacity; got id " + id + ", expected at least " + nextId);
+        }
+        // Empty entries for the skipped ids
+        while (nextId < id) {
+            nextId++;
+            mutationOffsets[nextId] = numberMutationIds;
+            unknownOffsets[nextId] = numberUnknownRangeValues;
+        }
+        entryId = id;
+    }
+
+
+    @Override
+    public void addMutation(short position, char mutationTo) {
+        int mutationId = mutationDict.mutationToId(position, mutationTo);
+        mutationDict.increaseCount(mutationId);
+        mutationIds = ensureCapacity(mutationIds, numberMutationIds + 1L);
+        mutationIds[numberMutationIds++] = mutationId;
+        if (position > maxPosition) {
+            maxPosition = position;
+        }
+    }
+
+
+    /**
+     * @param rangeEnd The end is inclusive; a single unknown position is a range with the same start and end.
+     */
+    @Override
+    public void addUnknownRange(short rangeStart, short rangeEnd) {
+        unknownRanges = ensureCapacity(unknownRanges, numberUnknownRangeValues + 2L);
+        unknownRanges[numberUnknownRangeValues++] = rangeStart;
+        unknownRanges[numberUnknownRangeValues++] = rangeEnd;
+        if (rangeEnd > maxPosition) {
+            maxPosition = rangeEnd;
+        }
+    }
+
+
+    public void finishEntry() {
+        nextId = entryId + 1;
+        mutationOffsets[nextId] = numberMutationIds;
+        unknownOffsets[nextId] = numberUnknownRangeValues;
+        entryId = -1;
+    }
+
+
+    /**
+     * Appends the entries of a store that holds the entries of the ids [firstId, firstId + capacity of the partition)
+     * with the ids counted from 0. The stores of the partitions have to be appended in the order of the ids so that
+     * the mutation ids are assigned in the same order as if the entries were put one by one.
+     */
+    public void putAll(int firstId, MutationStore partition) {
+        if (firstId < nextId || firstId + partition.nextId > capacity) {
+            throw new RuntimeException("The partitions of the mutation store must be put in the order of the ids and " +
+                "fit into the capacity; got first id " + firstId + ", expected at least " + nextId);
+        }
+        putEntriesOf(partition, registerMutationsOf(partition), 0, partition.nextId, firstId);
+    }
+
+
+    /**
+     * Creates a new store that contains the entries of the base store except of the changed ids which are taken from
+     * the store of the changes. The base store is not modified. The dictionary of the new store only contains the
+     * mutations of the kept entries; their ids are assigned in the same order as if the entries were put one by one.
+     *
+     * @param capacity The capacity of the new store; the entries of the base store with larger ids are dropped.
+     * @param changedIds A bitmap of the ids in [0, capacity) whose entries are replaced
+     * @param changes The entries of the changed ids in ascending order of the ids, i.e., the k-th changed id has the
+     *                id k in this store.
+     */
+    public static MutationStore withChanges(MutationStore base, int capacity, long[] changedIds,
+                                            MutationStore changes) {
+        MutationStore store = new MutationStore(capacity);
+        // The mutations are registered when they are first used (see putEntriesOf).
+        int[] baseMapping = new int[base.mutationDict.size()];
+        Arrays.fill(baseMapping, -1);
+        int[] changesMapping = new int[changes.mutationDict.size()];
+        Arrays.fill(changesMapping, -1);
+        int numberChangesBefore = 0;
+        for (int id = 0; id < capacity; ) {
+            boolean changed = Bitmaps.get(changedIds, id);
+            int end = id + 1;
+            while (end < capacity && Bitmaps.get(changedIds, end) == changed) {
+                end++;
+            }
+            if (changed) {
+                store.putEntriesOf(changes, changesMapping, numberChangesBefore,
+                    Math.min(numberChangesBefore + end - id, changes.nextId), id);
+                numberChangesBefore += end - id;
+            } else {
+                store.putEntriesOf(base, baseMapping, id, Math.min(end, base.nextId), id);
+            }
+            id = end;
+        }
+        return store;
+    }
+
+
+    /**
+     * Adds the mutations of the other store to the dictionary.
+     *
+     * @return The ids of the mutations in this store; indexed by the ids in the other store
+     */
+    private int[] registerMutationsOf(MutationStore other) {
+        int[] mutationIdMapping = new int[other.mutationDict.size()];
+        for (int otherMutationId = 0; otherMutationId < mutationIdMapping.length; otherMutationId++) {
+            mutationIdMapping[otherMutationId] = mutationDict.mutationToId(
+                other.mutationDict.idToMutation(otherMutationId));
+        }
+        return mutationIdMapping;
+    }
+
+
+    /**
+     * Appends the entries [sourceFrom, sourceTo) of the source store as the entries starting at targetFirstId.
+     *
+     * @param mutationIdMapping The ids of the mutations in this store indexed by the ids in the source store; a
+     *                          mutation with the id -1 is added to the dictionary and the mapping when it is first used.
+     */
+    private void putEntriesOf(MutationStore source, int[] mutationIdMapping, int sourceFrom, int sourceTo,
+                              int targetFirstId) {
+        if (sourceFrom >= sourceTo) {
+            return;
+        }
+        // Empty entries for the skipped ids
+        while (nextId < targetFirstId) {
+            nextId++;
+            mutationOffsets[nextId] = numberMutationIds;
+            unknownOffsets[nextId] = numberUnknownRangeValues;
+        }
+        int mutationsFrom = source.mutationOffsets[sourceFrom];
+        int mutationsTo = source.mutationOffsets[sourceTo];
+        int unknownsFrom = source.unknownOffsets[sourceFrom];
+        int unknownsTo = source.unknownOffsets[sourceTo];
+        mutationIds = ensureCapacity(mutationIds, (long) numberMutationIds + mutationsTo - mutationsFrom);
+        for (int i = mutationsFrom; i < mutationsTo; i++) {
+            int sourceMutationId = source.mutationIds[i];
+            int mutationId = mutationIdMapping[sourceMutationId];
+            if (mutationId == -1) {
+                mutationId = mutationDict.mutationToId(source.mutationDict.idToMutation(sourceMutationId));
+                mutationIdMapping[sourceMutationId] = mutationId;
+            }
+            mutationDict.increaseCount(mutationId);
+            mutationIds[numberMutationIds + i - mutationsFrom] = mutationId;
+        }
+        unknownRanges = ensureCapacity(unknownRanges, (long) numberUnknownRangeValues + unknownsTo - unknownsFrom);
+        System.arraycopy(source.unknownRanges, unknownsFrom, unknownRanges, numberUnknownRangeValues,
+            unknownsTo - unknownsFrom);
+        for (int id = sourceFrom + 1; id <= sourceTo; id++) {
+            mutationOffsets[targetFirstId + id - sourceFrom] =
+                numberMutationIds + source.mutationOffsets[id] - mutationsFrom;
+            unknownOffsets[targetFirstId + id - sourceFrom] =
+                numberUnknownRangeValues + source.unknownOffsets[id] - unknownsFrom;
+        }
+        numberMutationIds += mutationsTo - mutationsFrom;
+        numberUnknownRangeValues += unknownsTo - unknownsFrom;
+        nextId = targetFirstId + sourceTo - sourceFrom;
+        maxPosition = (short) Math.max(maxPosition, source.maxPosition);
+    }
+
+
+    /**
+     * Releases the unused capacity of the arrays. It should be called after all entries were put.
+     */
+    public void trimToSize() {
+        mutationIds = Arrays.copyOf(mutationIds, numberMutationIds);
+        unknownRanges = Arrays.copyOf(unknownRanges, numberUnknownRangeValues);
+    }
+
+
+    /**
+     * Builds the inverted index from the mutations to the rows. It has to be called after all entries were put.
+     */
+    public void buildIndex() {
+        int numberMutations = mutationDict.size();
+        int[][] rows = new int[numberMutations][];
+        for (int mutationId = 0; mutationId < numberMutations; mutationId++) {
+            rows[mutationId] = new int[mutationDict.getCount(mutationId)];
+        }
+        // The rows are visited in order so that the row ids of every mutation are sorted.
+        int[] numberRows = new int[numberMutations];
+        for (int id = 0; id < nextId; id++) {
+            for (int i = mutationOffsets[id]; i < mutationOffsets[id + 1]; i++) {
+                int mutationId = mutationIds[i];
+                int n = numberRows[mutationId];
+                // A mutation might be listed twice for a sequence.
+                if (n == 0 || rows[mutationId][n - 1] != id) {
+                    rows[mutationId][n] = id;
+                    numberRows[mutationId]++;
                 }
             }
         }
-        short[] unknownPositions = new short[unknownPositionsList.size()];
-        boolean[] unknownIsStartRange = new boolean[unknownPositionsList.size()];
-        for (int j = 0; j < unknownPositionsList.size(); j++) {
-            unknownPositions[j] = unknownPositionsList.get(j);
-            unknownIsStartRange[j] = unknownIsStartRangeList.get(j);
+        CompressedRows[] index = new CompressedRows[numberMutations];
+        long scanCost = 0;
+        int numberWords = (capacity + 63) >>> 6;
+        for (int mutationId = 0; mutationId < numberMutations; mutationId++) {
+            int[] mutationRows = rows[mutationId];
+            if (numberRows[mutationId] < mutationRows.length) {
+                mutationRows = Arrays.copyOf(mutationRows, numberRows[mutationId]);
+            }
+            index[mutationId] = CompressedRows.ofSortedRows(mutationRows, capacity);
+            scanCost += Math.min(mutationRows.length, numberWords);
+            rows[mutationId] = null;
         }
-        // Create and store entry
-        InternalEntry entry = new InternalEntry(
-            mutationIds,
-            unknownPositions,
-            unknownIsStartRange
-        );
-        data[id] = entry;
-    }
-
-
-    public List<MutationCount> countMutations(Collection<Integer> ids) {
-        // We could also use an int[] to store the counts. It would need more space but also be faster.
-        Map<Integer, int[]> mutationIdCounts = new HashMap<>();
-        // To avoid too many annoying add-1 and minus-1 operations, we will leave out the first position in the array
-        // so that the "position" corresponds to the index.
-        int[] unknownCounts = new int[maxPosition + 1];
-        for (int id : ids) {
-            InternalEntry entry = data[id];
-            // Count mutations
-            for (int mutationId : entry.mutationIds) {
-                mutationIdCounts.compute(mutationId, (k, v) -> v == null ?
-                    new int[] { 0 } : v)[0]++;
-            }
-            // Count unknowns
-            for (int i = 0; i < entry.unknownPositions.length; i++) {
-                boolean isStartRange = entry.unknownIsStartRange[i];
-                if (!isStartRange) {
-                    short position = entry.unknownPositions[i];
-                    unknownCounts[position]++;
-                } else {
-                    short startRange = entry.unknownPositions[i];
-                    short endRange = entry.unknownPositions[i+1];
-                    for (int position = startRange; position <= endRange; position++) {
-                        unknownCounts[position]++;
+        indexScanCost = scanCost;
+        totalUnknownCounts = countRows(Bitmaps.full(capacity), false, false).unknownCounts;
+        rowsByMutation = index;
+    }
+
+
+    /**
+     * Pre-computes the mutation counts and the unknowns of the rows of every value of the column (see
+     * {@link MutationProfiles}). It has to be called after all entries were put.
+     */
+    public void buildProfiles(StringColumn groups) {
+        int numberGroups = groups.getDictionarySize();
+        // Sort the rows by their group
+        int[] groupOffsets = new int[numberGroups + 1];
+        for (int id = 0; id < capacity; id++) {
+            groupOffsets[groups.getCode(id) + 1]++;
+        }
+        for (int group = 0; group < numberGroups; group++) {
+            groupOffsets[group + 1] += groupOffsets[group];
+        }
+        int[] rowsByGroup = new int[capacity];
+        int[] nextIndex = Arrays.copyOf(groupOffsets, numberGroups);
+        for (int id = 0; id < capacity; id++) {
+            rowsByGroup[nextIndex[groups.getCode(id)]++] = id;
+        }
+
+        // Count the rows of every group in dense arrays and keep the non-zero entries. The touched entries are
+        // remembered so that the dense arrays do not have to be scanned for every group.
+        int[] numberRows = new int[numberGroups];
+        int[] profileMutationOffsets = new int[numberGroups + 1];
+        int[] profileMutationIds = new int[1024];
+        int[] profileMutationCounts = new int[1024];
+        int numberProfileMutations = 0;
+        int[] profileUnknownOffsets = new int[numberGroups + 1];
+        short[] profileUnknownPositions = new short[1024];
+        int[] profileUnknownDeltas = new int[1024];
+        int numberProfileUnknowns = 0;
+
+        int[] mutationIdCounts = new int[mutationDict.size()];
+        int[] touchedMutationIds = new int[mutationDict.size()];
+        int[] unknownCounts = new int[maxPosition + 2];
+        boolean[] isTouchedPosition = new boolean[maxPosition + 2];
+        int[] touchedPositions = new int[maxPosition + 2];
+        for (int group = 0; group < numberGroups; group++) {
+            numberRows[group] = groupOffsets[group + 1] - groupOffsets[group];
+            int numberTouchedMutationIds = 0;
+            int numberTouchedPositions = 0;
+            for (int r = groupOffsets[group]; r < groupOffsets[group + 1]; r++) {
+                int id = rowsByGroup[r];
+                if (id >= nextId) {
+                    // The sequence does not have an entry.
+                    continue;
+                }
+                for (int i = mutationOffsets[id]; i < mutationOffsets[id + 1]; i++) {
+                    int mutationId = mutationIds[i];
+                    if (mutationIdCounts[mutationId]++ == 0) {
+                        touchedMutationIds[numberTouchedMutationIds++] = mutationId;
                     }
-                    i++; // Skip the end range value
                 }
+                for (int i = unknownOffsets[id]; i < unknownOffsets[id + 1]; i += 2) {
+                    int start = unknownRanges[i];
+                    int end = unknownRanges[i + 1] + 1;
+                    unknownCounts[start]++;
+                    unknownCounts[end]--;
+                    if (!isTouchedPosition[start]) {
+                        isTouchedPosition[start] = true;
+                        touchedPositions[numberTouchedPositions++] = start;
+                    }
+                    if (!isTouchedPosition[end]) {
+                        isTouchedPosition[end] = true;
+                        touchedPositions[numberTouchedPositions++] = end;
+                    }
+                }
+            }
+            Arrays.sort(touchedMutationIds, 0, numberTouchedMutationIds);
+            profileMutationIds = ensureCapacity(profileMutationIds,
+                (long) numberProfileMutations + numberTouchedMutationIds);
+            profileMutationCounts = ensureCapacity(profileMutationCounts,
+                (long) numberProfileMutations + numberTouchedMutationIds);
+            for (int i = 0; i < numberTouchedMutationIds; i++) {
+                int mutationId = touchedMutationIds[i];
+                profileMutationIds[numberProfileMutations] = mutationId;
+                profileMutationCounts[numberProfileMutations++] = mutationIdCounts[mutationId];
+                mutationIdCounts[mutationId] = 0;
             }
+            Arrays.sort(touchedPositions, 0, numberTouchedPositions);
+            profileUnknownPositions = ensureCapacity(profileUnknownPositions,
+                (long) numberProfileUnknowns + numberTouchedPositions);
+            profileUnknownDeltas = ensureCapacity(profileUnknownDeltas,
+                (long) numberProfileUnknowns + numberTouchedPositions);
+            for (int i = 0; i < numberTouchedPositions; i++) {
+                int position = touchedPositions[i];
+                if (unknownCounts[position] != 0) {
+                    profileUnknownPositions[numberProfileUnknowns] = (short) position;
+                    profileUnknownDeltas[numberProfileUnknowns++] = unknownCounts[position];
+                    unknownCounts[position] = 0;
+                }
+                isTouchedPosition[position] = false;
+            }
+            profileMutationOffsets[group + 1] = numberProfileMutations;
+            profileUnknownOffsets[group + 1] = numberProfileUnknowns;
         }
-        // Translate the mutations back
+        profiles = new MutationProfiles(
+            numberRows,
+            profileMutationOffsets,
+            Arrays.copyOf(profileMutationIds, numberProfileMutations),
+            Arrays.copyOf(profileMutationCounts, numberProfileMutations),
+            profileUnknownOffsets,
+            Arrays.copyOf(profileUnknownPositions, numberProfileUnknowns),
+            Arrays.copyOf(profileUnknownDeltas, numberProfileUnknowns)
+        );
+    }
+
+
+    public boolean hasProfiles() {
+        return profiles != null;
+    }
+
+
+    /**
+     * @return The number of mutations in the dictionary
+     */
+    public int getNumberDistinctMutations() {
+        return mutationDict.size();
+    }
+
+
+    /**
+     * @return The memory used by the profiles in bytes or 0 if they have not been built
+     */
+    public long getProfilesBytes() {
+        MutationProfiles groupProfiles = profiles;
+        return groupProfiles != null ? groupProfiles.bytes() : 0;
+    }
+
+
+    /**
+     * Looks up the rows that have one of the mutations at the position in the index.
+     *
+     * @param mutationsTo The bases or amino acids to which the position is mutated
+     * @return A bitmap (see {@link Bitmaps}) or null if the index has not been built
+     */
+    public long[] findRowsWithMutation(short position, String mutationsTo) {
+        CompressedRows[] index = rowsByMutation;
+        if (index == null) {
+            return null;
+        }
+        long[] result = Bitmaps.allocate(capacity);
+        for (int i = 0; i < mutationsTo.length(); i++) {
+            Integer mutationId = mutationDict.getId(new Mutation(position, mutationsTo.charAt(i)));
+            if (mutationId != null) {
+                index[mutationId].orInto(result);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Counts the mutations of the selected sequences. The proportion of a mutation is calculated among the selected
+     * sequences that do not have an unknown at its position.
+     *
+     * @param matched A bitmap (see {@link Bitmaps}) of the selected sequences
+     */
+    public List<MutationCount> countMutations(long[] matched) {
+        // There are two strategies to count the mutations: walking through the mutations of every selected row or
+        // intersecting the rows of every mutation from the index with the selected rows. The cost of the former grows
+        // with the number of selected rows, the cost of the latter with the number of distinct mutations.
+        // Visiting a row costs at least one step even if it has no mutations.
+        double mutationsPerRow = (double) numberMutationIds / Math.max(1, nextId);
+        double rowScanCost = Bitmaps.cardinality(matched) * Math.max(1.0, mutationsPerRow);
+        return countMutations(matched, rowsByMutation != null && indexScanCost < rowScanCost);
+    }
+
+
+    /**
+     * @param useIndex If true, the mutations are counted with the index which must have been built.
+     */
+    List<MutationCount> countMutations(long[] matched, boolean useIndex) {
+        int totalEntries = Bitmaps.cardinality(matched);
+        int[] mutationIdCounts;
+        int[] unknownCounts;
+        if (useIndex) {
+            mutationIdCounts = countMutationsWithIndex(rowsByMutation, matched);
+            unknownCounts = countUnknowns(matched, totalEntries);
+        } else {
+            PartialCounts counts = countRows(matched, true, false);
+            mutationIdCounts = counts.mutationIdCounts;
+            unknownCounts = counts.unknownCounts;
+        }
+        return toMutationCounts(mutationIdCounts, unknownCounts, totalEntries);
+    }
+
+
+    /**
+     * Counts the mutations of the sequences of the accepted groups from the profiles (see
+     * {@link #buildProfiles(StringColumn)}).
+     *
+     * @param acceptedGroups Indexed by the dictionary code of the column that the profiles were built for
+     * @return The same as {@link #countMutations(long[])} for the rows of the groups or null if the profiles have not
+     * been built
+     */
+    public List<MutationCount> countMutationsOfGroups(boolean[] acceptedGroups) {
+        MutationProfiles groupProfiles = profiles;
+        if (groupProfiles == null) {
+            return null;
+        }
+        int[] mutationIdCounts = new int[mutationDict.size()];
+        int[] unknownCounts = new int[maxPosition + 2];
+        int totalEntries = groupProfiles.addCounts(acceptedGroups, mutationIdCounts, unknownCounts);
+        return toMutationCounts(mutationIdCounts, unknownCounts, totalEntries);
+    }
+
+
+    /**
+     * @param unknownCounts The difference array of the unknowns; it is turned into the counts in place.
+     */
+    private List<MutationCount> toMutationCounts(int[] mutationIdCounts, int[] unknownCounts, int totalEntries) {
+        for (int position = 1; position < unknownCounts.length; position++) {
+            unknownCounts[position] += unknownCounts[position - 1];
+        }
+        // Translate the mutations back and calculate the proportions: as denominator, we need to subtract the unknowns
+        // from the total number of entries.
         List<MutationCount> mutationCounts = new ArrayList<>();
-        mutationIdCounts.forEach((mutationId, count) -> mutationCounts.add(new MutationCount(
-            mutationDict.idToMutation(mutationId),
-            count[0]
-        )));
-        // Calculate the proportions: as denominator, we need to subtract the unknowns from the total number of
-        // entries.
-        int totalEntries = ids.size();
-        for (MutationCount mutationCount : mutationCounts) {
-            int denominator = totalEntries - unknownCounts[mutationCount.getMutation().position];
-            mutationCount.setProportion(((double) mutationCount.getCount()) / denominator);
+        for (int mutationId = 0; mutationId < mutationIdCounts.length; mutationId++) {
+            int count = mutationIdCounts[mutationId];
+            if (count == 0) {
+                continue;
+            }
+            Mutation mutation = mutationDict.idToMutation(mutationId);
+            int denominator = totalEntries - unknownCounts[mutation.position];
+            mutationCounts.add(new MutationCount(mutation, count).setProportion(((double) count) / denominator));
         }
         return mutationCounts;
     }
 
 
+    /**
+     * @return The number of selected rows per mutation id
+     */
+    private int[] countMutationsWithIndex(CompressedRows[] index, long[] matched) {
+        int[] mutationIdCounts = new int[index.length];
+        List<int[]> chunks = new ArrayList<>();
+        int chunkSize = Math.max(1, index.length / 64);
+        for (int from = 0; from < index.length; from += chunkSize) {
+            chunks.add(new int[] { from, Math.min(from + chunkSize, index.length) });
+        }
+        RowPartitions.mapEach(chunks, chunk -> {
+            for (int mutationId = chunk[0]; mutationId < chunk[1]; mutationId++) {
+                mutationIdCounts[mutationId] = index[mutationId].countIn(matched);
+            }
+            return null;
+        });
+        return mutationIdCounts;
+    }
+
+
+    /**
+     * If most rows are selected, the unknowns of the rows that are not selected are subtracted from the unknowns of
+     * all rows.
+     *
+     * @return The difference array of the unknowns of the selected rows, see {@link #countRows(long[], boolean,
+     * boolean)}
+     */
+    private int[] countUnknowns(long[] matched, int numberSelected) {
+        int[] allUnknownCounts = totalUnknownCounts;
+        if (allUnknownCounts == null || numberSelected <= nextId / 2) {
+            return countRows(matched, false, false).unknownCounts;
+        }
+        int[] unknownCounts = countRows(matched, false, true).unknownCounts;
+        for (int i = 0; i < unknownCounts.length; i++) {
+            unknownCounts[i] = allUnknownCounts[i] - unknownCounts[i];
+        }
+        return unknownCounts;
+    }
+
+
+    /**
+     * Counts the mutations and the unknowns of the rows. The unknowns are counted in a difference array: a range adds
+     * 1 at its start and subtracts 1 after its end. The prefix sums then yield the number of unknowns at every
+     * position. To avoid too many annoying add-1 and minus-1 operations, we will leave out the first position in the
+     * array so that the "position" corresponds to the index.
+     * <p>
+     * Every partition counts into its own arrays which are summed up afterwards.
+     *
+     * @param countMutations If false, only the unknowns are counted
+     * @param complement If true, the rows that are not set in the bitmap are counted
+     */
+    private PartialCounts countRows(long[] matched, boolean countMutations, boolean complement) {
+        List<PartialCounts> partialCounts = RowPartitions.map(matched.length, (fromWord, toWord) ->
+            countRows(matched, fromWord, toWord, countMutations, complement));
+        PartialCounts counts = partialCounts.get(0);
+        for (PartialCounts partitionCounts : partialCounts.subList(1, partialCounts.size())) {
+            counts.add(partitionCounts);
+        }
+        return counts;
+    }
+
+
+    private PartialCounts countRows(
+        long[] matched,
+        int fromWord,
+        int toWord,
+        boolean countMutations,
+        boolean complement
+    ) {
+        int[] mutationIdCounts = countMutations ? new int[mutationDict.size()] : null;
+        int[] unknownCounts = new int[maxPosition + 2];
+        for (int w = fromWord; w < toWord; w++) {
+            int firstId = w << 6;
+            if (firstId >= nextId) {
+                // The sequences do not have entries.
+                break;
+            }
+            long word = complement ? ~matched[w] : matched[w];
+            if (nextId - firstId < 64) {
+                word &= (1L << (nextId - firstId)) - 1;
+            }
+            while (word != 0) {
+                int id = firstId + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                // Count mutations
+                if (countMutations) {
+                    for (int i = mutationOffsets[id]; i < mutationOffsets[id + 1]; i++) {
+                        mutationIdCounts[mutationIds[i]]++;
+                    }
+                }
+                // Count unknowns
+                for (int i = unknownOffsets[id]; i < unknownOffsets[id + 1]; i += 2) {
+                    unknownCounts[unknownRanges[i]]++;
+                    unknownCounts[unknownRanges[i + 1] + 1]--;
+                }
+            }
+        }
+        return new PartialCounts(mutationIdCounts, unknownCounts);
+    }
+
+
+    /**
+     * @return The number of sequences that have the mutation
+     */
+    public int getNumberSequencesWithMutation(short position, char mutationTo) {
+        return mutationDict.getCount(new Mutation(position, mutationTo));
+    }
+
+
+    private static int[] ensureCapacity(int[] array, long required) {
+        return required <= array.length ? array : Arrays.copyOf(array, newCapacity(array.length, required));
+    }
+
+
+    private static short[] ensureCapacity(short[] array, long required) {
+        return required <= array.length ? array : Arrays.copyOf(array, newCapacity(array.length, required));
+    }
+
+
+    private static int newCapacity(int currentCapacity, long required) {
+        // Leave some head room below Integer.MAX_VALUE as the JVM cannot allocate arrays of that length
+        long maxCapacity = Integer.MAX_VALUE - 8;
+        if (required > maxCapacity) {
+            throw new RuntimeException("The mutation store cannot hold more than " + maxCapacity + " values.");
+        }
+        return (int) Math.min(maxCapacity, Math.max(required, currentCapacity * 2L));
+    }
+
+
+    /**
+     * The mutation counts (null if they are not counted) and the difference array of the unknowns of some rows
+     */
+    private record PartialCounts(int[] mutationIdCounts, int[] unknownCounts) {
+
+        void add(PartialCounts other) {
+            if (mutationIdCounts != null) {
+                for (int i = 0; i < mutationIdCounts.length; i++) {
+                    mutationIdCounts[i] += other.mutationIdCounts[i];
+                }
+            }
+            for (int i = 0; i < unknownCounts.length; i++) {
+                unknownCounts[i] += other.unknownCounts[i];
+            }
+        }
+    }
+
+
     public static class Mutation {
         public final short position;
         public final char mutationTo;
@@ -218,21 +850,43 @@ public class MutationStore {
 
 
     private static class MutationDict {
-        private final Map<Mutation, Integer> mutationToIdMap = new HashMap<>();
+        /** The id + 1 of every mutation; the key of a mutation consists of the 16 bits of the position and the char */
+        private final LongIntHashMap mutationToIdMap = new LongIntHashMap();
         private final List<Mutation> mutations = new ArrayList<>();
         private int nextId = 0;
+        /** The number of sequences with the mutation; indexed by the mutation id */
+        private int[] counts = new int[1024];
+
+        private static long toKey(short position, char mutationTo) {
+            return ((long) (position & 0xFFFF) << 16) | mutationTo;
+        }
 
         public int mutationToId(Mutation mutation) {
-            Integer prev = mutationToIdMap.putIfAbsent(mutation, nextId);
-            if (prev == null) {
-                // The mutation is new
-                mutations.add(mutation);
-                nextId++;
-                return nextId - 1;
-            } else {
+            return mutationToId(mutation.position, mutation.mutationTo);
+        }
+
+        /**
+         * Looks up or assigns the id without creating a Mutation object unless the mutation is new.
+         */
+        public int mutationToId(short position, char mutationTo) {
+            long key = toKey(position, mutationTo);
+            int idPlusOne = mutationToIdMap.get(key);
+            if (idPlusOne != 0) {
                 // The mutation is already known
-                return prev;
+                return idPlusOne - 1;
             }
+            // The mutation is new
+            mutations.add(new Mutation(position, mutationTo));
+            mutationToIdMap.addTo(key, nextId + 1);
+            nextId++;
+            return nextId - 1;
+        }
+
+        /**
+         * @return The number of mutations; the ids are 0, ..., size - 1
+         */
+        public int size() {
+            return nextId;
         }
 
         /**
@@ -241,10 +895,36 @@ public class MutationStore {
         public Mutation idToMutation(Integer id) {
             return mutations.get(id);
         }
-    }
 
+        public void increaseCount(int id) {
+            addCount(id, 1);
+        }
+
+        public void addCount(int id, int delta) {
+            if (id >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+            }
+            counts[id] += delta;
+        }
 
-    private record InternalEntry(int[] mutationIds, short[] unknownPositions, boolean[] unknownIsStartRange) {
+        public int getCount(Mutation mutation) {
+            Integer id = getId(mutation);
+            return id != null ? getCount((int) id) : 0;
+        }
+
+        public int getCount(int id) {
+            // A mutation might have been added without being counted yet (see registerMutationsOf).
+            return id < counts.length ? counts[id] : 0;
+        }
+
+        /**
+         * @return The id or null if the mutation does not exist
+         */
+        public Integer getId(Mutation mutation) {
+            int idPlusOne = mutationToIdMap.get(toKey(mutation.position, mutation.mutationTo));
+            return idPlusOne != 0 ? idPlusOne - 1 : null;
+        }
     }
 
+
 }
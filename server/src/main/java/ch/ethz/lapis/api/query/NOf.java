@@ -1,47 +1,60 @@
 package ch.ethz.lapis.api.query;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class NOf implements VariantQueryExpr {
 
     private final boolean exactMode;
     private final int n;
-    private final List<VariantQueryExpr> subExprs = new ArrayList<>();
+    private final List<VariantQueryExpr> subExprs;
 
-    public NOf(boolean exactMode, int n) {
+    public NOf(boolean exactMode, int n, List<VariantQueryExpr> subExprs) {
         this.exactMode = exactMode;
         this.n = n;
+        this.subExprs = List.copyOf(subExprs);
     }
 
-
     @Override
-    public void putValue(VariantQueryExpr value) {
-        subExprs.add(value);
+    public long[] evaluate(Database database) {
+        return evaluate(database, null);
     }
 
+    /**
+     * @param candidates The rows to evaluate or null to evaluate all rows
+     */
     @Override
-    public boolean[] evaluate(Database database) {
+    public long[] evaluate(Database database, long[] candidates) {
         if (subExprs.size() > Short.MAX_VALUE) {
             throw new RuntimeException("More than " + Short.MAX_VALUE + " in the n-of statement - seriously? Why??");
         }
         short[] trueCount = new short[database.size()];
         for (VariantQueryExpr subExpr : subExprs) {
-            boolean[] subResult = subExpr.evaluate(database);
-            for (int i = 0; i < subResult.length; i++) {
-                if (subResult[i]) {
-                    trueCount[i]++;
+            long[] subResult = candidates != null ? subExpr.evaluate(database, candidates) : subExpr.evaluate(database);
+            if (candidates != null) {
+                // The bits of non-candidates are undefined and must not be counted.
+                Bitmaps.and(subResult, candidates);
+            }
+            for (int w = 0; w < subResult.length; w++) {
+                long word = subResult[w];
+                while (word != 0) {
+                    trueCount[(w << 6) + Long.numberOfTrailingZeros(word)]++;
+                    word &= word - 1;
                 }
             }
         }
-        boolean[] result = new boolean[database.size()];
+        long[] result = Bitmaps.allocate(database.size());
         if (!exactMode) {
             for (int i = 0; i < trueCount.length; i++) {
-                result[i] = trueCount[i] >= n;
+                if (trueCount[i] >= n) {
+                    result[i >>> 6] |= 1L << i;
+                }
             }
         } else {
             for (int i = 0; i < trueCount.length; i++) {
-                result[i] = trueCount[i] == n;
+                if (trueCount[i] == n) {
+                    result[i >>> 6] |= 1L << i;
+                }
             }
         }
         return result;
@@ -59,6 +72,19 @@ public class NOf implements VariantQueryExpr {
         return subExprs;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NOf that = (NOf) o;
+        return exactMode == that.exactMode && n == that.n && Objects.equals(subExprs, that.subExprs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exactMode, n, subExprs);
+    }
+
     @Override
     public String toString() {
         return "NOf{" +
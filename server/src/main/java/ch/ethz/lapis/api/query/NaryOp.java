@@ -0,0 +1,76 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An AND or OR over any number of operands. It is produced by {@link QueryRewriter} when flattening chains of
+ * {@link BiOp}.
+ */
+public class NaryOp implements VariantQueryExpr {
+
+    private final BiOp.OpType opType;
+
+    private final List<VariantQueryExpr> operands;
+
+    public NaryOp(BiOp.OpType opType, List<VariantQueryExpr> operands) {
+        this.opType = opType;
+        this.operands = List.copyOf(operands);
+    }
+
+    @Override
+    public long[] evaluate(Database database) {
+        // The result of the first operand is reused for the result.
+        long[] result = operands.get(0).evaluate(database);
+        for (int i = 1; i < operands.size(); i++) {
+            combine(result, operands.get(i).evaluate(database));
+        }
+        return result;
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        long[] result = operands.get(0).evaluate(database, candidates);
+        for (int i = 1; i < operands.size(); i++) {
+            combine(result, operands.get(i).evaluate(database, candidates));
+        }
+        return result;
+    }
+
+    private void combine(long[] result, long[] operandResult) {
+        if (opType == BiOp.OpType.AND) {
+            Bitmaps.and(result, operandResult);
+        } else {
+            Bitmaps.or(result, operandResult);
+        }
+    }
+
+    public BiOp.OpType getOpType() {
+        return opType;
+    }
+
+    public List<VariantQueryExpr> getOperands() {
+        return operands;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NaryOp that = (NaryOp) o;
+        return opType == that.opType && Objects.equals(operands, that.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(opType, operands);
+    }
+
+    @Override
+    public String toString() {
+        return "NaryOp{" +
+            "opType=" + opType +
+            ", operands=" + operands +
+            '}';
+    }
+}
@@ -2,13 +2,28 @@ package ch.ethz.lapis.api.query;
 
 public class Negation extends Single {
 
+    public Negation(VariantQueryExpr value) {
+        super(value);
+    }
+
     @Override
-    public boolean[] evaluate(Database database) {
-        boolean[] childEvaluated = super.evaluate(database);
-        boolean[] result = new boolean[childEvaluated.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = !childEvaluated[i];
-        }
+    public long[] evaluate(Database database) {
+        long[] result = super.evaluate(database);
+        Bitmaps.not(result, database.size());
         return result;
     }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        long[] result = super.evaluate(database, candidates);
+        Bitmaps.not(result, database.size());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Negation{" +
+            "value=" + getValue() +
+            '}';
+    }
 }
@@ -0,0 +1,78 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.NucMutation;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Combines several mutations at the same nucleotide position with AND or OR. Because every mutation only depends on
+ * the base at the position, the combination is a set of accepted bases and can be evaluated with a single scan of the
+ * column.
+ */
+public class NucMutationSet implements VariantQueryExpr {
+
+    private final BiOp.OpType opType;
+
+    private final int position;
+
+    private final List<NucMutation> mutations;
+
+    private final boolean[] acceptedBases;
+
+    public NucMutationSet(BiOp.OpType opType, List<NucMutation> mutations) {
+        this.opType = opType;
+        this.position = mutations.get(0).getPosition();
+        this.mutations = List.copyOf(mutations);
+        this.acceptedBases = BiOp.combine(opType, mutations.stream().map(m -> {
+            if (m.getPosition() != position) {
+                throw new IllegalArgumentException("All mutations must be at the position " + position);
+            }
+            return m.getAcceptedBases();
+        }).collect(Collectors.toList()));
+    }
+
+    @Override
+    public long[] evaluate(Database database) {
+        return NucMutation.match(database, position, acceptedBases, null);
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return NucMutation.match(database, position, acceptedBases, candidates);
+    }
+
+    public BiOp.OpType getOpType() {
+        return opType;
+    }
+
+    boolean[] getAcceptedBases() {
+        return acceptedBases;
+    }
+
+    public List<NucMutation> getMutations() {
+        return mutations;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NucMutationSet that = (NucMutationSet) o;
+        return opType == that.opType && Objects.equals(mutations, that.mutations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(opType, mutations);
+    }
+
+    @Override
+    public String toString() {
+        return "NucMutationSet{" +
+            "opType=" + opType +
+            ", mutations=" + mutations +
+            '}';
+    }
+}
@@ -0,0 +1,145 @@
+package ch.ethz.lapis.api.query;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the nucleotide bases of all sequences in memory. Every position is stored as a separate off-heap buffer in
+ * which each base takes 4 bits: the base of row i is in the lower half of the byte i / 2 if i is even and in the upper
+ * half if i is odd.
+ * <p>
+ * The 16 codes cover A, C, G, T, the deletion and the IUPAC ambiguity codes. All other characters (in particular X)
+ * are stored as N.
+ */
+public class PackedNucleotideStore {
+
+    /**
+     * The base that is represented by a code, i.e., BASES[code]
+     */
+    public static final char[] BASES = "ACGT-NMRWSYKVHDB".toCharArray();
+
+    private static final byte N_CODE = 5;
+    private static final byte[] BASE_TO_CODE = new byte[128];
+
+    static {
+        for (int i = 0; i < BASE_TO_CODE.length; i++) {
+            BASE_TO_CODE[i] = N_CODE;
+        }
+        for (byte code = 0; code < BASES.length; code++) {
+            BASE_TO_CODE[BASES[code]] = code;
+        }
+    }
+
+    private final int size;
+
+    /**
+     * The buffer of position p is stored at the index p - 1.
+     */
+    private final ByteBuffer[] columns;
+
+    /**
+     * @param size The number of sequences
+     * @param numberPositions The length of the (aligned) sequences
+     */
+    public PackedNucleotideStore(int size, int numberPositions) {
+        this.size = size;
+        this.columns = new ByteBuffer[numberPositions];
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public int getNumberPositions() {
+        return columns.length;
+    }
+
+
+    /**
+     * @param bases The bases of all sequences at the position as returned by Database.getNucArray()
+     */
+    public void putColumn(int position, byte[] bases) {
+        if (bases.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " bases but got " + bases.length +
+                " at position " + position);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((size + 1) / 2);
+        for (int i = 0; i < size; i += 2) {
+            int low = encode(bases[i]);
+            int high = i + 1 < size ? encode(bases[i + 1]) : 0;
+            buffer.put(i >>> 1, (byte) (low | (high << 4)));
+        }
+        columns[position - 1] = buffer;
+    }
+
+
+    public boolean hasColumn(int position) {
+        return position >= 1 && position <= columns.length && columns[position - 1] != null;
+    }
+
+
+    public char getBase(int position, int row) {
+        int packed = columns[position - 1].get(row >>> 1);
+        return BASES[(row & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF];
+    }
+
+
+    /**
+     * Evaluates a condition on all bases at a position by looking up the code of every base in a table.
+     *
+     * @param acceptedCodes An array of length 16 that specifies for every code whether it fulfills the condition
+     * @return A bitmap in which the bit of every row whose base is accepted is set
+     */
+    public long[] match(int position, boolean[] acceptedCodes) {
+        // Look up two bases at once
+        long[] acceptedPairs = new long[256];
+        for (int packed = 0; packed < 256; packed++) {
+            acceptedPairs[packed] = (acceptedCodes[packed & 0xF] ? 1L : 0L)
+                | (acceptedCodes[packed >>> 4] ? 2L : 0L);
+        }
+        ByteBuffer buffer = columns[position - 1];
+        long[] result = Bitmaps.allocate(size);
+        int numberBytes = (size + 1) / 2;
+        RowPartitions.forEach(result.length, (fromWord, toWord) -> {
+            // A word covers the rows of 32 bytes.
+            int toByte = (int) Math.min((long) toWord * 32, numberBytes);
+            for (int j = fromWord * 32; j < toByte; j++) {
+                // The two bases of the byte j belong to the rows 2j and 2j + 1 which are in the same word.
+                result[j >>> 5] |= acceptedPairs[buffer.get(j) & 0xFF] << ((2 * j) & 63);
+            }
+        });
+        if ((size & 1) == 1) {
+            // The unused upper half of the last byte may not be set.
+            result[result.length - 1] &= ~(1L << size);
+        }
+        return result;
+    }
+
+
+    /**
+     * Like {@link #match(int, boolean[])} but only looks at the candidate rows. The bits of all other rows are unset.
+     */
+    public long[] match(int position, boolean[] acceptedCodes, long[] candidates) {
+        ByteBuffer buffer = columns[position - 1];
+        long[] result = new long[candidates.length];
+        for (int w = 0; w < candidates.length; w++) {
+            long word = candidates[w];
+            while (word != 0) {
+                int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int packed = buffer.get(row >>> 1);
+                int code = (row & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF;
+                if (acceptedCodes[code]) {
+                    result[w] |= 1L << row;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static int encode(byte base) {
+        return base >= 0 ? BASE_TO_CODE[base] : N_CODE;
+    }
+}
@@ -0,0 +1,174 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.util.PangoLineageQueryConverter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The hierarchy of the values of a Pango lineage column with the rows of every lineage. A lineage is a child of the
+ * lineage that is obtained by removing the last dot-separated component (B.1.1.7 is a child of B.1.1). The
+ * intermediate lineages that do not occur in the data are part of the tree as well so that the sub-lineages of a
+ * prefix query are exactly the descendants of a node.
+ * <p>
+ * The tree is built when a data version is loaded. The aliases are not part of the tree: they are resolved to the
+ * lineage names by the {@link PangoLineageQueryConverter} for every query so that an update of the aliases takes
+ * effect immediately.
+ */
+public class PangoLineageTree {
+
+    private static class Node {
+        /**
+         * The dictionary code of the lineage or {@link StringColumn#NULL_CODE} if it does not occur in the data
+         */
+        private int code = StringColumn.NULL_CODE;
+        private final List<Node> children = new ArrayList<>();
+    }
+
+    private final StringColumn column;
+    private final Map<String, Node> nodes;
+
+    /**
+     * The rows of every lineage; indexed by the dictionary code
+     */
+    private final CompressedRows[] rowsByCode;
+
+    private PangoLineageTree(StringColumn column, Map<String, Node> nodes, CompressedRows[] rowsByCode) {
+        this.column = column;
+        this.nodes = nodes;
+        this.rowsByCode = rowsByCode;
+    }
+
+
+    public static PangoLineageTree build(StringColumn column) {
+        int numberCodes = column.getDictionarySize();
+        Map<String, Node> nodes = new HashMap<>();
+        for (int code = 1; code < numberCodes; code++) {
+            String lineage = column.decode(code);
+            Node node = nodes.get(lineage);
+            if (node == null) {
+                node = new Node();
+                nodes.put(lineage, node);
+                addToParent(nodes, lineage, node);
+            }
+            node.code = code;
+        }
+
+        // Sort the rows by their lineage
+        int size = column.size();
+        int[] codeOffsets = new int[numberCodes + 1];
+        for (int row = 0; row < size; row++) {
+            codeOffsets[column.getCode(row) + 1]++;
+        }
+        for (int code = 0; code < numberCodes; code++) {
+            codeOffsets[code + 1] += codeOffsets[code];
+        }
+        int[] sortedRows = new int[size];
+        int[] nextIndex = codeOffsets.clone();
+        for (int row = 0; row < size; row++) {
+            sortedRows[nextIndex[column.getCode(row)]++] = row;
+        }
+        CompressedRows[] rowsByCode = new CompressedRows[numberCodes];
+        for (int code = 1; code < numberCodes; code++) {
+            int[] rows = new int[codeOffsets[code + 1] - codeOffsets[code]];
+            System.arraycopy(sortedRows, codeOffsets[code], rows, 0, rows.length);
+            rowsByCode[code] = CompressedRows.ofSortedRows(rows, size);
+        }
+        return new PangoLineageTree(column, nodes, rowsByCode);
+    }
+
+
+    /**
+     * Creates the missing ancestors of the lineage and links the node to its parent.
+     */
+    private static void addToParent(Map<String, Node> nodes, String lineage, Node node) {
+        int lastDot = lineage.lastIndexOf('.');
+        while (lastDot >= 0) {
+            String parentLineage = lineage.substring(0, lastDot);
+            Node parent = nodes.get(parentLineage);
+            if (parent != null) {
+                parent.children.add(node);
+                return;
+            }
+            parent = new Node();
+            parent.children.add(node);
+            nodes.put(parentLineage, parent);
+            lineage = parentLineage;
+            node = parent;
+            lastDot = lineage.lastIndexOf('.');
+        }
+    }
+
+
+    /**
+     * Finds the lineages that match the query: an exact lineage is a lookup and the sub-lineages of a prefix (e.g.,
+     * "B.1.1.") are the descendants of the node of the prefix.
+     *
+     * @return The accepted dictionary codes of the column
+     */
+    public boolean[] findAcceptedCodes(PangoLineageQueryConverter.PangoLineageQueryMatch match) {
+        boolean[] acceptedCodes = new boolean[column.getDictionarySize()];
+        for (String lineage : match.exact()) {
+            Node node = nodes.get(lineage);
+            if (node != null && node.code != StringColumn.NULL_CODE) {
+                acceptedCodes[node.code] = true;
+            }
+        }
+        for (String prefix : match.prefix()) {
+            if (!prefix.endsWith(".")) {
+                // Not a sub-lineage query; it cannot be answered from the tree.
+                boolean[] prefixCodes = column.findCodes(d -> d.startsWith(prefix));
+                for (int code = 0; code < acceptedCodes.length; code++) {
+                    acceptedCodes[code] |= prefixCodes[code];
+                }
+                continue;
+            }
+            Node node = nodes.get(prefix.substring(0, prefix.length() - 1));
+            if (node != null) {
+                for (Node child : node.children) {
+                    acceptSubtree(child, acceptedCodes);
+                }
+            }
+        }
+        return acceptedCodes;
+    }
+
+
+    private static void acceptSubtree(Node node, boolean[] acceptedCodes) {
+        if (node.code != StringColumn.NULL_CODE) {
+            acceptedCodes[node.code] = true;
+        }
+        for (Node child : node.children) {
+            acceptSubtree(child, acceptedCodes);
+        }
+    }
+
+
+    /**
+     * Unites the rows of the accepted lineages. If they cover a large part of the column, the column is scanned
+     * instead.
+     *
+     * @return A bitmap (see {@link Bitmaps}) of the rows with an accepted lineage
+     */
+    public long[] match(boolean[] acceptedCodes) {
+        int size = column.size();
+        int numberWords = (size + 63) >>> 6;
+        long unionCost = 0;
+        for (int code = 1; code < acceptedCodes.length; code++) {
+            if (acceptedCodes[code]) {
+                unionCost += Math.min(rowsByCode[code].cardinality(), numberWords);
+            }
+        }
+        if (unionCost >= size) {
+            return column.match(acceptedCodes);
+        }
+        long[] result = Bitmaps.allocate(size);
+        for (int code = 1; code < acceptedCodes.length; code++) {
+            if (acceptedCodes[code]) {
+                rowsByCode[code].orInto(result);
+            }
+        }
+        return result;
+    }
+}
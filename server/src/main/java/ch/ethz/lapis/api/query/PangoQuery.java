@@ -2,6 +2,8 @@ package ch.ethz.lapis.api.query;
 
 import ch.ethz.lapis.util.PangoLineageQueryConverter;
 
+import java.util.Objects;
+
 public class PangoQuery implements VariantQueryExpr {
 
     private final String pangoLineage;
@@ -28,6 +30,23 @@ public class PangoQuery implements VariantQueryExpr {
         return includeSubLineage;
     }
 
+    public String getColumnName() {
+        return columnName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PangoQuery that = (PangoQuery) o;
+        return Objects.equals(pangoLineage, that.pangoLineage) && includeSubLineage == that.includeSubLineage && Objects.equals(columnName, that.columnName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pangoLineage, includeSubLineage, columnName);
+    }
+
     @Override
     public String toString() {
         return "PangoQuery{" +
@@ -37,7 +56,30 @@ public class PangoQuery implements VariantQueryExpr {
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
+    public long[] evaluate(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        PangoLineageTree tree = database.getPangoLineageTree(columnName);
+        boolean[] acceptedCodes = findAcceptedCodes(database, data);
+        return tree != null ? tree.match(acceptedCodes) : data.match(acceptedCodes);
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        StringColumn data = database.getStringColumn(columnName);
+        long[] result = candidates.clone();
+        data.filter(result, findAcceptedCodes(database, data));
+        return result;
+    }
+
+    /**
+     * @return The number of rows that fulfill the expression
+     */
+    int count(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        return data.count(findAcceptedCodes(database, data));
+    }
+
+    boolean[] findAcceptedCodes(Database database, StringColumn data) {
         String pangoLineage = this.pangoLineage.toUpperCase();
         if (includeSubLineage) {
             pangoLineage += "*";
@@ -45,22 +87,22 @@ public class PangoQuery implements VariantQueryExpr {
         PangoLineageQueryConverter queryConverter = database.getPangoLineageQueryConverter();
         PangoLineageQueryConverter.PangoLineageQueryMatch match = queryConverter.convert(pangoLineage);
 
-        String[] data = database.getStringColumn(columnName);
-        boolean[] result = new boolean[data.length];
-
-        for (int i = 0; i < result.length; i++) {
-            boolean r = false;
-            String d = data[i];
-            if (d != null) {
-                for (String s : match.exact()) {
-                    r = r || d.equals(s);
+        PangoLineageTree tree = database.getPangoLineageTree(columnName);
+        if (tree != null) {
+            return tree.findAcceptedCodes(match);
+        }
+        return data.findCodes(d -> {
+            for (String s : match.exact()) {
+                if (d.equals(s)) {
+                    return true;
                 }
-                for (String s : match.prefix()) {
-                    r = r || d.startsWith(s);
+            }
+            for (String s : match.prefix()) {
+                if (d.startsWith(s)) {
+                    return true;
                 }
             }
-            result[i] = r;
-        }
-        return result;
+            return false;
+        });
     }
 }
@@ -0,0 +1,89 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Combines several Pango lineage queries on the same column with AND or OR. The accepted dictionary codes of the
+ * queries are combined so that the column only has to be scanned once. Overlapping queries (e.g., B.1.1.7 and B.1*
+ * or a lineage and its alias) are thus not evaluated twice.
+ */
+public class PangoQuerySet implements VariantQueryExpr {
+
+    private final BiOp.OpType opType;
+
+    private final String columnName;
+
+    private final List<PangoQuery> queries;
+
+    public PangoQuerySet(BiOp.OpType opType, List<PangoQuery> queries) {
+        this.opType = opType;
+        this.columnName = queries.get(0).getColumnName();
+        this.queries = List.copyOf(queries);
+        for (PangoQuery query : queries) {
+            if (!query.getColumnName().equals(columnName)) {
+                throw new IllegalArgumentException("All queries must be on the column " + columnName);
+            }
+        }
+    }
+
+    @Override
+    public long[] evaluate(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        PangoLineageTree tree = database.getPangoLineageTree(columnName);
+        boolean[] acceptedCodes = findAcceptedCodes(database, data);
+        return tree != null ? tree.match(acceptedCodes) : data.match(acceptedCodes);
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        StringColumn data = database.getStringColumn(columnName);
+        long[] result = candidates.clone();
+        data.filter(result, findAcceptedCodes(database, data));
+        return result;
+    }
+
+    /**
+     * @return The number of rows that fulfill the expression
+     */
+    int count(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        return data.count(findAcceptedCodes(database, data));
+    }
+
+    private boolean[] findAcceptedCodes(Database database, StringColumn data) {
+        return BiOp.combine(opType, queries.stream()
+            .map(q -> q.findAcceptedCodes(database, data))
+            .collect(Collectors.toList()));
+    }
+
+    public BiOp.OpType getOpType() {
+        return opType;
+    }
+
+    public List<PangoQuery> getQueries() {
+        return queries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PangoQuerySet that = (PangoQuerySet) o;
+        return opType == that.opType && Objects.equals(queries, that.queries);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(opType, queries);
+    }
+
+    @Override
+    public String toString() {
+        return "PangoQuerySet{" +
+            "opType=" + opType +
+            ", queries=" + queries +
+            '}';
+    }
+}
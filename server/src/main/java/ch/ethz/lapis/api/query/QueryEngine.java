@@ -41,6 +41,7 @@ import ch.ethz.lapis.api.VariantQueryListener;
 import ch.ethz.lapis.api.entity.AggregationField;
 import ch.ethz.lapis.api.entity.req.SampleAggregatedRequest;
 import ch.ethz.lapis.api.entity.req.SampleFilter;
+import ch.ethz.lapis.api.entity.res.QueryExplanation;
 import ch.ethz.lapis.api.entity.res.SampleAggregated;
 import ch.ethz.lapis.api.exception.BadRequestException;
 import ch.ethz.lapis.api.exception.MalformedVariantQueryException;
@@ -49,102 +50,286 @@ import ch.ethz.lapis.api.parser.VariantQueryParser;
 import ch.ethz.lapis.core.Utils;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.IntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 public class QueryEngine {
 
+    private static final int PARSED_QUERY_CACHE_SIZE = 2000;
+
+    /**
+     * Groups are counted in an array if the packed keys have at most this many bits (i.e., 256 KB per partition).
+     */
+    private static final int MAX_DENSE_GROUP_KEY_BITS = 16;
+
+    /**
+     * Maps a normalized variant query string to the parsed and pushed-down expression. The least recently used entry
+     * is evicted when the cache is full.
+     */
+    private static final Map<String, VariantQueryExpr> parsedQueryCache = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VariantQueryExpr> eldest) {
+                return size() > PARSED_QUERY_CACHE_SIZE;
+            }
+        });
+
     public List<SampleAggregated> aggregate(Database database, SampleAggregatedRequest request) {
         // Filter
-        boolean[] matched = matchSampleFilter(database, request);
-        int numberRows = database.size();
+        long[] matched = matchSampleFilter(database, request);
 
         // Group by
         List<SampleAggregated> result = new ArrayList<>();
         List<AggregationField> fields = request.getFields();
         if (fields.isEmpty()) {
-            int count = 0;
-            for (int i = 0; i < numberRows; i++) {
-                if (matched[i]) {
-                    ++count;
+            result.add(new SampleAggregated().setCount(Bitmaps.cardinality(matched)));
+        } else {
+            List<String> columnNames = fields.stream()
+                .map(this::aggregationFieldToColumnName)
+                .collect(Collectors.toList());
+            GroupKeyPacker packer = GroupKeyPacker.create(database, columnNames);
+            Map<List<Object>, Integer> counts = packer != null ?
+                countGroupsPacked(packer, matched) :
+                countGroups(database, columnNames, matched);
+            for (Map.Entry<List<Object>, Integer> entry : counts.entrySet()) {
+                result.add(toSampleAggregated(fields, entry.getKey(), entry.getValue()));
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Answers an aggregated request from the pre-aggregated cube. The request must be supported by the cube, see
+     * {@link AggregatedCube#supports(SampleAggregatedRequest)}.
+     */
+    public List<SampleAggregated> aggregateFromCube(AggregatedCube cube, SampleAggregatedRequest request) {
+        List<SampleAggregated> result = new ArrayList<>();
+        for (Map.Entry<List<Object>, Integer> entry : cube.count(request).entrySet()) {
+            result.add(toSampleAggregated(request.getFields(), entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+
+    /**
+     * Requests that only filter by the Pango lineage (with or without its sub-lineages) can be answered from the
+     * mutation profiles of the lineages, see {@link MutationStore#countMutationsOfGroups(boolean[])}.
+     *
+     * @return The accepted codes of the Pango lineage column or null if the request has other filters
+     */
+    public boolean[] findPangoLineageGroups(Database database, SampleFilter<?> request) {
+        String pangoLineage = request.getPangoLineage();
+        if (pangoLineage == null || !AggregatedCube.filtersOnlyDimensions(request)
+            || Stream.of(request.getRegion(), request.getCountry(), request.getDivision(),
+                request.getNextstrainClade(), request.getDateFrom(), request.getDateTo()).anyMatch(Objects::nonNull)) {
+            return null;
+        }
+        PangoQuery pangoQuery = pangoLineage.endsWith("*") ?
+            new PangoQuery(pangoLineage.substring(0, pangoLineage.length() - 1), true, PANGO_LINEAGE) :
+            new PangoQuery(pangoLineage, false, PANGO_LINEAGE);
+        return pangoQuery.findAcceptedCodes(database, database.getStringColumn(PANGO_LINEAGE));
+    }
+
+
+    /**
+     * Counts the rows per group with keys that are packed into a long. If the key space is small, the rows are counted
+     * in an array; otherwise, in a primitive hash map. Every partition counts its rows separately; the partial counts
+     * are merged afterwards.
+     *
+     * @return The counts per group; the values of date columns are given as epoch days.
+     */
+    Map<List<Object>, Integer> countGroupsPacked(GroupKeyPacker packer, long[] matched) {
+        Map<List<Object>, Integer> counts = new HashMap<>();
+        if (packer.getTotalBits() <= MAX_DENSE_GROUP_KEY_BITS) {
+            List<int[]> partialCounts = RowPartitions.map(matched.length, (fromWord, toWord) -> {
+                int[] partitionCounts = new int[1 << packer.getTotalBits()];
+                for (int w = fromWord; w < toWord; w++) {
+                    long word = matched[w];
+                    while (word != 0) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        partitionCounts[(int) packer.pack(i)]++;
+                    }
+                }
+                return partitionCounts;
+            });
+            int[] denseCounts = partialCounts.get(0);
+            for (int[] partitionCounts : partialCounts.subList(1, partialCounts.size())) {
+                for (int key = 0; key < denseCounts.length; key++) {
+                    denseCounts[key] += partitionCounts[key];
                 }
             }
-            result.add(new SampleAggregated().setCount(count));
-        } else {
-            Map<List<Object>, int[]> counts = new HashMap<>();
-            for (int i = 0; i < numberRows; i++) {
-                if (matched[i]) {
-                    int finalI = i;
-                    List<Object> key = fields.stream()
-                        .map(f -> database.getColumn(aggregationFieldToColumnName(f))[finalI])
-                        .collect(Collectors.toList());
-                    counts.compute(key, (k, v) -> v == null ?
-                        new int[] { 0 } : v)[0]++;
+            for (int key = 0; key < denseCounts.length; key++) {
+                if (denseCounts[key] > 0) {
+                    counts.put(packer.unpack(key), denseCounts[key]);
                 }
             }
-            for (Map.Entry<List<Object>, int[]> entry : counts.entrySet()) {
-                SampleAggregated sampleAggregated = new SampleAggregated().setCount(entry.getValue()[0]);
-                List<Object> key = entry.getKey();
-                for (int i = 0; i < fields.size(); i++) {
-                    switch (fields.get(i)) {
-                        case DATE -> sampleAggregated.setDate(Database.intToDate((Integer) key.get(i)));
-                        case YEAR -> sampleAggregated.setYear((Integer) key.get(i));
-                        case MONTH -> sampleAggregated.setMonth((Integer) key.get(i));
-                        case DATESUBMITTED -> sampleAggregated
-                            .setDateSubmitted(Database.intToDate((Integer) key.get(i)));
-                        case REGION -> sampleAggregated.setRegion((String) key.get(i));
-                        case COUNTRY -> sampleAggregated.setCountry((String) key.get(i));
-                        case DIVISION -> sampleAggregated.setDivision((String) key.get(i));
-                        case LOCATION -> sampleAggregated.setLocation((String) key.get(i));
-                        case REGIONEXPOSURE -> sampleAggregated.setRegionExposure((String) key.get(i));
-                        case COUNTRYEXPOSURE -> sampleAggregated.setCountryExposure((String) key.get(i));
-                        case DIVISIONEXPOSURE -> sampleAggregated.setDivisionExposure((String) key.get(i));
-                        case AGE -> sampleAggregated.setAge((Integer) key.get(i));
-                        case SEX -> sampleAggregated.setSex((String) key.get(i));
-                        case HOSPITALIZED -> sampleAggregated.setHospitalized((Boolean) key.get(i));
-                        case DIED -> sampleAggregated.setDied((Boolean) key.get(i));
-                        case FULLYVACCINATED -> sampleAggregated.setFullyVaccinated((Boolean) key.get(i));
-                        case HOST -> sampleAggregated.setHost((String) key.get(i));
-                        case SAMPLINGSTRATEGY -> sampleAggregated.setSamplingStrategy((String) key.get(i));
-                        case PANGOLINEAGE -> sampleAggregated.setPangoLineage((String) key.get(i));
-                        case NEXTCLADEPANGOLINEAGE -> sampleAggregated.setNextcladePangoLineage((String) key.get(i));
-                        case NEXTSTRAINCLADE -> sampleAggregated.setNextstrainClade((String) key.get(i));
-                        case GISAIDCLADE -> sampleAggregated.setGisaidCloade((String) key.get(i));
-                        case SUBMITTINGLAB -> sampleAggregated.setSubmittingLab((String) key.get(i));
-                        case ORIGINATINGLAB -> sampleAggregated.setOriginatingLab((String) key.get(i));
+        } else {
+            List<LongIntHashMap> partialCounts = RowPartitions.map(matched.length, (fromWord, toWord) -> {
+                LongIntHashMap partitionCounts = new LongIntHashMap();
+                for (int w = fromWord; w < toWord; w++) {
+                    long word = matched[w];
+                    while (word != 0) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        partitionCounts.addTo(packer.pack(i), 1);
                     }
                 }
-                result.add(sampleAggregated);
+                return partitionCounts;
+            });
+            LongIntHashMap mergedCounts = partialCounts.get(0);
+            for (LongIntHashMap partitionCounts : partialCounts.subList(1, partialCounts.size())) {
+                partitionCounts.forEach(mergedCounts::addTo);
             }
+            mergedCounts.forEach((key, count) -> counts.put(packer.unpack(key), count));
         }
+        return counts;
+    }
 
-        return result;
+
+    /**
+     * Counts the rows per group with the values as keys. This is the fallback if the keys cannot be packed into a
+     * long (see {@link GroupKeyPacker}). String columns are grouped by their dictionary codes which are only decoded
+     * for the final groups.
+     *
+     * @return The counts per group; the values of date columns are given as epoch days.
+     */
+    Map<List<Object>, Integer> countGroups(Database database, List<String> columnNames, long[] matched) {
+        List<IntFunction<Object>> columns = new ArrayList<>();
+        List<StringColumn> stringColumns = new ArrayList<>();
+        for (String columnName : columnNames) {
+            StringColumn stringColumn = database.getStringColumn(columnName);
+            stringColumns.add(stringColumn);
+            if (stringColumn != null) {
+                columns.add(stringColumn::getCode);
+            } else if (database.getIntColumn(columnName) != null) {
+                columns.add(database.getIntColumn(columnName)::get);
+            } else if (database.getFloatColumn(columnName) != null) {
+                columns.add(database.getFloatColumn(columnName)::get);
+            } else {
+                columns.add(database.getBoolColumn(columnName)::get);
+            }
+        }
+        // Every partition counts its rows separately; the partial counts are merged afterwards.
+        List<Map<List<Object>, int[]>> partialCounts = RowPartitions.map(matched.length, (fromWord, toWord) -> {
+            Map<List<Object>, int[]> partitionCounts = new HashMap<>();
+            for (int w = fromWord; w < toWord; w++) {
+                long word = matched[w];
+                while (word != 0) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    List<Object> key = new ArrayList<>(columns.size());
+                    for (IntFunction<Object> column : columns) {
+                        key.add(column.apply(i));
+                    }
+                    partitionCounts.compute(key, (k, v) -> v == null ?
+                        new int[] { 0 } : v)[0]++;
+                }
+            }
+            return partitionCounts;
+        });
+        Map<List<Object>, int[]> mergedCounts = partialCounts.get(0);
+        for (Map<List<Object>, int[]> partitionCounts : partialCounts.subList(1, partialCounts.size())) {
+            partitionCounts.forEach((key, count) -> mergedCounts.merge(key, count, (a, b) -> {
+                a[0] += b[0];
+                return a;
+            }));
+        }
+        Map<List<Object>, Integer> counts = new HashMap<>();
+        for (Map.Entry<List<Object>, int[]> entry : mergedCounts.entrySet()) {
+            List<Object> key = new ArrayList<>(entry.getKey());
+            for (int i = 0; i < key.size(); i++) {
+                StringColumn stringColumn = stringColumns.get(i);
+                if (stringColumn != null) {
+                    key.set(i, stringColumn.decode((Integer) key.get(i)));
+                }
+            }
+            counts.put(key, entry.getValue()[0]);
+        }
+        return counts;
     }
 
-    public List<Integer> filterIds(Database database, SampleFilter<?> sampleFilter) {
-        boolean[] matched = matchSampleFilter(database, sampleFilter);
-        List<Integer> ids = new ArrayList<>();
-        for (int i = 0; i < matched.length; i++) {
-            if (matched[i]) {
-                ids.add(i);
+
+    private SampleAggregated toSampleAggregated(List<AggregationField> fields, List<Object> key, int count) {
+        SampleAggregated sampleAggregated = new SampleAggregated().setCount(count);
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i)) {
+                case DATE -> sampleAggregated.setDate(Database.intToDate((Integer) key.get(i)));
+                case YEAR -> sampleAggregated.setYear((Integer) key.get(i));
+                case MONTH -> sampleAggregated.setMonth((Integer) key.get(i));
+                case DATESUBMITTED -> sampleAggregated.setDateSubmitted(Database.intToDate((Integer) key.get(i)));
+                case REGION -> sampleAggregated.setRegion((String) key.get(i));
+                case COUNTRY -> sampleAggregated.setCountry((String) key.get(i));
+                case DIVISION -> sampleAggregated.setDivision((String) key.get(i));
+                case LOCATION -> sampleAggregated.setLocation((String) key.get(i));
+                case REGIONEXPOSURE -> sampleAggregated.setRegionExposure((String) key.get(i));
+                case COUNTRYEXPOSURE -> sampleAggregated.setCountryExposure((String) key.get(i));
+                case DIVISIONEXPOSURE -> sampleAggregated.setDivisionExposure((String) key.get(i));
+                case AGE -> sampleAggregated.setAge((Integer) key.get(i));
+                case SEX -> sampleAggregated.setSex((String) key.get(i));
+                case HOSPITALIZED -> sampleAggregated.setHospitalized((Boolean) key.get(i));
+                case DIED -> sampleAggregated.setDied((Boolean) key.get(i));
+                case FULLYVACCINATED -> sampleAggregated.setFullyVaccinated((Boolean) key.get(i));
+                case HOST -> sampleAggregated.setHost((String) key.get(i));
+                case SAMPLINGSTRATEGY -> sampleAggregated.setSamplingStrategy((String) key.get(i));
+                case PANGOLINEAGE -> sampleAggregated.setPangoLineage((String) key.get(i));
+                case NEXTCLADEPANGOLINEAGE -> sampleAggregated.setNextcladePangoLineage((String) key.get(i));
+                case NEXTSTRAINCLADE -> sampleAggregated.setNextstrainClade((String) key.get(i));
+                case GISAIDCLADE -> sampleAggregated.setGisaidCloade((String) key.get(i));
+                case SUBMITTINGLAB -> sampleAggregated.setSubmittingLab((String) key.get(i));
+                case ORIGINATINGLAB -> sampleAggregated.setOriginatingLab((String) key.get(i));
             }
         }
-        return ids;
+        return sampleAggregated;
+    }
+
+    public List<Integer> filterIds(Database database, SampleFilter<?> sampleFilter) {
+        long[] matched = matchSampleFilter(database, sampleFilter);
+        return Bitmaps.toList(matched);
     }
 
-    public boolean[] matchSampleFilter(Database database, SampleFilter<?> sampleFilter) {
+    /**
+     * @return A bitmap (see {@link Bitmaps}) of the matching rows
+     */
+    public long[] matchSampleFilter(Database database, SampleFilter<?> sampleFilter) {
+        return match(database, sampleFilter, null);
+    }
+
+    /**
+     * Evaluates the sample filter and records how it was evaluated. This is slower than a normal evaluation because
+     * statistics are collected in every node of the plan.
+     */
+    public QueryExplanation explain(Database database, SampleFilter<?> sampleFilter) {
+        QueryExplanation explanation = new QueryExplanation();
+        match(database, sampleFilter, explanation);
+        return explanation;
+    }
+
+    /**
+     * @param explanation If not null, it will be filled with the statistics of the evaluation
+     */
+    private long[] match(Database database, SampleFilter<?> sampleFilter, QueryExplanation explanation) {
         Database db = database;
         SampleFilter<?> sf = sampleFilter;
 
@@ -162,7 +347,7 @@ public class QueryEngine {
             }
         }
 
-        // Filter variant
+        // Build the variant query
         var nucMutations = sf.getNucMutations();
         var useNucMutations = nucMutations != null && !nucMutations.isEmpty();
         var aaMutations = sf.getAaMutations();
@@ -191,6 +376,7 @@ public class QueryEngine {
 
         VariantQueryExpr variantQueryExpr = null;
         if (useVariantQuery) {
+            // The parsed query is cached and already validated.
             variantQueryExpr = parseVariantQueryExpr(variantQuery);
         } else if (useOtherVariantSpecifying) {
             List<VariantQueryExpr> components = new ArrayList<>();
@@ -234,23 +420,20 @@ public class QueryEngine {
             }
             variantQueryExpr = components.get(0);
             for (int i = 1; i < components.size(); i++) {
-                BiOp conjunction = new BiOp(BiOp.OpType.AND);
-                conjunction.putValue(variantQueryExpr);
-                conjunction.putValue(components.get(i));
-                variantQueryExpr = conjunction;
+                variantQueryExpr = new BiOp(BiOp.OpType.AND, variantQueryExpr, components.get(i));
             }
         }
 
-        int numberRows = db.size();
-        boolean[] matched;
-        if (variantQueryExpr != null) {
-            Maybe.pushDownMaybe(variantQueryExpr);
-            matched = variantQueryExpr.evaluate(db);
-        } else {
-            matched = new boolean[numberRows];
-            Arrays.fill(matched, true);
+        if (variantQueryExpr != null && !useVariantQuery) {
+            // This also validates the query and has to be done even if no rows will be evaluated.
+            variantQueryExpr = QueryRewriter.rewrite(Maybe.pushDownMaybe(variantQueryExpr));
         }
 
+        // The metadata filters are cheap and are applied first. The variant query then only has to be evaluated for
+        // the remaining candidates.
+        long startTime = System.nanoTime();
+        long[] matched = Bitmaps.full(db.size());
+
         // Filter metadata
         between(matched, db.getIntColumn(DATE), sf.getDateFrom(), sf.getDateTo());
         between(matched, db.getIntColumn(YEAR), sf.getYearFrom(), sf.getYearTo());
@@ -297,95 +480,82 @@ public class QueryEngine {
         eq(matched, db.getStringColumn(GISAID_EPI_ISL), sf.getGisaidEpiIsl(), true);
         eq(matched, db.getStringColumn(STRAIN), sf.getStrain(), true);
 
+        int numberCandidates = Bitmaps.cardinality(matched);
+        if (explanation != null) {
+            explanation
+                .setMetadataFilterTimeMs((System.nanoTime() - startTime) / 1_000_000.0)
+                .setNumberCandidates(numberCandidates)
+                .setNumberMatched(numberCandidates);
+        }
+
+        // Filter variant
+        if (variantQueryExpr != null && numberCandidates > 0) {
+            startTime = System.nanoTime();
+            QueryPlan plan = new QueryPlanner(db, explanation != null).plan(variantQueryExpr);
+            Bitmaps.and(matched, plan.evaluate(db, matched));
+            if (explanation != null) {
+                explanation
+                    .setVariantQueryTimeMs((System.nanoTime() - startTime) / 1_000_000.0)
+                    .setNumberMatched(Bitmaps.cardinality(matched))
+                    .setPlan(plan.explain());
+            }
+        }
+
         return matched;
     }
 
-    private void eq(boolean[] matched, String[] data, String value, boolean caseSensitive) {
+    private void eq(long[] matched, StringColumn data, String value, boolean caseSensitive) {
         if (value == null) {
             return;
         }
-        if (caseSensitive) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && value.equals(data[i]);
-            }
-        } else {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && value.equalsIgnoreCase(data[i]);
-            }
-        }
+        boolean[] acceptedCodes = caseSensitive ?
+            data.findCodes(value::equals) : data.findCodes(value::equalsIgnoreCase);
+        data.filter(matched, acceptedCodes);
     }
 
-    private void eq(boolean[] matched, String[] data, Collection<String> possibleValues, boolean caseSensitive) {
+    private void eq(long[] matched, StringColumn data, Collection<String> possibleValues, boolean caseSensitive) {
         if (possibleValues == null || possibleValues.isEmpty()) {
             return;
         }
         Set<String> possibleValuesSet;
+        boolean[] acceptedCodes;
         if (caseSensitive) {
             possibleValuesSet = new HashSet<>(possibleValues);
+            acceptedCodes = data.findCodes(possibleValuesSet::contains);
         } else {
             // Turning everything to lower case
             possibleValuesSet = possibleValues.stream().map(String::toLowerCase).collect(Collectors.toSet());
+            acceptedCodes = data.findCodes(d -> possibleValuesSet.contains(d.toLowerCase()));
         }
-
-        if (caseSensitive) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && possibleValuesSet.contains(data[i]);
-            }
-        } else {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && possibleValuesSet.contains(data[i] != null ? data[i].toLowerCase() : null);
-            }
-        }
+        data.filter(matched, acceptedCodes);
     }
 
-    private void eq(boolean[] matched, Boolean[] data, Boolean value) {
+    private void eq(long[] matched, BooleanColumn data, Boolean value) {
         if (value == null) {
             return;
         }
-        for (int i = 0; i < matched.length; i++) {
-            matched[i] = matched[i] && data[i] != null && value == data[i];
-        }
+        data.filterEquals(matched, value);
     }
 
-    private void between(boolean[] matched, Integer[] data, Integer from, Integer to) {
+    private void between(long[] matched, IntColumn data, Integer from, Integer to) {
         if (from == null && to == null) {
             return;
         }
-        if (from != null && to != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] >= from && data[i] <= to;
-            }
-        } else if (from != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] >= from;
-            }
-        } else {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] <= to;
-            }
-        }
+        data.filterBetween(matched,
+            from != null ? from : Integer.MIN_VALUE,
+            to != null ? to : Integer.MAX_VALUE);
     }
 
-    private void between(boolean[] matched, Float[] data, Float from, Float to) {
+    private void between(long[] matched, FloatColumn data, Float from, Float to) {
         if (from == null && to == null) {
             return;
         }
-        if (from != null && to != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] >= from && data[i] <= to;
-            }
-        } else if (from != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] >= from;
-            }
-        } else {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && data[i] != null && data[i] <= to;
-            }
-        }
+        data.filterBetween(matched,
+            from != null ? from : Float.NEGATIVE_INFINITY,
+            to != null ? to : Float.POSITIVE_INFINITY);
     }
 
-    private void between(boolean[] matched, Integer[] data, LocalDate dateFrom, LocalDate dateTo) {
+    private void between(long[] matched, IntColumn data, LocalDate dateFrom, LocalDate dateTo) {
         Integer dateFromInt = Database.dateToInt(dateFrom);
         Integer dateToInt = Database.dateToInt(dateTo);
         between(matched, data, dateFromInt, dateToInt);
@@ -393,56 +563,79 @@ public class QueryEngine {
 
 
     private void betweenYearMonth(
-        boolean[] matched,
-        Integer[] years,
-        Integer[] months,
+        long[] matched,
+        IntColumn years,
+        IntColumn months,
         String yearMonthFrom,
         String yearMonthTo
     ) {
         if (yearMonthFrom == null && yearMonthTo == null) {
             return;
         }
-        Integer yearFromInt = null;
-        Integer monthFromInt = null;
-        Integer yearToInt = null;
-        Integer monthToInt = null;
+        // A year-month is encoded as year * 12 + month so that a single range check is sufficient.
+        int from = Integer.MIN_VALUE;
+        int to = Integer.MAX_VALUE;
         if (yearMonthFrom != null) {
             String[] split = yearMonthFrom.split("-");
-            yearFromInt = Utils.nullableIntegerValue(split[0]);
-            monthFromInt = Utils.nullableIntegerValue(split[1]);
+            from = Utils.nullableIntegerValue(split[0]) * 12 + Utils.nullableIntegerValue(split[1]);
         }
         if (yearMonthTo != null) {
             String[] split = yearMonthTo.split("-");
-            yearToInt = Utils.nullableIntegerValue(split[0]);
-            monthToInt = Utils.nullableIntegerValue(split[1]);
+            to = Utils.nullableIntegerValue(split[0]) * 12 + Utils.nullableIntegerValue(split[1]);
         }
-        if (yearMonthFrom != null && yearMonthTo != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && years[i] != null && months[i] != null
-                    && ((years[i] >= yearFromInt && months[i] >= monthFromInt) || years[i] > yearFromInt)
-                    && ((years[i] <= yearToInt && months[i] <= monthToInt) || years[i] < yearToInt);
-            }
-        } else if (yearMonthFrom != null) {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && years[i] != null && months[i] != null
-                    && ((years[i] >= yearFromInt && months[i] >= monthFromInt) || years[i] > yearFromInt);
-            }
-        } else {
-            for (int i = 0; i < matched.length; i++) {
-                matched[i] = matched[i] && years[i] != null && months[i] != null
-                    && ((years[i] <= yearToInt && months[i] <= monthToInt) || years[i] < yearToInt);
+        for (int w = 0; w < matched.length; w++) {
+            long word = matched[w];
+            while (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (years.isNull(i) || months.isNull(i)) {
+                    matched[w] &= ~(1L << i);
+                } else {
+                    int yearMonth = years.getInt(i) * 12 + months.getInt(i);
+                    if (yearMonth < from || yearMonth > to) {
+                        matched[w] &= ~(1L << i);
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Parses the variant query, pushes down the maybe operators and simplifies the query. The result is immutable and
+     * is cached because the same queries are sent over and over again.
+     */
     private VariantQueryExpr parseVariantQueryExpr(String variantQuery) {
+        String normalized = variantQuery.trim().toUpperCase();
+        VariantQueryExpr cached = parsedQueryCache.get(normalized);
+        if (cached != null) {
+            return cached;
+        }
+        VariantQueryExpr expr = QueryRewriter.rewrite(Maybe.pushDownMaybe(parse(normalized)));
+        parsedQueryCache.put(normalized, expr);
+        return expr;
+    }
+
+    private VariantQueryExpr parse(String variantQuery) {
         try {
-            VariantQueryLexer lexer = new VariantQueryLexer(CharStreams.fromString(variantQuery.toUpperCase()));
+            VariantQueryLexer lexer = new VariantQueryLexer(CharStreams.fromString(variantQuery));
             CommonTokenStream tokens = new CommonTokenStream(lexer);
             VariantQueryParser parser = new VariantQueryParser(tokens);
+            // First try the faster SLL prediction which is sufficient for almost all queries. Only if it fails, the
+            // query is parsed again with the full LL prediction which also produces the correct syntax errors.
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
             parser.removeErrorListeners();
-            parser.addErrorListener(ThrowingErrorListener.INSTANCE);
-            ParseTree tree = parser.start();
+            parser.setErrorHandler(new BailErrorStrategy());
+            ParseTree tree;
+            try {
+                tree = parser.start();
+            } catch (ParseCancellationException e) {
+                tokens.seek(0);
+                parser.reset();
+                parser.addErrorListener(ThrowingErrorListener.INSTANCE);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                tree = parser.start();
+            }
             ParseTreeWalker walker = new ParseTreeWalker();
             VariantQueryListener listener = new VariantQueryListener();
             walker.walk(listener, tree);
@@ -2,6 +2,21 @@ package ch.ethz.lapis.api.query;
 
 public interface QueryExpr {
 
-    boolean[] evaluate(Database database);
+    /**
+     * @return A bitmap (see {@link Bitmaps}) with one bit per row of the database. The caller owns the returned
+     * bitmap and may modify it.
+     */
+    long[] evaluate(Database database);
+
+    /**
+     * Evaluates the expression for the candidate rows. Only the bits of the candidate rows are meaningful in the
+     * returned bitmap, the bits of all other rows may have any value. Expressions whose costs depend on the number of
+     * rows that they have to look at should override this method; the default implementation evaluates all rows.
+     *
+     * @param candidates A bitmap of the rows that have to be evaluated; it must not be modified
+     */
+    default long[] evaluate(Database database, long[] candidates) {
+        return evaluate(database);
+    }
 
 }
@@ -0,0 +1,17 @@
+package ch.ethz.lapis.api.query;
+
+/**
+ * How the response of a request was obtained. It is returned in the header LAPIS-Query-Path.
+ */
+public enum QueryPath {
+    /** The response was taken from the cache; nothing was computed. */
+    CACHE,
+    /** The counts were taken from the pre-aggregated cube (see {@link AggregatedCube}). */
+    CUBE,
+    /** The rows were evaluated by the {@link QueryEngine}. */
+    ENGINE;
+
+    public String getHeaderValue() {
+        return name().toLowerCase();
+    }
+}
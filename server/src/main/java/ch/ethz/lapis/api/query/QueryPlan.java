@@ -0,0 +1,335 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.res.QueryExplanation;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A node of an execution plan for a variant query, see {@link QueryPlanner}. In contrast to the VariantQueryExpr tree,
+ * the operands of AND and OR are flattened and ordered, and an operand is only evaluated for the rows that can still
+ * change the result of the operation.
+ * <p>
+ * A plan is created for one request and can collect the number of processed rows and the time spent in every node.
+ * <p>
+ * The results of nodes that were evaluated for all rows are offered to the {@link ResultCache} of the database. If the
+ * result of a node is cached, the node (and its children) are not evaluated.
+ */
+public abstract class QueryPlan {
+
+    /**
+     * If less than this fraction of rows are candidates, a leaf is only evaluated for the candidates.
+     */
+    private static final double SPARSE_CANDIDATES_RATIO = 0.125;
+
+    /**
+     * The expression that is evaluated by this node; it is used as the key of the result cache.
+     */
+    protected final VariantQueryExpr expr;
+    /**
+     * The estimated fraction of rows that fulfill the expression
+     */
+    protected final double selectivity;
+    private final boolean collectStatistics;
+    private long timeNanos = 0;
+    private int inputRows = 0;
+    private int outputRows = 0;
+    private boolean fromCache = false;
+
+    protected QueryPlan(VariantQueryExpr expr, double selectivity, boolean collectStatistics) {
+        this.expr = expr;
+        this.selectivity = selectivity;
+        this.collectStatistics = collectStatistics;
+    }
+
+
+    public double getSelectivity() {
+        return selectivity;
+    }
+
+
+    /**
+     * Evaluates the plan for the candidate rows. Only the bits of the candidate rows are meaningful in the returned
+     * bitmap.
+     *
+     * @param candidates The rows that have to be evaluated; it will not be modified
+     */
+    public long[] evaluate(Database database, long[] candidates) {
+        long start = System.nanoTime();
+        ResultCache resultCache = database.getResultCache();
+        long[] result = resultCache.get(expr);
+        if (result != null) {
+            fromCache = true;
+        } else {
+            result = evaluateInternal(database, candidates);
+            if (isCompleteResult(database, candidates)) {
+                resultCache.offer(expr, result, System.nanoTime() - start);
+            }
+        }
+        if (!collectStatistics) {
+            return result;
+        }
+        timeNanos += System.nanoTime() - start;
+        inputRows += Bitmaps.cardinality(candidates);
+        long[] matchedCandidates = result.clone();
+        Bitmaps.and(matchedCandidates, candidates);
+        outputRows += Bitmaps.cardinality(matchedCandidates);
+        return result;
+    }
+
+
+    protected abstract long[] evaluateInternal(Database database, long[] candidates);
+
+
+    /**
+     * @return True if the bits of all rows (and not only of the candidates) are meaningful in the result of
+     *     evaluateInternal()
+     */
+    protected boolean isCompleteResult(Database database, long[] candidates) {
+        return Bitmaps.cardinality(candidates) == database.size();
+    }
+
+
+    public QueryExplanation.Node explain() {
+        return new QueryExplanation.Node()
+            .setOperator(getOperator())
+            .setExpression(getExpression())
+            .setEstimatedSelectivity(selectivity)
+            .setInputRows(inputRows)
+            .setOutputRows(outputRows)
+            .setTimeMs(timeNanos / 1_000_000.0)
+            .setFromCache(fromCache)
+            .setChildren(getChildren().stream().map(QueryPlan::explain).collect(Collectors.toList()));
+    }
+
+
+    protected abstract String getOperator();
+
+
+    protected String getExpression() {
+        return null;
+    }
+
+
+    protected List<QueryPlan> getChildren() {
+        return List.of();
+    }
+
+
+    /**
+     * Evaluates a VariantQueryExpr that does not have (planned) children.
+     */
+    public static class Leaf extends QueryPlan {
+
+        public Leaf(VariantQueryExpr expr, double selectivity, boolean collectStatistics) {
+            super(expr, selectivity, collectStatistics);
+        }
+
+        @Override
+        protected long[] evaluateInternal(Database database, long[] candidates) {
+            if (!isCompleteResult(database, candidates)) {
+                return expr.evaluate(database, candidates);
+            }
+            // Most rows are candidates: scanning all rows is faster than jumping from candidate to candidate.
+            return expr.evaluate(database);
+        }
+
+        @Override
+        protected boolean isCompleteResult(Database database, long[] candidates) {
+            return Bitmaps.cardinality(candidates) >= database.size() * SPARSE_CANDIDATES_RATIO;
+        }
+
+        @Override
+        protected String getOperator() {
+            return "Leaf";
+        }
+
+        @Override
+        protected String getExpression() {
+            return expr.toString();
+        }
+    }
+
+
+    /**
+     * The operands are evaluated in the given order and every operand only for the rows that fulfill all previous
+     * operands. The operands should thus be ordered by increasing selectivity.
+     */
+    public static class And extends QueryPlan {
+
+        private final List<QueryPlan> operands;
+
+        public And(VariantQueryExpr expr, List<QueryPlan> operands, double selectivity, boolean collectStatistics) {
+            super(expr, selectivity, collectStatistics);
+            this.operands = operands;
+        }
+
+        @Override
+        protected long[] evaluateInternal(Database database, long[] candidates) {
+            long[] remaining = candidates.clone();
+            for (QueryPlan operand : operands) {
+                Bitmaps.and(remaining, operand.evaluate(database, remaining));
+                if (Bitmaps.cardinality(remaining) == 0) {
+                    break;
+                }
+            }
+            return remaining;
+        }
+
+        @Override
+        protected String getOperator() {
+            return "And";
+        }
+
+        @Override
+        protected List<QueryPlan> getChildren() {
+            return operands;
+        }
+    }
+
+
+    /**
+     * The operands are evaluated in the given order and every operand only for the rows that do not fulfill any of the
+     * previous operands. The operands should thus be ordered by decreasing selectivity.
+     */
+    public static class Or extends QueryPlan {
+
+        private final List<QueryPlan> operands;
+
+        public Or(VariantQueryExpr expr, List<QueryPlan> operands, double selectivity, boolean collectStatistics) {
+            super(expr, selectivity, collectStatistics);
+            this.operands = operands;
+        }
+
+        @Override
+        protected long[] evaluateInternal(Database database, long[] candidates) {
+            long[] result = Bitmaps.allocate(database.size());
+            long[] remaining = candidates.clone();
+            for (QueryPlan operand : operands) {
+                long[] operandResult = operand.evaluate(database, remaining);
+                Bitmaps.and(operandResult, remaining);
+                Bitmaps.or(result, operandResult);
+                Bitmaps.andNot(remaining, operandResult);
+                if (Bitmaps.cardinality(remaining) == 0) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected String getOperator() {
+            return "Or";
+        }
+
+        @Override
+        protected List<QueryPlan> getChildren() {
+            return operands;
+        }
+    }
+
+
+    public static class Not extends QueryPlan {
+
+        private final QueryPlan operand;
+
+        public Not(VariantQueryExpr expr, QueryPlan operand, boolean collectStatistics) {
+            super(expr, 1 - operand.selectivity, collectStatistics);
+            this.operand = operand;
+        }
+
+        @Override
+        protected long[] evaluateInternal(Database database, long[] candidates) {
+            long[] result = operand.evaluate(database, candidates);
+            Bitmaps.not(result, database.size());
+            return result;
+        }
+
+        @Override
+        protected String getOperator() {
+            return "Not";
+        }
+
+        @Override
+        protected List<QueryPlan> getChildren() {
+            return List.of(operand);
+        }
+    }
+
+
+    /**
+     * The operands are evaluated one after the other. A row is only passed to the next operand while its result is
+     * not decided yet, i.e., while it has not yet reached n true operands (at-least-n-of) or could still reach n.
+     */
+    public static class NOf extends QueryPlan {
+
+        private final boolean exactMode;
+        private final int n;
+        private final List<QueryPlan> operands;
+
+        public NOf(
+            VariantQueryExpr expr,
+            boolean exactMode,
+            int n,
+            List<QueryPlan> operands,
+            double selectivity,
+            boolean collectStatistics
+        ) {
+            super(expr, selectivity, collectStatistics);
+            this.exactMode = exactMode;
+            this.n = n;
+            this.operands = operands;
+        }
+
+        @Override
+        protected long[] evaluateInternal(Database database, long[] candidates) {
+            short[] trueCount = new short[database.size()];
+            long[] result = Bitmaps.allocate(database.size());
+            long[] undecided = candidates.clone();
+            for (int j = 0; j < operands.size() && Bitmaps.cardinality(undecided) > 0; j++) {
+                long[] operandResult = operands.get(j).evaluate(database, undecided);
+                int numberRemainingOperands = operands.size() - j - 1;
+                for (int w = 0; w < undecided.length; w++) {
+                    long word = undecided[w];
+                    while (word != 0) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                        long bit = 1L << i;
+                        word &= word - 1;
+                        if ((operandResult[w] & bit) != 0) {
+                            trueCount[i]++;
+                        }
+                        if (!exactMode && trueCount[i] >= n) {
+                            result[w] |= bit;
+                            undecided[w] &= ~bit;
+                        } else if (trueCount[i] > n || trueCount[i] + numberRemainingOperands < n) {
+                            undecided[w] &= ~bit;
+                        }
+                    }
+                }
+            }
+            if (exactMode) {
+                for (int w = 0; w < candidates.length; w++) {
+                    long word = candidates[w];
+                    while (word != 0) {
+                        int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (trueCount[i] == n) {
+                            result[w] |= 1L << i;
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected String getOperator() {
+            return (exactMode ? "Exactly-" : "") + n + "-Of";
+        }
+
+        @Override
+        protected List<QueryPlan> getChildren() {
+            return operands;
+        }
+    }
+}
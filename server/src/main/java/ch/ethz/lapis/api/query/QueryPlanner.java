@@ -0,0 +1,198 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.AAInsertion;
+import ch.ethz.lapis.api.entity.AAMutation;
+import ch.ethz.lapis.api.entity.NucInsertion;
+import ch.ethz.lapis.api.entity.NucMutation;
+import ch.ethz.lapis.util.ReferenceGenomeData;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Translates a variant query into a {@link QueryPlan}. The selectivity of the leaves is estimated with the statistics
+ * that the in-memory database already has (the number of sequences with a mutation, the number of rows per
+ * dictionary entry and the insertion index). Chains of AND and OR are flattened; the operands of an AND are ordered
+ * by increasing selectivity and the operands of an OR by decreasing selectivity so that the operands that remove the
+ * most rows from the further evaluation come first.
+ * <p>
+ * The maybe operator must have been pushed down before planning.
+ */
+public class QueryPlanner {
+
+    /**
+     * Used if the selectivity of a leaf cannot be estimated, e.g., for unknown or ambiguous bases
+     */
+    private static final double DEFAULT_SELECTIVITY = 0.05;
+
+    private static final char[] NUC_MUTATION_BASES = "ACGT-".toCharArray();
+    private static final char[] AA_MUTATION_BASES = "ACDEFGHIKLMNPQRSTVWY*-".toCharArray();
+
+    private final Database database;
+    private final boolean collectStatistics;
+
+    /**
+     * @param collectStatistics If true, the plan records the number of rows and the time spent in every node
+     */
+    public QueryPlanner(Database database, boolean collectStatistics) {
+        this.database = database;
+        this.collectStatistics = collectStatistics;
+    }
+
+
+    public QueryPlan plan(VariantQueryExpr expr) {
+        if (expr instanceof Negation x) {
+            return new QueryPlan.Not(x, plan(x.getValue()), collectStatistics);
+        } else if (expr instanceof Single x) {
+            // Maybe nodes do not occur anymore after being pushed down
+            return plan(x.getValue());
+        } else if (expr instanceof BiOp || expr instanceof NaryOp) {
+            BiOp.OpType opType = expr instanceof BiOp x ? x.getOpType() : ((NaryOp) expr).getOpType();
+            List<QueryPlan> operands = new ArrayList<>();
+            collectOperands(expr, opType, operands);
+            if (opType == BiOp.OpType.AND) {
+                operands.sort(Comparator.comparingDouble(QueryPlan::getSelectivity));
+                double selectivity = 1;
+                for (QueryPlan operand : operands) {
+                    selectivity *= operand.getSelectivity();
+                }
+                return new QueryPlan.And(expr, operands, selectivity, collectStatistics);
+            } else {
+                operands.sort(Comparator.comparingDouble(QueryPlan::getSelectivity).reversed());
+                double notSelected = 1;
+                for (QueryPlan operand : operands) {
+                    notSelected *= 1 - operand.getSelectivity();
+                }
+                return new QueryPlan.Or(expr, operands, 1 - notSelected, collectStatistics);
+            }
+        } else if (expr instanceof NOf x) {
+            if (x.getSubExprs().size() > Short.MAX_VALUE) {
+                throw new RuntimeException("More than " + Short.MAX_VALUE + " in the n-of statement - seriously? Why??");
+            }
+            List<QueryPlan> operands = new ArrayList<>();
+            double selectivitySum = 0;
+            for (VariantQueryExpr subExpr : x.getSubExprs()) {
+                QueryPlan operand = plan(subExpr);
+                operands.add(operand);
+                selectivitySum += operand.getSelectivity();
+            }
+            // Operands that are likely true decide at-least-n-of early. This is a rough estimate: it assumes that
+            // n of the operands with the average selectivity have to be true.
+            operands.sort(Comparator.comparingDouble(QueryPlan::getSelectivity).reversed());
+            double averageSelectivity = selectivitySum / operands.size();
+            double selectivity = Math.min(1, Math.pow(averageSelectivity, Math.max(x.getN(), 1)));
+            return new QueryPlan.NOf(x, x.isExactMode(), x.getN(), operands, selectivity, collectStatistics);
+        } else {
+            return new QueryPlan.Leaf(expr, estimateLeafSelectivity(expr), collectStatistics);
+        }
+    }
+
+
+    private void collectOperands(VariantQueryExpr expr, BiOp.OpType opType, List<QueryPlan> operands) {
+        if (expr instanceof BiOp x && x.getOpType() == opType) {
+            collectOperands(x.getLeft(), opType, operands);
+            collectOperands(x.getRight(), opType, operands);
+        } else if (expr instanceof NaryOp x && x.getOpType() == opType) {
+            x.getOperands().forEach(operand -> collectOperands(operand, opType, operands));
+        } else if (expr instanceof Single x && !(expr instanceof Negation)) {
+            collectOperands(x.getValue(), opType, operands);
+        } else {
+            operands.add(plan(expr));
+        }
+    }
+
+
+    private double estimateLeafSelectivity(VariantQueryExpr expr) {
+        int size = database.size();
+        if (size == 0) {
+            return DEFAULT_SELECTIVITY;
+        }
+        if (expr instanceof NucMutation x) {
+            return estimateNucMutationSelectivity(x.getPosition(), x::getAcceptedBases);
+        } else if (expr instanceof NucMutationSet x) {
+            return estimateNucMutationSelectivity(x.getMutations().get(0).getPosition(), x::getAcceptedBases);
+        } else if (expr instanceof AAMutation x) {
+            return estimateAAMutationSelectivity(x.getGene(), x.getPosition(), x::getAcceptedBases);
+        } else if (expr instanceof AAMutationSet x) {
+            AAMutation first = x.getMutations().get(0);
+            return estimateAAMutationSelectivity(first.getGene(), first.getPosition(), x::getAcceptedBases);
+        } else if (expr instanceof PangoQuery x) {
+            return (double) x.count(database) / size;
+        } else if (expr instanceof PangoQuerySet x) {
+            return (double) x.count(database) / size;
+        } else if (expr instanceof NextstrainClade x) {
+            return (double) x.toStringValue().count(database) / size;
+        } else if (expr instanceof GisaidClade x) {
+            return (double) x.toStringValue().count(database) / size;
+        } else if (expr instanceof NucInsertion x) {
+            return (double) database.getNucInsertionStore().find(x.getPosition() + ":" + x.getQuery()).size() / size;
+        } else if (expr instanceof AAInsertion x) {
+            String gene = ReferenceGenomeData.getInstance().getCorrectlyCapitalizedGeneName(x.getGene());
+            InsertionStore insertionStore = database.getAaInsertionStores().get(gene);
+            if (insertionStore == null) {
+                return DEFAULT_SELECTIVITY;
+            }
+            return (double) insertionStore.find(x.getPosition() + ":" + x.getQuery()).size() / size;
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+
+    private double estimateNucMutationSelectivity(int position, Supplier<boolean[]> acceptedBases) {
+        return estimateMutationSelectivity(database.getNucMutationStore(), NUC_MUTATION_BASES,
+            ReferenceGenomeData.getInstance().getNucleotideSequenceArr(), position, acceptedBases);
+    }
+
+
+    private double estimateAAMutationSelectivity(String gene, int position, Supplier<boolean[]> acceptedBases) {
+        gene = ReferenceGenomeData.getInstance().getCorrectlyCapitalizedGeneName(gene);
+        MutationStore mutationStore = database.getAaMutationStores().get(gene);
+        if (mutationStore == null) {
+            return DEFAULT_SELECTIVITY;
+        }
+        return estimateMutationSelectivity(mutationStore, AA_MUTATION_BASES,
+            ReferenceGenomeData.getInstance().getGeneAASequencesArr().get(gene), position, acceptedBases);
+    }
+
+
+    /**
+     * The mutation store only knows the number of sequences with a mutation (i.e., a base that differs from the
+     * reference). All other sequences are assumed to have the reference base; the number of unknowns is not taken into
+     * account.
+     *
+     * @param acceptedBases Provides the table of accepted bases; it is only called after the position was checked.
+     */
+    private double estimateMutationSelectivity(
+        MutationStore mutationStore,
+        char[] possibleBases,
+        char[] reference,
+        int position,
+        Supplier<boolean[]> acceptedBases
+    ) {
+        if (reference == null || position <= 0 || position > reference.length) {
+            return DEFAULT_SELECTIVITY;
+        }
+        char referenceBase = reference[position - 1];
+        boolean[] accepted = acceptedBases.get();
+        double size = database.size();
+        short pos = (short) position;
+        int numberMutated = 0;
+        double numberAccepted = 0;
+        for (char base : possibleBases) {
+            if (base == referenceBase) {
+                continue;
+            }
+            int count = mutationStore.getNumberSequencesWithMutation(pos, base);
+            numberMutated += count;
+            if (accepted[base & 0xFF]) {
+                numberAccepted += count;
+            }
+        }
+        if (accepted[referenceBase & 0xFF]) {
+            numberAccepted += Math.max(0, size - numberMutated);
+        }
+        return Math.min(1, numberAccepted / size);
+    }
+}
@@ -0,0 +1,147 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.AAMutation;
+import ch.ethz.lapis.api.entity.NucMutation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Simplifies a variant query without changing its result. The following rules are applied:
+ * <ul>
+ *     <li>Single nodes (i.e., parentheses) are removed.</li>
+ *     <li>!!A = A</li>
+ *     <li>Chains of AND and OR are flattened into one {@link NaryOp}: (A &amp; B) &amp; C = AND(A, B, C)</li>
+ *     <li>
+ *         Mutations at the same position that are combined with the same AND/OR are merged into a
+ *         {@link NucMutationSet} or {@link AAMutationSet}: 23063T | 23063A = 23063{T, A}
+ *     </li>
+ *     <li>
+ *         Pango lineage queries on the same column that are combined with the same AND/OR are merged into a
+ *         {@link PangoQuerySet}.
+ *     </li>
+ *     <li>Identical operands of an AND/OR are removed: A | A = A</li>
+ * </ul>
+ * The maybe operator must have been pushed down before. The given tree is not modified.
+ */
+public class QueryRewriter {
+
+    public static VariantQueryExpr rewrite(VariantQueryExpr expr) {
+        if (expr instanceof Maybe) {
+            throw new RuntimeException("Unexpected error: The maybe operator must be pushed down before rewriting.");
+        } else if (expr instanceof Negation x) {
+            VariantQueryExpr value = rewrite(x.getValue());
+            if (value instanceof Negation doubleNegation) {
+                return doubleNegation.getValue();
+            }
+            return new Negation(value);
+        } else if (expr instanceof Single x) {
+            return rewrite(x.getValue());
+        } else if (expr instanceof BiOp x) {
+            return rewriteAndOr(x, x.getOpType());
+        } else if (expr instanceof NaryOp x) {
+            return rewriteAndOr(x, x.getOpType());
+        } else if (expr instanceof NOf x) {
+            // The operands of an n-of may not be deduplicated because every occurrence counts.
+            return new NOf(x.isExactMode(), x.getN(), x.getSubExprs().stream()
+                .map(QueryRewriter::rewrite)
+                .collect(Collectors.toList()));
+        }
+        return expr;
+    }
+
+
+    private static VariantQueryExpr rewriteAndOr(VariantQueryExpr expr, BiOp.OpType opType) {
+        List<VariantQueryExpr> flattened = new ArrayList<>();
+        flatten(expr, opType, flattened);
+        List<VariantQueryExpr> operands = new ArrayList<>();
+        for (VariantQueryExpr operand : flattened) {
+            VariantQueryExpr rewritten = rewrite(operand);
+            // E.g., !!(A & B) within an AND
+            if (rewritten instanceof NaryOp x && x.getOpType() == opType) {
+                operands.addAll(x.getOperands());
+            } else {
+                operands.add(rewritten);
+            }
+        }
+        List<VariantQueryExpr> merged = mergeLeaves(operands, opType);
+        if (merged.size() == 1) {
+            return merged.get(0);
+        }
+        return new NaryOp(opType, merged);
+    }
+
+
+    private static void flatten(VariantQueryExpr expr, BiOp.OpType opType, List<VariantQueryExpr> operands) {
+        if (expr instanceof BiOp x && x.getOpType() == opType) {
+            flatten(x.getLeft(), opType, operands);
+            flatten(x.getRight(), opType, operands);
+        } else if (expr instanceof NaryOp x && x.getOpType() == opType) {
+            x.getOperands().forEach(operand -> flatten(operand, opType, operands));
+        } else if (expr instanceof Single x && !(expr instanceof Negation) && !(expr instanceof Maybe)) {
+            flatten(x.getValue(), opType, operands);
+        } else {
+            operands.add(expr);
+        }
+    }
+
+
+    /**
+     * Merges the mutations at the same position and the Pango lineage queries on the same column and removes identical
+     * operands. A group takes the place of its first member.
+     */
+    private static List<VariantQueryExpr> mergeLeaves(List<VariantQueryExpr> operands, BiOp.OpType opType) {
+        Map<Object, LinkedHashSet<VariantQueryExpr>> groups = new LinkedHashMap<>();
+        for (VariantQueryExpr operand : operands) {
+            Object groupKey = operand;
+            List<? extends VariantQueryExpr> members = List.of(operand);
+            if (operand instanceof NucMutation x) {
+                groupKey = "nuc:" + x.getPosition();
+            } else if (operand instanceof NucMutationSet x && x.getOpType() == opType) {
+                groupKey = "nuc:" + x.getMutations().get(0).getPosition();
+                members = x.getMutations();
+            } else if (operand instanceof AAMutation x) {
+                groupKey = "aa:" + x.getGene().toUpperCase() + ":" + x.getPosition();
+            } else if (operand instanceof AAMutationSet x && x.getOpType() == opType) {
+                AAMutation first = x.getMutations().get(0);
+                groupKey = "aa:" + first.getGene().toUpperCase() + ":" + first.getPosition();
+                members = x.getMutations();
+            } else if (operand instanceof PangoQuery x) {
+                groupKey = "pango:" + x.getColumnName();
+            } else if (operand instanceof PangoQuerySet x && x.getOpType() == opType) {
+                groupKey = "pango:" + x.getQueries().get(0).getColumnName();
+                members = x.getQueries();
+            }
+            groups.computeIfAbsent(groupKey, k -> new LinkedHashSet<>()).addAll(members);
+        }
+
+        List<VariantQueryExpr> result = new ArrayList<>();
+        for (LinkedHashSet<VariantQueryExpr> group : groups.values()) {
+            VariantQueryExpr first = group.iterator().next();
+            if (group.size() == 1) {
+                result.add(first);
+            } else if (first instanceof NucMutation) {
+                result.add(new NucMutationSet(opType, group.stream()
+                    .map(m -> (NucMutation) m)
+                    .collect(Collectors.toList())));
+            } else if (first instanceof AAMutation) {
+                result.add(new AAMutationSet(opType, group.stream()
+                    .map(m -> (AAMutation) m)
+                    .collect(Collectors.toList())));
+            } else if (first instanceof PangoQuery) {
+                result.add(new PangoQuerySet(opType, group.stream()
+                    .map(m -> (PangoQuery) m)
+                    .collect(Collectors.toList())));
+            } else {
+                // Only identical operands share the group key.
+                result.add(first);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,118 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded LRU cache for the results (bitmaps over all rows) of variant query expressions. It is keyed by the
+ * expression so that queries that share a sub-expression (e.g., the same Pango lineage or the same mutation) can reuse
+ * its result. A cache belongs to one Database instance and is thus automatically discarded when a new data version is
+ * loaded.
+ * <p>
+ * Only results that were expensive to compute are admitted. The results are stored as {@link CompressedRows}.
+ */
+public class ResultCache {
+
+    /**
+     * Results that were computed faster than this are not worth the memory.
+     */
+    private static final long MIN_COST_NANOS = 500_000;
+
+    private final long maxBytes;
+    private final int size;
+    private final LinkedHashMap<VariantQueryExpr, CompressedRows> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBytes The memory budget; the cache is disabled if it is 0
+     * @param size The number of rows of the database
+     */
+    public ResultCache(long maxBytes, int size) {
+        this.maxBytes = maxBytes;
+        this.size = size;
+    }
+
+
+    /**
+     * @return A new bitmap with the cached result or null if the result is not cached
+     */
+    public long[] get(VariantQueryExpr expr) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        CompressedRows entry;
+        synchronized (this) {
+            entry = entries.get(expr);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return entry.toBitmap(size);
+    }
+
+
+    /**
+     * Offers a result to the cache. It is only admitted if it was expensive to compute and fits into the budget.
+     *
+     * @param result A bitmap in which the bits of all rows are meaningful
+     * @param costNanos The time it took to compute the result
+     */
+    public void offer(VariantQueryExpr expr, long[] result, long costNanos) {
+        if (costNanos < MIN_COST_NANOS || maxBytes == 0) {
+            return;
+        }
+        CompressedRows entry = CompressedRows.of(result);
+        if (entry.bytes() > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            CompressedRows previous = entries.put(expr, entry);
+            if (previous != null) {
+                currentBytes -= previous.bytes();
+            }
+            currentBytes += entry.bytes();
+            Iterator<Map.Entry<VariantQueryExpr, CompressedRows>> iterator = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<VariantQueryExpr, CompressedRows> eldest = iterator.next();
+                currentBytes -= eldest.getValue().bytes();
+                iterator.remove();
+            }
+        }
+    }
+
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    public synchronized int getNumberEntries() {
+        return entries.size();
+    }
+
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        return "ResultCache{" +
+            "entries=" + entries.size() +
+            ", bytes=" + currentBytes + "/" + maxBytes +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+    }
+}
@@ -0,0 +1,144 @@
+package ch.ethz.lapis.api.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Runs work on the rows of the database in parallel. The rows are split into contiguous partitions that are aligned to
+ * the 64-bit words of the bitmaps (see {@link Bitmaps}), i.e., every partition covers the rows of the words
+ * [fromWord, toWord). Two partitions thus never write into the same word of a bitmap.
+ * <p>
+ * All requests share one fork/join pool with a thread per core. The number of partitions of one operation is limited
+ * by the parallelism (see {@link #setParallelism(int)}) so that a single request cannot occupy all threads. By default,
+ * it is half of the cores.
+ */
+public class RowPartitions {
+
+    /**
+     * Partitions are not smaller than 1024 words (65536 rows) so that the overhead of a task is negligible.
+     */
+    private static final int MIN_PARTITION_WORDS = 1024;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static volatile int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    @FunctionalInterface
+    public interface WordRangeConsumer {
+        void accept(int fromWord, int toWord);
+    }
+
+    @FunctionalInterface
+    public interface WordRangeFunction<T> {
+        T apply(int fromWord, int toWord);
+    }
+
+
+    /**
+     * @param parallelism The maximal number of partitions (and thus threads) that one operation uses. If it is not
+     *                    smaller than the number of cores, a single request can occupy all threads of the pool.
+     */
+    public static void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1.");
+        }
+        RowPartitions.parallelism = parallelism;
+    }
+
+
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+
+    /**
+     * Calls the consumer for every partition and waits until all partitions are processed.
+     *
+     * @param numberWords The length of the bitmaps
+     */
+    public static void forEach(int numberWords, WordRangeConsumer consumer) {
+        map(numberWords, (fromWord, toWord) -> {
+            consumer.accept(fromWord, toWord);
+            return null;
+        });
+    }
+
+
+    /**
+     * Calls the function for every partition and returns the partial results in the order of the partitions.
+     *
+     * @param numberWords The length of the bitmaps
+     */
+    public static <T> List<T> map(int numberWords, WordRangeFunction<T> function) {
+        int numberPartitions = Math.max(1, Math.min(parallelism, numberWords / MIN_PARTITION_WORDS));
+        if (numberPartitions == 1) {
+            return Collections.singletonList(function.apply(0, numberWords));
+        }
+        List<RecursiveTask<T>> tasks = new ArrayList<>();
+        for (int p = 0; p < numberPartitions; p++) {
+            int fromWord = (int) ((long) numberWords * p / numberPartitions);
+            int toWord = (int) ((long) numberWords * (p + 1) / numberPartitions);
+            tasks.add(new RecursiveTask<>() {
+                @Override
+                protected T compute() {
+                    return function.apply(fromWord, toWord);
+                }
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+
+    /**
+     * Calls the function for every item in the shared pool, e.g., to process the genes in parallel. Like the row
+     * partitions, the items are split into at most as many groups as the parallelism allows. The function may in turn
+     * partition the rows with {@link #map(int, WordRangeFunction)}.
+     *
+     * @return The results in the order of the items
+     */
+    public static <I, T> List<T> mapEach(List<I> items, Function<I, T> function) {
+        int numberGroups = Math.max(1, Math.min(parallelism, items.size()));
+        List<RecursiveTask<List<T>>> tasks = new ArrayList<>();
+        for (int g = 0; g < numberGroups; g++) {
+            List<I> group = items.subList(items.size() * g / numberGroups, items.size() * (g + 1) / numberGroups);
+            tasks.add(new RecursiveTask<>() {
+                @Override
+                protected List<T> compute() {
+                    List<T> results = new ArrayList<>(group.size());
+                    for (I item : group) {
+                        results.add(function.apply(item));
+                    }
+                    return results;
+                }
+            });
+        }
+        List<T> results = new ArrayList<>(items.size());
+        if (numberGroups == 1) {
+            results.addAll(tasks.get(0).invoke());
+        } else {
+            invokeAll(tasks).forEach(results::addAll);
+        }
+        return results;
+    }
+
+
+    private static <T> List<T> invokeAll(List<RecursiveTask<T>> tasks) {
+        if (ForkJoinTask.getPool() == pool) {
+            // Nested call from a task, e.g., a leaf of a query that is evaluated within a partition. Calls from other
+            // pools (e.g., the common pool of a parallel stream) are submitted to our pool like any other call.
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        for (RecursiveTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,263 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.util.MutationEncoding;
+import java.util.Map;
+
+/**
+ * Parses the mutation, unknown and insertion strings of y_main_sequence in a single pass over the characters and puts
+ * the values directly into the stores. In contrast to splitting the strings, it does not create any objects per
+ * mutation or unknown range; only the insertions are kept as strings by the {@link InsertionStore}.
+ * <p>
+ * The values are separated by commas and have the following formats:
+ * <ul>
+ *     <li>nucleotide mutations: "C241T" or "C241-"</li>
+ *     <li>amino acid mutations: "S:D614G"</li>
+ *     <li>nucleotide unknowns: "123" or "123-456"</li>
+ *     <li>amino acid unknowns: "S:123" or "S:123-456"</li>
+ *     <li>nucleotide insertions: "22204:GAGCCAGAA"</li>
+ *     <li>amino acid insertions: "S:214:EPE"</li>
+ * </ul>
+ * A scanner is not thread-safe; every loading thread uses its own scanner and stores.
+ */
+final class SequenceEntryScanner {
+
+    private final MutationStore nucMutationStore;
+    private final InsertionStore nucInsertionStore;
+    private final String[] geneNames;
+    private final MutationStore[] aaMutationStores;
+    private final InsertionStore[] aaInsertionStores;
+
+    /**
+     * The gene of the previous amino acid value; the values of a gene usually come one after another.
+     */
+    private int lastGene = 0;
+
+    SequenceEntryScanner(
+        MutationStore nucMutationStore,
+        Map<String, MutationStore> aaMutationStores,
+        InsertionStore nucInsertionStore,
+        Map<String, InsertionStore> aaInsertionStores
+    ) {
+        this.nucMutationStore = nucMutationStore;
+        this.nucInsertionStore = nucInsertionStore;
+        this.geneNames = aaMutationStores.keySet().toArray(new String[0]);
+        this.aaMutationStores = new MutationStore[geneNames.length];
+        this.aaInsertionStores = new InsertionStore[geneNames.length];
+        for (int gene = 0; gene < geneNames.length; gene++) {
+            this.aaMutationStores[gene] = aaMutationStores.get(geneNames[gene]);
+            this.aaInsertionStores[gene] = aaInsertionStores.get(geneNames[gene]);
+        }
+    }
+
+
+    /**
+     * Puts the entry of the id into the nucleotide mutation store.
+     */
+    void putNucEntry(int id, String substitutions, String deletions, String unknowns) {
+        nucMutationStore.startEntry(id);
+        addNucMutations(substitutions);
+        addNucMutations(deletions);
+        int length = unknowns.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(unknowns, from);
+            if (!isBlank(unknowns, from, to)) {
+                addUnknownRange(nucMutationStore, unknowns, from, to);
+            }
+        }
+        nucMutationStore.finishEntry();
+    }
+
+
+    /**
+     * Puts the entry of the id into the mutation stores of all genes.
+     */
+    void putAaEntry(int id, String mutations, String unknowns) {
+        for (MutationStore aaMutationStore : aaMutationStores) {
+            aaMutationStore.startEntry(id);
+        }
+        int length = mutations.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(mutations, from);
+            if (!isBlank(mutations, from, to)) {
+                int colon = indexOf(mutations, ':', from, to);
+                addMutation(aaMutationStores[findGene(mutations, from, colon)], mutations, colon + 1, to);
+            }
+        }
+        length = unknowns.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(unknowns, from);
+            if (!isBlank(unknowns, from, to)) {
+                int colon = indexOf(unknowns, ':', from, to);
+                addUnknownRange(aaMutationStores[findGene(unknowns, from, colon)], unknowns, colon + 1, to);
+            }
+        }
+        for (MutationStore aaMutationStore : aaMutationStores) {
+            aaMutationStore.finishEntry();
+        }
+    }
+
+
+    /**
+     * Puts an entry that is given in the binary encoding of {@link MutationEncoding} into the nucleotide mutation
+     * store.
+     */
+    void putEncodedNucEntry(int id, byte[] encoded) {
+        nucMutationStore.startEntry(id);
+        new MutationEncoding.Reader(encoded).readBlock(nucMutationStore);
+        nucMutationStore.finishEntry();
+    }
+
+
+    /**
+     * Puts an entry that is given in the binary encoding of {@link MutationEncoding} into the mutation stores of all
+     * genes.
+     */
+    void putEncodedAaEntry(int id, byte[] encoded) {
+        for (MutationStore aaMutationStore : aaMutationStores) {
+            aaMutationStore.startEntry(id);
+        }
+        MutationEncoding.Reader reader = new MutationEncoding.Reader(encoded);
+        int numberGenes = reader.readVarint();
+        for (int i = 0; i < numberGenes; i++) {
+            int gene = reader.readName(geneNames);
+            if (gene < 0) {
+                throw new RuntimeException("The encoded amino acid mutations contain an unknown gene.");
+            }
+            reader.readBlock(aaMutationStores[gene]);
+        }
+        for (MutationStore aaMutationStore : aaMutationStores) {
+            aaMutationStore.finishEntry();
+        }
+    }
+
+
+    /**
+     * @param sequenceId The insertion stores are indexed by the ids of the sequences.
+     */
+    void putNucInsertions(int sequenceId, String insertions) {
+        int length = insertions.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(insertions, from);
+            if (!isBlank(insertions, from, to)) {
+                nucInsertionStore.putInsertions(sequenceId,
+                    from == 0 && to == length ? insertions : insertions.substring(from, to));
+            }
+        }
+    }
+
+
+    /**
+     * @param sequenceId The insertion stores are indexed by the ids of the sequences.
+     */
+    void putAaInsertions(int sequenceId, String insertions) {
+        int length = insertions.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(insertions, from);
+            if (!isBlank(insertions, from, to)) {
+                int colon = indexOf(insertions, ':', from, to);
+                aaInsertionStores[findGene(insertions, from, colon)]
+                    .putInsertions(sequenceId, insertions.substring(colon + 1, to));
+            }
+        }
+    }
+
+
+    private void addNucMutations(String mutations) {
+        int length = mutations.length();
+        for (int from = 0, to; from < length; from = to + 1) {
+            to = endOfValue(mutations, from);
+            if (!isBlank(mutations, from, to) && !(to - from == 4 && mutations.startsWith("null", from))) {
+                addMutation(nucMutationStore, mutations, from, to);
+            }
+        }
+    }
+
+
+    /**
+     * Parses a mutation of the shape "A1234B" in [from, to).
+     */
+    private static void addMutation(MutationStore store, String s, int from, int to) {
+        if (to - from < 3) {
+            throw new RuntimeException("Invalid mutation: " + s.substring(from, to));
+        }
+        store.addMutation(parsePosition(s, from + 1, to - 1), s.charAt(to - 1));
+    }
+
+
+    /**
+     * Parses an unknown position "1234" or range "1234-1240" in [from, to).
+     */
+    private static void addUnknownRange(MutationStore store, String s, int from, int to) {
+        int dash = s.indexOf('-', from);
+        if (dash < 0 || dash >= to) {
+            short position = parsePosition(s, from, to);
+            store.addUnknownRange(position, position);
+        } else {
+            store.addUnknownRange(parsePosition(s, from, dash), parsePosition(s, dash + 1, to));
+        }
+    }
+
+
+    private static short parsePosition(String s, int from, int to) {
+        int position = 0;
+        if (from >= to) {
+            throw new RuntimeException("Missing position in: " + s);
+        }
+        for (int i = from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new RuntimeException("Invalid position " + s.substring(from, to) + " in: " + s);
+            }
+            position = position * 10 + digit;
+            if (position > Short.MAX_VALUE) {
+                throw new RuntimeException("The position " + s.substring(from, to) + " is too large.");
+            }
+        }
+        return (short) position;
+    }
+
+
+    /**
+     * @return The index of the gene with the name in [from, to)
+     */
+    private int findGene(String s, int from, int to) {
+        int length = to - from;
+        for (int i = 0; i < geneNames.length; i++) {
+            int gene = (lastGene + i) % geneNames.length;
+            String name = geneNames[gene];
+            if (name.length() == length && s.startsWith(name, from)) {
+                lastGene = gene;
+                return gene;
+            }
+        }
+        throw new RuntimeException("Unknown gene " + s.substring(from, to) + " in: " + s);
+    }
+
+
+    /**
+     * @return The index of the comma after the value that starts at from or the length of the string
+     */
+    private static int endOfValue(String s, int from) {
+        int comma = s.indexOf(',', from);
+        return comma >= 0 ? comma : s.length();
+    }
+
+
+    private static int indexOf(String s, char c, int from, int to) {
+        int index = s.indexOf(c, from);
+        if (index < 0 || index >= to) {
+            throw new RuntimeException("Missing '" + c + "' in: " + s.substring(from, to));
+        }
+        return index;
+    }
+
+
+    private static boolean isBlank(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
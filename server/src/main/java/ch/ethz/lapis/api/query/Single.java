@@ -1,20 +1,48 @@
 package ch.ethz.lapis.api.query;
 
+import java.util.Objects;
+
 public class Single implements VariantQueryExpr {
-    private VariantQueryExpr value;
+    private final VariantQueryExpr value;
 
-    @Override
-    public void putValue(VariantQueryExpr value) {
+    public Single(VariantQueryExpr value) {
         this.value = value;
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
+    public long[] evaluate(Database database) {
         return value.evaluate(database);
     }
 
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        return value.evaluate(database, candidates);
+    }
+
     public VariantQueryExpr getValue() {
         return value;
     }
 
+    /**
+     * Single, Negation and Maybe are only equal to an instance of the same class.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Single that = (Single) o;
+        return Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(value);
+    }
+
+    @Override
+    public String toString() {
+        return "Single{" +
+            "value=" + value +
+            '}';
+    }
 }
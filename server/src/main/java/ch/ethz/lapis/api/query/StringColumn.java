@@ -0,0 +1,286 @@
+package ch.ethz.lapis.api.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A dictionary-encoded string column: every distinct value is stored once in the dictionary and a row only holds the
+ * code of its value. The code 0 is reserved for null.
+ * <p>
+ * Filters are expected to be resolved against the (small) dictionary first, see {@link #findCodes(Predicate)}, so
+ * that the scan over the rows only has to compare integers.
+ */
+public class StringColumn {
+
+    public static final int NULL_CODE = 0;
+
+    /**
+     * The maximal number of dictionary entries (including null) for which the codes can be stored as short[].
+     * The shorts are read as unsigned values.
+     */
+    private static final int MAX_SHORT_DICTIONARY_SIZE = 1 << 16;
+
+    private final String[] dictionary;
+
+    /**
+     * The number of rows with the code; indexed by the code
+     */
+    private final int[] codeCounts;
+
+    /**
+     * Exactly one of shortCodes and intCodes is set.
+     */
+    private final short[] shortCodes;
+    private final int[] intCodes;
+
+    private StringColumn(String[] dictionary, int[] codeCounts, short[] shortCodes, int[] intCodes) {
+        this.dictionary = dictionary;
+        this.codeCounts = codeCounts;
+        this.shortCodes = shortCodes;
+        this.intCodes = intCodes;
+    }
+
+
+    public int size() {
+        return shortCodes != null ? shortCodes.length : intCodes.length;
+    }
+
+
+    public int getCode(int row) {
+        return shortCodes != null ? shortCodes[row] & 0xFFFF : intCodes[row];
+    }
+
+
+    public String get(int row) {
+        return dictionary[getCode(row)];
+    }
+
+
+    public String decode(int code) {
+        return dictionary[code];
+    }
+
+
+    /**
+     * @return The number of dictionary entries including the entry for null
+     */
+    public int getDictionarySize() {
+        return dictionary.length;
+    }
+
+
+    /**
+     * Evaluates the predicate once for every distinct (non-null) value.
+     *
+     * @return An array indexed by the code that is true if the corresponding value fulfills the predicate. Null never
+     * matches.
+     */
+    public boolean[] findCodes(Predicate<String> predicate) {
+        boolean[] accepted = new boolean[dictionary.length];
+        for (int code = 1; code < dictionary.length; code++) {
+            accepted[code] = predicate.test(dictionary[code]);
+        }
+        return accepted;
+    }
+
+
+    /**
+     * @return The number of rows whose code is accepted
+     */
+    public int count(boolean[] acceptedCodes) {
+        int count = 0;
+        for (int code = 0; code < codeCounts.length; code++) {
+            if (acceptedCodes[code]) {
+                count += codeCounts[code];
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Clears the bit of every row in the bitmap whose code is not accepted.
+     */
+    public void filter(long[] matched, boolean[] acceptedCodes) {
+        RowPartitions.forEach(matched.length, (fromWord, toWord) -> {
+            for (int w = fromWord; w < toWord; w++) {
+                if (matched[w] != 0) {
+                    matched[w] &= matchWord(w, acceptedCodes);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @return A bitmap in which the bit of every row whose code is accepted is set
+     */
+    public long[] match(boolean[] acceptedCodes) {
+        long[] result = Bitmaps.allocate(size());
+        RowPartitions.forEach(result.length, (fromWord, toWord) -> {
+            for (int w = fromWord; w < toWord; w++) {
+                result[w] = matchWord(w, acceptedCodes);
+            }
+        });
+        return result;
+    }
+
+
+    void writeTo(DatabaseSnapshot.Writer writer) throws IOException {
+        writer.writeInt(dictionary.length);
+        for (String value : dictionary) {
+            writer.writeString(value);
+        }
+        writer.writeInts(codeCounts, codeCounts.length);
+        writer.writeInt(size());
+        // Whether the codes are stored as shorts follows from the size of the dictionary.
+        if (shortCodes != null) {
+            writer.writeShorts(shortCodes, shortCodes.length);
+        } else {
+            writer.writeInts(intCodes, intCodes.length);
+        }
+    }
+
+
+    static StringColumn readFrom(DatabaseSnapshot.Reader reader) throws IOException {
+        String[] dictionary = new String[reader.readInt()];
+        for (int code = 0; code < dictionary.length; code++) {
+            dictionary[code] = reader.readString();
+        }
+        int[] codeCounts = reader.readInts(dictionary.length);
+        int size = reader.readInt();
+        if (dictionary.length > MAX_SHORT_DICTIONARY_SIZE) {
+            return new StringColumn(dictionary, codeCounts, null, reader.readInts(size));
+        }
+        return new StringColumn(dictionary, codeCounts, reader.readShorts(size), null);
+    }
+
+
+    private long matchWord(int w, boolean[] acceptedCodes) {
+        int start = w << 6;
+        int end = Math.min(start + 64, size());
+        long word = 0;
+        if (shortCodes != null) {
+            for (int i = start; i < end; i++) {
+                if (acceptedCodes[shortCodes[i] & 0xFFFF]) {
+                    word |= 1L << i;
+                }
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                if (acceptedCodes[intCodes[i]]) {
+                    word |= 1L << i;
+                }
+            }
+        }
+        return word;
+    }
+
+
+    public static class Builder {
+
+        private final Map<String, Integer> valueToCode = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private final int[] codes;
+
+        public Builder(int size) {
+            this.codes = new int[size];
+            dictionary.add(null);
+        }
+
+        /**
+         * Creates a builder that contains the first size rows of the column; rows after the end of the column are
+         * null. The values of the column are kept; the builder does not modify the column.
+         */
+        public static Builder of(StringColumn column, int size) {
+            Builder builder = new Builder(size);
+            for (int code = 1; code < column.dictionary.length; code++) {
+                builder.valueToCode.put(column.dictionary[code], code);
+                builder.dictionary.add(column.dictionary[code]);
+            }
+            for (int row = 0; row < Math.min(size, column.size()); row++) {
+                builder.codes[row] = column.getCode(row);
+            }
+            return builder;
+        }
+
+        public void set(int row, String value) {
+            if (value == null) {
+                codes[row] = NULL_CODE;
+                return;
+            }
+            Integer code = valueToCode.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                valueToCode.put(value, code);
+                dictionary.add(value);
+            }
+            codes[row] = code;
+        }
+
+        /**
+         * Copies the values of the builder of a partition of the rows. The partitions have to be copied in the order
+         * of the rows so that the codes are assigned in the same order as if the values were set row by row.
+         */
+        public void setAll(int fromRow, Builder partition) {
+            int[] codeMapping = new int[partition.dictionary.size()];
+            for (int code = 1; code < codeMapping.length; code++) {
+                codeMapping[code] = valueToCode.computeIfAbsent(partition.dictionary.get(code), value -> {
+                    dictionary.add(value);
+                    return dictionary.size() - 1;
+                });
+            }
+            for (int i = 0; i < partition.codes.length; i++) {
+                codes[fromRow + i] = codeMapping[partition.codes[i]];
+            }
+        }
+
+        public StringColumn build() {
+            String[] dictionaryArr = dictionary.toArray(new String[0]);
+            int[] codeCounts = new int[dictionaryArr.length];
+            for (int code : codes) {
+                codeCounts[code]++;
+            }
+            // Values that are no longer used (possible for builders created by of()) are removed from the dictionary.
+            int numberUsed = 1;
+            for (int code = 1; code < codeCounts.length; code++) {
+                if (codeCounts[code] != 0) {
+                    numberUsed++;
+                }
+            }
+            int[] rowCodes = codes;
+            if (numberUsed < dictionaryArr.length) {
+                int[] codeMapping = new int[dictionaryArr.length];
+                String[] usedValues = new String[numberUsed];
+                int[] usedCounts = new int[numberUsed];
+                usedCounts[NULL_CODE] = codeCounts[NULL_CODE];
+                for (int code = 1, newCode = 1; code < codeCounts.length; code++) {
+                    if (codeCounts[code] != 0) {
+                        codeMapping[code] = newCode;
+                        usedValues[newCode] = dictionaryArr[code];
+                        usedCounts[newCode] = codeCounts[code];
+                        newCode++;
+                    }
+                }
+                dictionaryArr = usedValues;
+                codeCounts = usedCounts;
+                rowCodes = new int[codes.length];
+                for (int i = 0; i < codes.length; i++) {
+                    rowCodes[i] = codeMapping[codes[i]];
+                }
+            }
+            if (dictionaryArr.length > MAX_SHORT_DICTIONARY_SIZE) {
+                return new StringColumn(dictionaryArr, codeCounts, null, rowCodes);
+            }
+            short[] shortCodes = new short[rowCodes.length];
+            for (int i = 0; i < rowCodes.length; i++) {
+                shortCodes[i] = (short) rowCodes[i];
+            }
+            return new StringColumn(dictionaryArr, codeCounts, shortCodes, null);
+        }
+    }
+}
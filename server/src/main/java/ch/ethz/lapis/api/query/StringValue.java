@@ -13,18 +13,36 @@ public class StringValue implements QueryExpr {
     }
 
     @Override
-    public boolean[] evaluate(Database database) {
-        String[] data = database.getStringColumn(columnName);
-        boolean[] result = new boolean[data.length];
-        if (caseSensitive) {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = value.equals(data[i]);
-            }
-        } else {
-            for (int i = 0; i < result.length; i++) {
-                result[i] = value.equalsIgnoreCase(data[i]);
-            }
-        }
+    public long[] evaluate(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        return data.match(findAcceptedCodes(data));
+    }
+
+    @Override
+    public long[] evaluate(Database database, long[] candidates) {
+        StringColumn data = database.getStringColumn(columnName);
+        long[] result = candidates.clone();
+        data.filter(result, findAcceptedCodes(data));
         return result;
     }
+
+    /**
+     * @return The number of rows that fulfill the expression
+     */
+    int count(Database database) {
+        StringColumn data = database.getStringColumn(columnName);
+        return data.count(findAcceptedCodes(data));
+    }
+
+    @Override
+    public String toString() {
+        return "StringValue{" +
+            "value='" + value + '\'' +
+            ", columnName='" + columnName + '\'' +
+            '}';
+    }
+
+    private boolean[] findAcceptedCodes(StringColumn data) {
+        return caseSensitive ? data.findCodes(value::equals) : data.findCodes(value::equalsIgnoreCase);
+    }
 }
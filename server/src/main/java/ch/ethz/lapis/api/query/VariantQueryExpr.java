@@ -1,11 +1,8 @@
 package ch.ethz.lapis.api.query;
 
-import ch.ethz.lapis.api.exception.MalformedVariantQueryException;
-
+/**
+ * A node of a parsed variant query. The nodes are immutable so that a parsed query can be cached and evaluated by
+ * several requests at the same time.
+ */
 public interface VariantQueryExpr extends QueryExpr {
-
-    default void putValue(VariantQueryExpr value) {
-        throw new MalformedVariantQueryException();
-    };
-
 }
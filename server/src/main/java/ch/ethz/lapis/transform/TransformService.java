@@ -4,6 +4,7 @@ import ch.ethz.lapis.LapisConfig;
 import ch.ethz.lapis.core.DatabaseReaderQueueBuilder;
 import ch.ethz.lapis.core.ExhaustibleBlockingQueue;
 import ch.ethz.lapis.core.ExhaustibleLinkedBlockingQueue;
+import ch.ethz.lapis.util.MutationEncoding;
 import ch.ethz.lapis.util.ReferenceGenomeData;
 import ch.ethz.lapis.util.SeqCompressor;
 import ch.ethz.lapis.util.Utils;
@@ -30,6 +31,11 @@ public class TransformService {
     private final SeqCompressor aaSeqCompressor = new ZstdSeqCompressor(ZstdSeqCompressor.DICT.AA_REFERENCE);
     private static final SeqCompressor columnarCompressor = new ZstdSeqCompressor(ZstdSeqCompressor.DICT.NONE);
 
+    /**
+     * The number of data versions whose changes are kept in y_main_change_log
+     */
+    private static final int NUMBER_CHANGE_LOG_VERSIONS = 7;
+
     public TransformService(ComboPooledDataSource databasePool, int maxNumberWorkers) {
         this.databasePool = databasePool;
         this.maxNumberWorkers = maxNumberWorkers;
@@ -74,6 +80,9 @@ public class TransformService {
                   g.aa_seqs_compressed is not null;
             """);
         }
+        // Fill the columns with the binary encoded mutations of y_main_sequence_staging
+        System.out.println(LocalDateTime.now() + " encodeMutations()");
+        encodeMutations();
         // Fill the table y_main_sequence_columnar_staging
         System.out.println(LocalDateTime.now() + " transformSeqsToColumnar()");
         transformSeqsToColumnar();
@@ -100,7 +109,7 @@ public class TransformService {
                       nextclade_alignment_score, nextclade_alignment_start, nextclade_alignment_end, nextclade_coverage
                     )
                     select
-                      row_number() over () - 1 as id,
+                      -row_number() over () as id, -- Replaced by assignStableIds()
                       'nextstrain/genbank' as source,
                       strain as source_primary_key,
                       genbank_accession,
@@ -182,6 +191,9 @@ public class TransformService {
             conn.setAutoCommit(false);
             try (Statement statement = conn.createStatement()) {
                 statement.execute(sql1);
+            }
+            assignStableIds(conn);
+            try (Statement statement = conn.createStatement()) {
                 statement.execute(sql2);
             }
             conn.commit();
@@ -207,7 +219,7 @@ public class TransformService {
                   nextclade_alignment_score, nextclade_alignment_start, nextclade_alignment_end, nextclade_coverage
                 )
                 select
-                  row_number() over () - 1 as id,
+                  -row_number() over () as id, -- Replaced by assignStableIds()
                   'gisaid' as source,
                   gisaid_epi_isl as source_primary_key,
                   null,
@@ -288,6 +300,9 @@ public class TransformService {
             conn.setAutoCommit(false);
             try (Statement statement = conn.createStatement()) {
                 statement.execute(sql1);
+            }
+            assignStableIds(conn);
+            try (Statement statement = conn.createStatement()) {
                 statement.execute(sql2);
             }
             conn.commit();
@@ -296,6 +311,76 @@ public class TransformService {
     }
 
 
+    /**
+     * Replaces the temporary (negative) ids of y_main_metadata_staging so that the sequences that are already in
+     * y_main_metadata keep their id. The ids stay dense, i.e., they are 0, ..., n - 1 for n sequences: the sequences
+     * that are new (or whose old id is not smaller than n) get the free ids in ascending order. Together with the
+     * change log that is written by switchInStagingTables(), this allows the API to apply the changes to the data of
+     * the previous version instead of loading everything.
+     * <p>
+     * It has to be called within the transaction of the pull after y_main_metadata_staging was filled and before
+     * y_main_sequence_staging is filled.
+     */
+    private void assignStableIds(Connection conn) throws SQLException {
+        // If several staging rows have the same source and primary key, only the first one keeps the old id.
+        String sql1 = """
+            create temporary table y_id_mapping on commit drop as
+            select
+              staging_id,
+              case when row_number() over (partition by old_id order by staging_id desc) = 1 then old_id end as old_id,
+              null::integer as new_id
+            from (
+              select s.id as staging_id, min(m.id) as old_id
+              from
+                y_main_metadata_staging s
+                left join y_main_metadata m
+                  on m.source = s.source and m.source_primary_key = s.source_primary_key
+              group by s.id
+            ) x;
+            """;
+        String sql2 = """
+            update y_id_mapping
+            set new_id = old_id
+            where old_id < (select count(*) from y_id_mapping);
+            """;
+        String sql3 = """
+            with
+              free_ids as (
+                select id, row_number() over (order by id) as rank
+                from (
+                  select generate_series(0, (select count(*) from y_id_mapping)::integer - 1) as id
+                  except
+                  select new_id from y_id_mapping where new_id is not null
+                ) f
+              ),
+              moved as (
+                select staging_id, row_number() over (order by staging_id desc) as rank
+                from y_id_mapping
+                where new_id is null
+              )
+            update y_id_mapping mp
+            set new_id = f.id
+            from
+              moved mv
+              join free_ids f on f.rank = mv.rank
+            where mp.staging_id = mv.staging_id;
+            """;
+        // The temporary ids are negative, so the new ids cannot collide with them.
+        String sql4 = """
+            update y_main_metadata_staging s
+            set id = mp.new_id
+            from y_id_mapping mp
+            where s.id = mp.staging_id;
+            """;
+        try (Statement statement = conn.createStatement()) {
+            statement.execute(sql1);
+            statement.execute(sql2);
+            statement.execute(sql3);
+            statement.execute(sql4);
+        }
+    }
+
+
     /**
      *
      * @param fetchAASeqsSql A SQL query string that gives a result set with two columns: "id" and "aa_seqs_compressed"
@@ -384,6 +469,104 @@ public class TransformService {
     }
 
 
+    private record MutationTexts(
+        int id,
+        String nucSubstitutions,
+        String nucDeletions,
+        String nucUnknowns,
+        String aaMutations,
+        String aaUnknowns
+    ) {
+    }
+
+
+    /**
+     * Fills the columns nuc_mutations_encoded and aa_mutations_encoded of y_main_sequence_staging with the binary
+     * encoding (see {@link MutationEncoding}) of the text columns of the mutations and unknowns. The API reads the
+     * encoded columns instead of parsing the text when it loads the data. Nothing is done if the columns do not exist
+     * in the database.
+     */
+    public void encodeMutations() throws SQLException, InterruptedException {
+        try (Connection conn = databasePool.getConnection()) {
+            try (ResultSet rs = conn.getMetaData().getColumns(null, null, "y_main_sequence_staging",
+                "nuc_mutations_encoded")) {
+                if (!rs.next()) {
+                    System.out.println(LocalDateTime.now() + " The columns for the encoded mutations do not exist.");
+                    return;
+                }
+            }
+        }
+
+        // Fetch the text columns
+        String fetchSql = """
+            select id, nuc_substitutions, nuc_deletions, nuc_unknowns, aa_mutations, aa_unknowns
+            from y_main_sequence_staging;
+            """;
+        Connection conn = databasePool.getConnection();
+        PreparedStatement statement = conn.prepareStatement(fetchSql);
+        var elementQueue = new DatabaseReaderQueueBuilder<>(
+            statement,
+            (rs) -> {
+                try {
+                    return new MutationTexts(rs.getInt("id"), rs.getString("nuc_substitutions"),
+                        rs.getString("nuc_deletions"), rs.getString("nuc_unknowns"), rs.getString("aa_mutations"),
+                        rs.getString("aa_unknowns"));
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            50000, 20000
+        ).build();
+        ExhaustibleBlockingQueue<List<MutationTexts>> batches =
+            ExhaustibleLinkedBlockingQueue.batchElements(elementQueue, 1000, 30);
+
+        // Encode and write to database
+        ExecutorService executor = Executors.newFixedThreadPool(maxNumberWorkers);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        for (int i = 0; i < maxNumberWorkers; i++) {
+            executor.submit(() -> {
+                try {
+                    while (!batches.isEmpty() || !batches.isExhausted()) {
+                        // Get a batch from the queue
+                        List<MutationTexts> batch = batches.poll(3, TimeUnit.SECONDS);
+                        if (batch == null) {
+                            continue;
+                        }
+                        String updateSql = """
+                            update y_main_sequence_staging
+                            set nuc_mutations_encoded = ?, aa_mutations_encoded = ?
+                            where id = ?;
+                            """;
+                        try (Connection conn2 = databasePool.getConnection()) {
+                            conn2.setAutoCommit(false);
+                            try (PreparedStatement statement2 = conn2.prepareStatement(updateSql)) {
+                                for (MutationTexts texts : batch) {
+                                    statement2.setBytes(1, MutationEncoding.encodeNuc(texts.nucSubstitutions(),
+                                        texts.nucDeletions(), texts.nucUnknowns()));
+                                    statement2.setBytes(2, MutationEncoding.encodeAa(texts.aaMutations(),
+                                        texts.aaUnknowns()));
+                                    statement2.setInt(3, texts.id());
+                                    statement2.addBatch();
+                                }
+                                Utils.executeClearCommitBatch(conn2, statement2);
+                            }
+                            conn2.setAutoCommit(true);
+                        }
+                    }
+                } catch (InterruptedException | SQLException e) {
+                    failed.set(true);
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.DAYS);
+        if (failed.get()) {
+            throw new RuntimeException("Execution failed.");
+        }
+    }
+
+
     public void transformSeqsToColumnar() throws SQLException {
         // Load all compressed and aligned sequences and their IDs
         String sql1 = """
@@ -616,27 +799,114 @@ public class TransformService {
 
 
     /**
-     * Switch the _staging tables with the active tables and update value in data_version
+     * Switch the _staging tables with the active tables and set the value in data_version. The changes compared to the
+     * active tables are written to the change log (see writeChangeLog()) in the same transaction.
+     *
+     * @param dataVersion The new data version; it is chosen by the caller so that the snapshot of the staging tables
+     *                    can be written under this version before the switch.
      */
-    public void switchInStagingTables() throws SQLException {
+    public void switchInStagingTables(long dataVersion) throws SQLException {
         String sql1 = "select y_switch_in_staging_tables()";
         String sql2 = """
                 insert into data_version (dataset, timestamp)
-                values ('merged', extract(epoch from now())::bigint)
+                values ('merged', ?)
                 on conflict (dataset) do update
                 set
-                  timestamp = extract(epoch from now())::bigint;
+                  timestamp = excluded.timestamp;
             """;
         try (Connection conn = databasePool.getConnection()) {
             conn.setAutoCommit(false);
+            writeChangeLog(conn, dataVersion);
             try (Statement statement = conn.createStatement()) {
                 statement.execute(sql1);
             }
-            try (Statement statement = conn.createStatement()) {
-                statement.execute(sql2);
+            try (PreparedStatement statement = conn.prepareStatement(sql2)) {
+                statement.setLong(1, dataVersion);
+                statement.execute();
             }
             conn.commit();
             conn.setAutoCommit(true);
         }
     }
+
+
+    /**
+     * Records which rows of the staging tables were appended, updated or deleted compared to the active tables. The
+     * ids are comparable because of assignStableIds(): the rows from the number of active rows on are appended and the
+     * active rows from the number of staging rows on are deleted. The data version is the one that is set by
+     * switchInStagingTables() in the same transaction. Only the changes of the newest versions are kept. Nothing is
+     * done if the change log tables do not exist in the database.
+     */
+    private void writeChangeLog(Connection conn, long dataVersion) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, "y_main_change_log", null)) {
+            if (!rs.next()) {
+                System.out.println(LocalDateTime.now() + " The change log tables do not exist.");
+                return;
+            }
+        }
+        String sql1 = """
+            insert into y_main_change_log (data_version, base_data_version, number_rows)
+            select
+              ?,
+              (select timestamp from data_version where dataset = 'merged'),
+              (select count(*) from y_main_metadata_staging);
+            """;
+        // Only the sequence columns that are loaded by the API are compared.
+        String sql2 = """
+            insert into y_main_change_log_entry (data_version, id, change)
+            select ?, c.id, c.change
+            from (
+              select s.id, 'appended' as change
+              from y_main_metadata_staging s
+              where s.id >= (select count(*) from y_main_metadata)
+              union all
+              select m.id, 'deleted' as change
+              from y_main_metadata m
+              where m.id >= (select count(*) from y_main_metadata_staging)
+              union all
+              select u.id, 'updated' as change
+              from (
+                select s.id
+                from
+                  y_main_metadata_staging s
+                  join y_main_metadata m on m.id = s.id
+                where row(s.*) is distinct from row(m.*)
+                union
+                select s.id
+                from
+                  y_main_sequence_staging s
+                  join y_main_sequence m on m.id = s.id
+                where
+                  (s.aa_mutations, s.aa_insertions, s.aa_unknowns, s.nuc_substitutions, s.nuc_deletions,
+                    s.nuc_insertions, s.nuc_unknowns)
+                  is distinct from
+                  (m.aa_mutations, m.aa_insertions, m.aa_unknowns, m.nuc_substitutions, m.nuc_deletions,
+                    m.nuc_insertions, m.nuc_unknowns)
+              ) u
+            ) c;
+            """;
+        String sql3 = """
+            delete from y_main_change_log
+            where data_version not in (
+              select data_version
+              from y_main_change_log
+              order by data_version desc
+              limit %d
+            );
+            """.formatted(NUMBER_CHANGE_LOG_VERSIONS);
+        String sql4 = """
+            delete from y_main_change_log_entry
+            where data_version not in (select data_version from y_main_change_log);
+            """;
+        for (String sql : List.of(sql1, sql2)) {
+            try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                statement.setLong(1, dataVersion);
+                statement.execute();
+            }
+        }
+        try (Statement statement = conn.createStatement()) {
+            statement.execute(sql3);
+            statement.execute(sql4);
+        }
+    }
 }
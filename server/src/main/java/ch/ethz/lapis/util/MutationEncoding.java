@@ -0,0 +1,259 @@
+package ch.ethz.lapis.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary encoding of the mutations and unknowns of a sequence that is stored in the columns nuc_mutations_encoded
+ * and aa_mutations_encoded of y_main_sequence. It is computed once by the transform from the text columns so that the
+ * API instances do not have to parse the text when they load the data, and it takes about half of the bytes.
+ * <p>
+ * Integers are unsigned LEB128 varints; the deltas are zigzag-encoded because the deletions follow the substitutions.
+ * A block consists of:
+ * <pre>
+ *   number of mutations
+ *   for every mutation: delta of the position to the previous mutation, the character (one ASCII byte)
+ *   number of unknown ranges
+ *   for every range: delta of the start to the end of the previous range, end - start
+ * </pre>
+ * A nucleotide value is a single block with the substitutions followed by the deletions. An amino acid value starts
+ * with the number of genes and contains for every gene the length and the ASCII bytes of the gene name followed by the
+ * block of the gene. The values keep the order of the text; the genes are in the order of their first occurrence.
+ */
+public final class MutationEncoding {
+
+    /**
+     * Receives the decoded values of a block.
+     */
+    public interface BlockConsumer {
+        void addMutation(short position, char mutationTo);
+
+        /**
+         * @param rangeEnd The end is inclusive.
+         */
+        void addUnknownRange(short rangeStart, short rangeEnd);
+    }
+
+    private MutationEncoding() {
+    }
+
+
+    /**
+     * @param substitutions E.g., "C241T,A23403G"; may be null
+     * @param deletions E.g., "C11288-,T11289-"; may be null
+     * @param unknowns E.g., "1-54,29837"; may be null
+     */
+    public static byte[] encodeNuc(String substitutions, String deletions, String unknowns) {
+        Block block = new Block();
+        addMutations(block, substitutions);
+        addMutations(block, deletions);
+        addUnknowns(block, unknowns);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        block.writeTo(out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * @param mutations E.g., "S:D614G,N:R203K"; may be null
+     * @param unknowns E.g., "S:1-3,N:7"; may be null
+     */
+    public static byte[] encodeAa(String mutations, String unknowns) {
+        Map<String, Block> blocks = new LinkedHashMap<>();
+        if (mutations != null) {
+            for (String mutWithGene : mutations.split(",")) {
+                if (mutWithGene.isBlank()) {
+                    continue;
+                }
+                String[] parts = mutWithGene.split(":");
+                addMutations(blocks.computeIfAbsent(parts[0], g -> new Block()), parts[1]);
+            }
+        }
+        if (unknowns != null) {
+            for (String unknownsWithGene : unknowns.split(",")) {
+                if (unknownsWithGene.isBlank()) {
+                    continue;
+                }
+                String[] parts = unknownsWithGene.split(":");
+                addUnknowns(blocks.computeIfAbsent(parts[0], g -> new Block()), parts[1]);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, blocks.size());
+        blocks.forEach((gene, block) -> {
+            byte[] name = gene.getBytes(StandardCharsets.US_ASCII);
+            writeVarint(out, name.length);
+            out.write(name, 0, name.length);
+            block.writeTo(out);
+        });
+        return out.toByteArray();
+    }
+
+
+    private static void addMutations(Block block, String mutations) {
+        if (mutations == null) {
+            return;
+        }
+        for (String mut : mutations.split(",")) {
+            if (mut.isBlank() || mut.equals("null")) {
+                continue;
+            }
+            char mutationTo = mut.charAt(mut.length() - 1);
+            if (mutationTo > 127) {
+                throw new RuntimeException("Unexpected character in the mutation " + mut);
+            }
+            block.mutationPositions.add(Integer.parseInt(mut.substring(1, mut.length() - 1)));
+            block.mutationsTo.append(mutationTo);
+        }
+    }
+
+
+    private static void addUnknowns(Block block, String unknowns) {
+        if (unknowns == null) {
+            return;
+        }
+        for (String s : unknowns.split(",")) {
+            if (s.isBlank()) {
+                continue;
+            }
+            int dash = s.indexOf('-');
+            int start = Integer.parseInt(dash < 0 ? s : s.substring(0, dash));
+            int end = dash < 0 ? start : Integer.parseInt(s.substring(dash + 1));
+            block.unknownRanges.add(new int[] { start, end });
+        }
+    }
+
+
+    private static class Block {
+        private final List<Integer> mutationPositions = new ArrayList<>();
+        private final StringBuilder mutationsTo = new StringBuilder();
+        private final List<int[]> unknownRanges = new ArrayList<>();
+
+        private void writeTo(ByteArrayOutputStream out) {
+            writeVarint(out, mutationPositions.size());
+            int previous = 0;
+            for (int i = 0; i < mutationPositions.size(); i++) {
+                int position = mutationPositions.get(i);
+                writeVarint(out, zigzag(position - previous));
+                out.write(mutationsTo.charAt(i));
+                previous = position;
+            }
+            writeVarint(out, unknownRanges.size());
+            previous = 0;
+            for (int[] range : unknownRanges) {
+                writeVarint(out, zigzag(range[0] - previous));
+                writeVarint(out, range[1] - range[0]);
+                previous = range[1];
+            }
+        }
+    }
+
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+
+    /**
+     * Reads an encoded value without creating objects.
+     */
+    public static final class Reader {
+
+        private final byte[] bytes;
+        private int offset = 0;
+
+        public Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+
+        public int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new RuntimeException("Invalid varint in the encoded mutations.");
+        }
+
+
+        /**
+         * Reads a gene name.
+         *
+         * @return The index of the name in the array or -1 if it is not in the array
+         */
+        public int readName(String[] names) {
+            int length = readVarint();
+            int start = offset;
+            offset += length;
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                if (name.length() == length && equalsAscii(name, start)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+
+        private boolean equalsAscii(String name, int start) {
+            for (int i = 0; i < name.length(); i++) {
+                if (bytes[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        public void readBlock(BlockConsumer consumer) {
+            int numberMutations = readVarint();
+            int position = 0;
+            for (int i = 0; i < numberMutations; i++) {
+                position += unzigzag(readVarint());
+                consumer.addMutation(toPosition(position), (char) bytes[offset++]);
+            }
+            int numberRanges = readVarint();
+            int end = 0;
+            for (int i = 0; i < numberRanges; i++) {
+                int start = end + unzigzag(readVarint());
+                end = start + readVarint();
+                consumer.addUnknownRange(toPosition(start), toPosition(end));
+            }
+        }
+
+
+        public boolean hasRemaining() {
+            return offset < bytes.length;
+        }
+
+
+        private static int unzigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+
+        private static short toPosition(int position) {
+            if (position < 0 || position > Short.MAX_VALUE) {
+                throw new RuntimeException("Invalid position in the encoded mutations: " + position);
+            }
+            return (short) position;
+        }
+    }
+}
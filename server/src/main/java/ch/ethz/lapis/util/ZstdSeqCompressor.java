@@ -49,6 +49,14 @@ public class ZstdSeqCompressor implements SeqCompressor {
 
     @Override
     public String decompress(byte[] compressed) {
+        byte[] decompressed = decompressBytes(compressed);
+        return new String(decompressed, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompresses without decoding the result to a String. For ASCII sequences, every byte is one character.
+     */
+    public byte[] decompressBytes(byte[] compressed) {
         int decompressedSize = (int) Zstd.decompressedSize(compressed);
         byte[] decompressedBuffer = new byte[decompressedSize];
         long decompressionReturnCode;
@@ -60,7 +68,10 @@ public class ZstdSeqCompressor implements SeqCompressor {
         if (Zstd.isError(decompressionReturnCode)) {
             throw new RuntimeException("Zstd decompression failed: error code " + decompressionReturnCode);
         }
-        return new String(decompressedBuffer, 0, (int) decompressionReturnCode, StandardCharsets.UTF_8);
+        if (decompressionReturnCode == decompressedSize) {
+            return decompressedBuffer;
+        }
+        return Arrays.copyOfRange(decompressedBuffer, 0, (int) decompressionReturnCode);
     }
 
     public enum DICT {
@@ -0,0 +1,197 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.AggregationField;
+import ch.ethz.lapis.api.entity.NucMutation;
+import ch.ethz.lapis.api.entity.req.SampleAggregatedRequest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static ch.ethz.lapis.api.query.Database.Columns.AGE;
+import static ch.ethz.lapis.api.query.Database.Columns.COUNTRY;
+import static ch.ethz.lapis.api.query.Database.Columns.DATE;
+import static ch.ethz.lapis.api.query.Database.Columns.DIVISION;
+import static ch.ethz.lapis.api.query.Database.Columns.NEXTSTRAIN_CLADE;
+import static ch.ethz.lapis.api.query.Database.Columns.PANGO_LINEAGE;
+import static ch.ethz.lapis.api.query.Database.Columns.REGION;
+
+public class AggregatedCubeTest {
+
+    private static final int NUMBER_ROWS = 500;
+
+    /**
+     * The dates of the rows are every second day starting at this date.
+     */
+    private static final LocalDate FIRST_DATE = LocalDate.of(2021, 1, 1);
+    private static final LocalDate LAST_DATE = FIRST_DATE.plusDays(2 * 29);
+
+    private static final Map<AggregationField, String> FIELD_COLUMNS = Map.of(
+        AggregationField.REGION, REGION,
+        AggregationField.COUNTRY, COUNTRY,
+        AggregationField.DIVISION, DIVISION,
+        AggregationField.PANGOLINEAGE, PANGO_LINEAGE,
+        AggregationField.NEXTSTRAINCLADE, NEXTSTRAIN_CLADE,
+        AggregationField.DATE, DATE
+    );
+
+    private static final Database database = createDatabase();
+    private static final AggregatedCube cube = database.getAggregatedCube();
+
+    /**
+     * The values of the rows repeat with different periods so that many combinations occur. Every column contains
+     * null values.
+     */
+    private static Database createDatabase() {
+        String[] regions = { "Europe", "Asia", null };
+        String[] countries = { "Switzerland", "Germany", "China", "Japan", null };
+        String[] divisions = { "Zurich", "Bern", "Bavaria", null };
+        String[] pangoLineages = { "B.1", "B.1.1", "B.1.1.7", "B.11", "A.1", "BA.1", null };
+        String[] nextstrainClades = { "20A", "20B", "21K (Omicron)", null };
+        StringColumn.Builder region = new StringColumn.Builder(NUMBER_ROWS);
+        StringColumn.Builder country = new StringColumn.Builder(NUMBER_ROWS);
+        StringColumn.Builder division = new StringColumn.Builder(NUMBER_ROWS);
+        StringColumn.Builder pangoLineage = new StringColumn.Builder(NUMBER_ROWS);
+        StringColumn.Builder nextstrainClade = new StringColumn.Builder(NUMBER_ROWS);
+        IntColumn date = new IntColumn(NUMBER_ROWS);
+        IntColumn age = new IntColumn(NUMBER_ROWS);
+        for (int i = 0; i < NUMBER_ROWS; i++) {
+            region.set(i, regions[i % regions.length]);
+            country.set(i, countries[i % countries.length]);
+            division.set(i, divisions[i % divisions.length]);
+            pangoLineage.set(i, pangoLineages[i % pangoLineages.length]);
+            nextstrainClade.set(i, nextstrainClades[i % nextstrainClades.length]);
+            date.set(i, i % 13 == 0 ? null : Database.dateToInt(FIRST_DATE.plusDays(2 * (i % 30))));
+            age.set(i, i % 90);
+        }
+        return Database.createInMemory(
+            NUMBER_ROWS,
+            Map.of(REGION, region.build(), COUNTRY, country.build(), DIVISION, division.build(),
+                PANGO_LINEAGE, pangoLineage.build(), NEXTSTRAIN_CLADE, nextstrainClade.build()),
+            Map.of(DATE, date, AGE, age),
+            Map.of(),
+            Map.of()
+        );
+    }
+
+    /**
+     * @return The counts of the query engine which scans the rows
+     */
+    private static Map<List<Object>, Integer> countRows(SampleAggregatedRequest request) {
+        QueryEngine queryEngine = new QueryEngine();
+        long[] matched = queryEngine.matchSampleFilter(database, request);
+        if (request.getFields().isEmpty()) {
+            return Map.of(List.of(), Bitmaps.cardinality(matched));
+        }
+        List<String> columnNames = request.getFields().stream().map(FIELD_COLUMNS::get).toList();
+        return queryEngine.countGroups(database, columnNames, matched);
+    }
+
+    private static void assertCountsEqual(SampleAggregatedRequest request) {
+        Assertions.assertTrue(AggregatedCube.supports(request));
+        Assertions.assertEquals(countRows(request), cube.count(request));
+    }
+
+    @Test
+    public void testCubeIsBuilt() {
+        Assertions.assertNotNull(cube);
+        Assertions.assertTrue(cube.getNumberCells() > 0);
+        Assertions.assertTrue(cube.getNumberCells() <= NUMBER_ROWS);
+    }
+
+    @Test
+    public void testEmptyRequestReturnsTotal() {
+        SampleAggregatedRequest request = new SampleAggregatedRequest();
+        Assertions.assertTrue(AggregatedCube.supports(request));
+        Assertions.assertEquals(Map.of(List.of(), NUMBER_ROWS), cube.count(request));
+    }
+
+    @Test
+    public void testGroupByEveryDimension() {
+        for (AggregationField field : FIELD_COLUMNS.keySet()) {
+            assertCountsEqual(new SampleAggregatedRequest().setFields(List.of(field)));
+        }
+        assertCountsEqual(new SampleAggregatedRequest().setFields(List.of(AggregationField.DATE,
+            AggregationField.COUNTRY, AggregationField.PANGOLINEAGE)));
+        assertCountsEqual(new SampleAggregatedRequest().setFields(List.copyOf(FIELD_COLUMNS.keySet())));
+    }
+
+    @Test
+    public void testNullValuesAreGrouped() {
+        Map<List<Object>, Integer> counts = cube.count(
+            new SampleAggregatedRequest().setFields(List.of(AggregationField.REGION)));
+        Assertions.assertTrue(counts.containsKey(Collections.singletonList(null)));
+    }
+
+    @Test
+    public void testDateRanges() {
+        List<LocalDate[]> ranges = List.of(
+            new LocalDate[] { FIRST_DATE, null },
+            new LocalDate[] { FIRST_DATE.minusDays(1), null },
+            new LocalDate[] { FIRST_DATE.plusDays(1), null },
+            new LocalDate[] { null, LAST_DATE },
+            new LocalDate[] { null, LAST_DATE.minusDays(1) },
+            new LocalDate[] { null, LAST_DATE.plusDays(1) },
+            new LocalDate[] { FIRST_DATE, LAST_DATE },
+            new LocalDate[] { FIRST_DATE.plusDays(2), FIRST_DATE.plusDays(2) },
+            // Days without sequences
+            new LocalDate[] { FIRST_DATE.plusDays(3), FIRST_DATE.plusDays(3) },
+            new LocalDate[] { FIRST_DATE.plusDays(3), FIRST_DATE.plusDays(9) },
+            new LocalDate[] { LAST_DATE.plusDays(1), null },
+            new LocalDate[] { null, FIRST_DATE.minusDays(1) },
+            new LocalDate[] { LAST_DATE, FIRST_DATE }
+        );
+        for (LocalDate[] range : ranges) {
+            assertCountsEqual(new SampleAggregatedRequest().setDateFrom(range[0]).setDateTo(range[1]));
+            assertCountsEqual(new SampleAggregatedRequest().setDateFrom(range[0]).setDateTo(range[1])
+                .setFields(List.of(AggregationField.DATE)));
+            assertCountsEqual(new SampleAggregatedRequest().setDateFrom(range[0]).setDateTo(range[1])
+                .setFields(List.of(AggregationField.COUNTRY)));
+        }
+    }
+
+    @Test
+    public void testStringFilters() {
+        List<SampleAggregatedRequest> requests = List.of(
+            new SampleAggregatedRequest().setRegion("Europe"),
+            new SampleAggregatedRequest().setRegion("europe"),
+            new SampleAggregatedRequest().setCountry("Switzerland").setDivision("Zurich"),
+            new SampleAggregatedRequest().setCountry("Atlantis"),
+            new SampleAggregatedRequest().setNextstrainClade("21k (omicron)"),
+            new SampleAggregatedRequest().setRegion("Asia").setDateFrom(FIRST_DATE.plusDays(10))
+        );
+        for (SampleAggregatedRequest request : requests) {
+            assertCountsEqual(request);
+            assertCountsEqual(request.setFields(List.of(AggregationField.DIVISION, AggregationField.DATE)));
+        }
+    }
+
+    @Test
+    public void testPangoLineageFilters() {
+        for (String pangoLineage : List.of("B.1", "B.1*", "B.1.*", "B.1.1*", "B.11", "BA.1", "A*", "C.1", "C.1*")) {
+            assertCountsEqual(new SampleAggregatedRequest().setPangoLineage(pangoLineage));
+            assertCountsEqual(new SampleAggregatedRequest().setPangoLineage(pangoLineage)
+                .setFields(List.of(AggregationField.PANGOLINEAGE)));
+        }
+        // B.1* includes the sub-lineages but not B.11.
+        Map<List<Object>, Integer> counts = cube.count(new SampleAggregatedRequest().setPangoLineage("B.1*")
+            .setFields(List.of(AggregationField.PANGOLINEAGE)));
+        Assertions.assertEquals(3, counts.size());
+        Assertions.assertFalse(counts.containsKey(List.of("B.11")));
+    }
+
+    @Test
+    public void testUnsupportedRequests() {
+        Assertions.assertFalse(AggregatedCube.supports(new SampleAggregatedRequest().setAgeFrom(30)));
+        Assertions.assertFalse(AggregatedCube.supports(new SampleAggregatedRequest()
+            .setFields(List.of(AggregationField.AGE))));
+        Assertions.assertFalse(AggregatedCube.supports(new SampleAggregatedRequest()
+            .setNucMutations(List.of(new NucMutation(501, 'T')))));
+        Assertions.assertTrue(AggregatedCube.supports(new SampleAggregatedRequest()
+            .setNucMutations(List.of())));
+    }
+
+}
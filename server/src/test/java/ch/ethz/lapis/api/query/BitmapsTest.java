@@ -0,0 +1,76 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class BitmapsTest {
+
+    @Test
+    public void testOperations() {
+        int size = 70;
+        long[] a = Bitmaps.allocate(size);
+        Bitmaps.set(a, 1);
+        Bitmaps.set(a, 64);
+        Bitmaps.set(a, 69);
+        long[] b = Bitmaps.allocate(size);
+        Bitmaps.set(b, 64);
+        Bitmaps.set(b, 2);
+
+        long[] and = a.clone();
+        Bitmaps.and(and, b);
+        Assertions.assertEquals(List.of(64), Bitmaps.toList(and));
+
+        long[] or = a.clone();
+        Bitmaps.or(or, b);
+        Assertions.assertEquals(List.of(1, 2, 64, 69), Bitmaps.toList(or));
+
+        long[] andNot = a.clone();
+        Bitmaps.andNot(andNot, b);
+        Assertions.assertEquals(List.of(1, 69), Bitmaps.toList(andNot));
+
+        // The bits after the last row must stay unset.
+        long[] not = a.clone();
+        Bitmaps.not(not, size);
+        Assertions.assertEquals(size - 3, Bitmaps.cardinality(not));
+        Assertions.assertFalse(Bitmaps.get(not, 69));
+        Assertions.assertTrue(Bitmaps.get(not, 68));
+        Assertions.assertEquals(size, Bitmaps.cardinality(Bitmaps.full(size)));
+    }
+
+    @Test
+    public void testClearAndCopyOf() {
+        long[] bitmap = Bitmaps.full(130);
+        Bitmaps.clear(bitmap, 0);
+        Bitmaps.clear(bitmap, 64);
+        Assertions.assertEquals(128, Bitmaps.cardinality(bitmap));
+
+        // Shorter: the bits after the last row are unset.
+        long[] shorter = Bitmaps.copyOf(bitmap, 70);
+        Assertions.assertEquals(2, shorter.length);
+        Assertions.assertEquals(68, Bitmaps.cardinality(shorter));
+        Assertions.assertFalse(Bitmaps.get(shorter, 64));
+        Assertions.assertTrue(Bitmaps.get(shorter, 69));
+
+        // Longer: the added rows are unset.
+        long[] longer = Bitmaps.copyOf(bitmap, 200);
+        Assertions.assertEquals(4, longer.length);
+        Assertions.assertEquals(128, Bitmaps.cardinality(longer));
+        Assertions.assertFalse(Bitmaps.get(longer, 130));
+
+        // The copy is independent of the original.
+        Bitmaps.clear(longer, 1);
+        Assertions.assertTrue(Bitmaps.get(bitmap, 1));
+    }
+
+    @Test
+    public void testMatchBytes() {
+        byte[] values = "ACGTNA".getBytes();
+        boolean[] accepted = new boolean[256];
+        accepted['A'] = true;
+        Assertions.assertEquals(List.of(0, 5), Bitmaps.toList(Bitmaps.match(values, accepted)));
+        Assertions.assertEquals(List.of(5), Bitmaps.toList(Bitmaps.match(values, accepted, new long[] { 0b111110 })));
+    }
+
+}
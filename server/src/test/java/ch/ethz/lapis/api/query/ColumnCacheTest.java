@@ -0,0 +1,40 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ColumnCacheTest {
+
+    @Test
+    public void testLruEvictionBySize() {
+        ColumnCache cache = new ColumnCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        cache.getOrLoad("a", () -> { loads.incrementAndGet(); return new byte[4]; });
+        cache.getOrLoad("b", () -> { loads.incrementAndGet(); return new byte[4]; });
+        // Access "a" so that "b" becomes the least recently used entry
+        cache.getOrLoad("a", () -> { loads.incrementAndGet(); return new byte[4]; });
+        cache.getOrLoad("c", () -> { loads.incrementAndGet(); return new byte[4]; });
+
+        Assertions.assertEquals(3, loads.get());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(3, cache.getMisses());
+        Assertions.assertEquals(2, cache.getNumberEntries());
+        Assertions.assertEquals(8, cache.getCurrentBytes());
+
+        cache.getOrLoad("a", () -> { loads.incrementAndGet(); return new byte[4]; });
+        cache.getOrLoad("b", () -> { loads.incrementAndGet(); return new byte[4]; });
+        Assertions.assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        ColumnCache cache = new ColumnCache(0);
+        cache.getOrLoad("a", () -> new byte[1]);
+        Assertions.assertNotNull(cache.getOrLoad("a", () -> new byte[1]));
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(0, cache.getNumberEntries());
+    }
+
+}
@@ -0,0 +1,112 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+public class DatabaseSnapshotTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path file = DatabaseSnapshot.getFile(directory, 42);
+
+        StringColumn.Builder builder = new StringColumn.Builder(3);
+        builder.set(0, "Switzerland");
+        builder.set(2, "Z\u00fcrich");
+        StringColumn stringColumn = builder.build();
+        IntColumn intColumn = new IntColumn(3);
+        intColumn.set(1, 18000);
+        MutationStore mutationStore = new MutationStore(3);
+        mutationStore.putEntry(0, List.of(new MutationStore.Mutation((short) 5, 'A')), List.of("1-3"));
+        mutationStore.putEntry(1, List.of(new MutationStore.Mutation((short) 5, 'C')), List.of("2", "5-9"));
+        mutationStore.trimToSize();
+        try (DatabaseSnapshot.Writer writer = new DatabaseSnapshot.Writer(file, 42)) {
+            stringColumn.writeTo(writer);
+            intColumn.writeTo(writer);
+            mutationStore.writeTo(writer);
+            writer.commit();
+        }
+
+        try (DatabaseSnapshot.Reader reader = new DatabaseSnapshot.Reader(file)) {
+            Assertions.assertEquals(42, reader.getDataVersion());
+            StringColumn readStringColumn = StringColumn.readFrom(reader);
+            IntColumn readIntColumn = IntColumn.readFrom(reader);
+            MutationStore readMutationStore = MutationStore.readFrom(reader);
+            reader.verify();
+            Assertions.assertEquals("Switzerland", readStringColumn.get(0));
+            Assertions.assertNull(readStringColumn.get(1));
+            Assertions.assertEquals("Z\u00fcrich", readStringColumn.get(2));
+            Assertions.assertNull(readIntColumn.get(0));
+            Assertions.assertEquals(18000, readIntColumn.getInt(1));
+            long[] all = Bitmaps.full(3);
+            Assertions.assertEquals(
+                new HashSet<>(mutationStore.countMutations(all)),
+                new HashSet<>(readMutationStore.countMutations(all))
+            );
+        }
+
+        // A corrupted snapshot is detected
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            long lastByte = randomAccessFile.length() - 1;
+            randomAccessFile.seek(lastByte);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(lastByte);
+            randomAccessFile.write(value ^ 1);
+        }
+        Assertions.assertThrows(RuntimeException.class, () -> new DatabaseSnapshot.Reader(file).close());
+    }
+
+    @Test
+    public void testCorruptedLengthIsRejected() throws IOException {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path file = DatabaseSnapshot.getFile(directory, 42);
+        StringColumn.Builder builder = new StringColumn.Builder(2);
+        builder.set(0, "Switzerland");
+        try (DatabaseSnapshot.Writer writer = new DatabaseSnapshot.Writer(file, 42)) {
+            builder.build().writeTo(writer);
+            writer.commit();
+        }
+
+        // The size of the dictionary is the first value of the payload. The checksum is verified before it is used to
+        // allocate the dictionary so that the loading falls back to the database instead of running out of memory.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.seek(32);
+            randomAccessFile.write(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f });
+        }
+        Assertions.assertThrows(RuntimeException.class, () -> new DatabaseSnapshot.Reader(file).close());
+    }
+
+    @Test
+    public void testLengthLongerThanPayloadIsRejected() throws IOException {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path file = DatabaseSnapshot.getFile(directory, 42);
+        try (DatabaseSnapshot.Writer writer = new DatabaseSnapshot.Writer(file, 42)) {
+            writer.writeInt(Integer.MAX_VALUE);
+            writer.writeInts(new int[] { 1, 2, 3 }, 3);
+            writer.commit();
+        }
+
+        try (DatabaseSnapshot.Reader reader = new DatabaseSnapshot.Reader(file)) {
+            // The string length is larger than the rest of the payload.
+            Assertions.assertThrows(RuntimeException.class, reader::readString);
+        }
+        for (int length : new int[] { -1, 4, Integer.MAX_VALUE }) {
+            try (DatabaseSnapshot.Reader reader = new DatabaseSnapshot.Reader(file)) {
+                reader.readInt();
+                Assertions.assertThrows(RuntimeException.class, () -> reader.readInts(length));
+                Assertions.assertThrows(RuntimeException.class, () -> reader.readShorts(length * 2 + 1));
+                Assertions.assertThrows(RuntimeException.class, () -> reader.readLongs(length));
+                Assertions.assertThrows(RuntimeException.class, () -> reader.readFloats(length));
+                Assertions.assertArrayEquals(new int[] { 1, 2, 3 }, reader.readInts(3));
+                reader.verify();
+            }
+        }
+    }
+}
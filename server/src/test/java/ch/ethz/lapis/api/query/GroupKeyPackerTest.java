@@ -0,0 +1,142 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static ch.ethz.lapis.api.query.Database.Columns.AGE;
+import static ch.ethz.lapis.api.query.Database.Columns.DATE;
+import static ch.ethz.lapis.api.query.Database.Columns.HOSPITALIZED;
+import static ch.ethz.lapis.api.query.Database.Columns.NEXTCLADE_COVERAGE;
+import static ch.ethz.lapis.api.query.Database.Columns.REGION;
+
+public class GroupKeyPackerTest {
+
+    private static final List<String> COLUMNS = List.of(REGION, AGE, DATE, HOSPITALIZED);
+
+    /**
+     * Row 0 only contains null values; rows 1 and 2 contain the smallest and the largest value of every column.
+     */
+    private static Database createExtremesDatabase() {
+        StringColumn.Builder region = new StringColumn.Builder(3);
+        region.set(1, "Africa");
+        region.set(2, "Europe");
+        IntColumn age = new IntColumn(3);
+        age.set(1, 0);
+        age.set(2, 120);
+        IntColumn date = new IntColumn(3);
+        date.set(1, Database.dateToInt(LocalDate.of(2020, 1, 1)));
+        date.set(2, Database.dateToInt(LocalDate.of(2023, 12, 31)));
+        BooleanColumn hospitalized = new BooleanColumn(3);
+        hospitalized.set(1, false);
+        hospitalized.set(2, true);
+        return Database.createInMemory(3, Map.of(REGION, region.build()), Map.of(AGE, age, DATE, date),
+            Map.of(), Map.of(HOSPITALIZED, hospitalized));
+    }
+
+    /**
+     * The values of the rows repeat with different periods so that many combinations occur.
+     */
+    private static Database createDatabase(int numberRows, int ageStep) {
+        String[] regions = { "Africa", "Asia", "Europe", null };
+        StringColumn.Builder region = new StringColumn.Builder(numberRows);
+        IntColumn age = new IntColumn(numberRows);
+        IntColumn date = new IntColumn(numberRows);
+        BooleanColumn hospitalized = new BooleanColumn(numberRows);
+        for (int i = 0; i < numberRows; i++) {
+            region.set(i, regions[i % regions.length]);
+            age.set(i, i % 7 == 0 ? null : (i % 5) * ageStep);
+            date.set(i, i % 11 == 0 ? null : Database.dateToInt(LocalDate.of(2021, 1, 1).plusDays(i % 9)));
+            hospitalized.set(i, i % 3 == 0 ? null : i % 3 == 1);
+        }
+        return Database.createInMemory(numberRows, Map.of(REGION, region.build()), Map.of(AGE, age, DATE, date),
+            Map.of(), Map.of(HOSPITALIZED, hospitalized));
+    }
+
+    private static long[] matchEveryThirdRowNot(int numberRows) {
+        long[] matched = Bitmaps.full(numberRows);
+        for (int i = 0; i < numberRows; i += 3) {
+            Bitmaps.clear(matched, i);
+        }
+        return matched;
+    }
+
+    @Test
+    public void testPackAndUnpackNullMinAndMax() {
+        Database database = createExtremesDatabase();
+        GroupKeyPacker packer = GroupKeyPacker.create(database, COLUMNS);
+        Assertions.assertNotNull(packer);
+        Assertions.assertEquals(0, packer.pack(0));
+        Assertions.assertEquals(Arrays.asList(null, null, null, null), packer.unpack(packer.pack(0)));
+        Assertions.assertEquals(List.of("Africa", 0, Database.dateToInt(LocalDate.of(2020, 1, 1)), false),
+            packer.unpack(packer.pack(1)));
+        Assertions.assertEquals(List.of("Europe", 120, Database.dateToInt(LocalDate.of(2023, 12, 31)), true),
+            packer.unpack(packer.pack(2)));
+        for (int column = 0; column < COLUMNS.size(); column++) {
+            // The code of the largest value has to fit into the bits of the column.
+            long key = packer.pack(2);
+            Assertions.assertEquals(key & packer.getColumnMask(column),
+                (long) packer.getCode(key, column) << packer.getShift(column));
+            Assertions.assertEquals(packer.getNumberCodes(column) - 1, packer.getCode(key, column));
+        }
+    }
+
+    @Test
+    public void testIntegerColumnWithFullRangeIsNotSupported() {
+        IntColumn age = new IntColumn(2);
+        age.set(0, Integer.MIN_VALUE);
+        age.set(1, Integer.MAX_VALUE);
+        Database database = Database.createInMemory(2, Map.of(), Map.of(AGE, age), Map.of(), Map.of());
+        Assertions.assertNull(GroupKeyPacker.create(database, List.of(AGE)));
+    }
+
+    @Test
+    public void testKeyLongerThan63BitsIsNotSupported() {
+        // Every column has 2^30 + 2 codes and needs 31 bits.
+        Database database = createDatabase(10, 1 << 28);
+        Assertions.assertNotNull(GroupKeyPacker.create(database, List.of(AGE)));
+        GroupKeyPacker packer = GroupKeyPacker.create(database, List.of(AGE, AGE));
+        Assertions.assertNotNull(packer);
+        Assertions.assertEquals(62, packer.getTotalBits());
+        Assertions.assertNull(GroupKeyPacker.create(database, List.of(AGE, AGE, AGE)));
+    }
+
+    @Test
+    public void testFloatColumnIsNotSupported() {
+        Database database = createDatabase(10, 1);
+        Assertions.assertNull(GroupKeyPacker.create(database, List.of(REGION, NEXTCLADE_COVERAGE)));
+    }
+
+    @Test
+    public void testPackedCountsInArrayEqualUnpackedCounts() {
+        int numberRows = 300;
+        Database database = createDatabase(numberRows, 1);
+        GroupKeyPacker packer = GroupKeyPacker.create(database, COLUMNS);
+        Assertions.assertNotNull(packer);
+        Assertions.assertTrue(packer.getTotalBits() <= 16);
+        long[] matched = matchEveryThirdRowNot(numberRows);
+        QueryEngine queryEngine = new QueryEngine();
+        Map<List<Object>, Integer> expected = queryEngine.countGroups(database, COLUMNS, matched);
+        Assertions.assertEquals(expected, queryEngine.countGroupsPacked(packer, matched));
+        Assertions.assertEquals(Bitmaps.cardinality(matched),
+            expected.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void testPackedCountsInHashMapEqualUnpackedCounts() {
+        int numberRows = 300;
+        Database database = createDatabase(numberRows, 1 << 20);
+        GroupKeyPacker packer = GroupKeyPacker.create(database, COLUMNS);
+        Assertions.assertNotNull(packer);
+        Assertions.assertTrue(packer.getTotalBits() > 16);
+        long[] matched = matchEveryThirdRowNot(numberRows);
+        QueryEngine queryEngine = new QueryEngine();
+        Assertions.assertEquals(queryEngine.countGroups(database, COLUMNS, matched),
+            queryEngine.countGroupsPacked(packer, matched));
+    }
+
+}
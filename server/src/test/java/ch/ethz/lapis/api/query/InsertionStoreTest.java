@@ -0,0 +1,46 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class InsertionStoreTest {
+
+    @Test
+    public void testWithChanges() {
+        InsertionStore base = new InsertionStore();
+        base.putInsertions(0, "100:A");
+        base.putInsertions(1, "200:CC");
+        base.putInsertions(1, "300:G");
+        base.putInsertions(3, "100:A");
+        base.putInsertions(6, "400:T");
+        // The sequence 1 is changed, 2 gets insertions, 5 is appended and 6 is dropped.
+        InsertionStore changes = new InsertionStore();
+        changes.putInsertions(1, "200:CCC");
+        changes.putInsertions(2, "100:A");
+        changes.putInsertions(5, "500:TT");
+        long[] changedIds = Bitmaps.allocate(6);
+        Bitmaps.set(changedIds, 1);
+        Bitmaps.set(changedIds, 2);
+        Bitmaps.set(changedIds, 5);
+        InsertionStore merged = InsertionStore.withChanges(base, 6, changedIds, changes);
+
+        Assertions.assertEquals(Set.of(0, 2, 3), new HashSet<>(merged.find("100:A")));
+        Assertions.assertEquals(List.of(1), merged.find("200:CCC"));
+        Assertions.assertTrue(merged.find("200:CC").isEmpty());
+        Assertions.assertTrue(merged.find("300:G").isEmpty());
+        Assertions.assertTrue(merged.find("400:T").isEmpty());
+        Assertions.assertEquals(List.of(5), merged.find("500:TT"));
+        Assertions.assertEquals(
+            Set.of(new InsertionStore.InsertionCount("100:A", 3), new InsertionStore.InsertionCount("200:CCC", 1)),
+            new HashSet<>(merged.countInsertions(List.of(0, 1, 2, 3, 4, 6)))
+        );
+        // The base store is not modified.
+        Assertions.assertEquals(List.of(1), base.find("300:G"));
+        Assertions.assertEquals(List.of(6), base.find("400:T"));
+    }
+
+}
@@ -0,0 +1,35 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void testCountsEqualHashMap() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // Many collisions in the lower bits and a few huge keys
+            long key = i % 10 == 0 ? random.nextLong() & Long.MAX_VALUE : (long) random.nextInt(5000) << 20;
+            map.addTo(key, 1);
+            expected.merge(key, 1, Integer::sum);
+        }
+        Assertions.assertEquals(expected.size(), map.size());
+        Map<Long, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(0, map.get(1));
+    }
+
+    @Test
+    public void testNegativeKeyIsRejected() {
+        LongIntHashMap map = new LongIntHashMap();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> map.addTo(-1, 1));
+    }
+}
@@ -0,0 +1,41 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.NucMutation;
+import ch.ethz.lapis.api.exception.MalformedVariantQueryException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class MaybeTest {
+
+    @Test
+    public void testPushDownMaybe() {
+        // maybe(123A & !234T)
+        NucMutation first = new NucMutation(123, 'A');
+        NucMutation second = new NucMutation(234, 'T');
+        VariantQueryExpr query = new Maybe(new BiOp(BiOp.OpType.AND, first, new Negation(second)));
+
+        VariantQueryExpr pushedDown = Maybe.pushDownMaybe(query);
+
+        // maybe(123A) & !definitely(234T)
+        Assertions.assertTrue(pushedDown instanceof BiOp);
+        BiOp and = (BiOp) pushedDown;
+        NucMutation left = (NucMutation) and.getLeft();
+        Assertions.assertTrue(left.isApplyMaybe());
+        Assertions.assertEquals(123, left.getPosition());
+        Assertions.assertTrue(and.getRight() instanceof Negation);
+        Assertions.assertFalse(((NucMutation) ((Negation) and.getRight()).getValue()).isApplyMaybe());
+
+        // The original query is not modified and can be reused
+        Assertions.assertFalse(first.isApplyMaybe());
+        Assertions.assertSame(first, ((BiOp) ((Maybe) query).getValue()).getLeft());
+    }
+
+    @Test
+    public void testExactlyNOfInMaybeIsRejected() {
+        VariantQueryExpr query = new Maybe(new NOf(true, 1, List.of(new NucMutation(123, 'A'))));
+        Assertions.assertThrows(MalformedVariantQueryException.class, () -> Maybe.pushDownMaybe(query));
+    }
+
+}
@@ -0,0 +1,202 @@
+package ch.ethz.lapis.api.query;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+
+// This class compares the parsing of the mutation, unknown and insertion strings with String.split (as the loader did
+// before) and with the SequenceEntryScanner. It does not need a database: the rows are generated with roughly the
+// shape of SARS-CoV-2 data (about 30 nucleotide substitutions, a few deletions and unknown ranges, 25 amino acid
+// mutations and an insertion in every tenth row). The allocated bytes are measured with the ThreadMXBean of HotSpot.
+// It is not run with the tests; start it with the number of rows as the argument.
+public class MutationParsingBenchmark {
+
+    private static final List<String> GENES = List.of(
+        "E", "M", "N", "ORF1a", "ORF1b", "ORF3a", "ORF6", "ORF7a", "ORF7b", "ORF8", "ORF9b", "S");
+
+    private record Row(
+        String nucSubstitutions,
+        String nucDeletions,
+        String nucUnknowns,
+        String aaMutations,
+        String aaUnknowns,
+        String nucInsertions,
+        String aaInsertions
+    ) {
+    }
+
+    private interface Parser {
+        void parse(List<Row> rows, MutationStore nucMutationStore, Map<String, MutationStore> aaMutationStores,
+                   InsertionStore nucInsertionStore, Map<String, InsertionStore> aaInsertionStores);
+    }
+
+
+    public static void main(String[] args) {
+        int numberRows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        List<Row> rows = generateRows(numberRows, new Random(42));
+        Map<String, Parser> parsers = new LinkedHashMap<>();
+        parsers.put("split", MutationParsingBenchmark::parseWithSplit);
+        parsers.put("scanner", MutationParsingBenchmark::parseWithScanner);
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        parsers.forEach((name, parser) -> {
+            long bestTime = Long.MAX_VALUE;
+            long bestAllocated = Long.MAX_VALUE;
+            for (int run = 0; run < 8; run++) {
+                // The stores are not part of the measurement.
+                MutationStore nucMutationStore = new MutationStore(numberRows);
+                Map<String, MutationStore> aaMutationStores = new HashMap<>();
+                InsertionStore nucInsertionStore = new InsertionStore();
+                Map<String, InsertionStore> aaInsertionStores = new HashMap<>();
+                for (String gene : GENES) {
+                    aaMutationStores.put(gene, new MutationStore(numberRows));
+                    aaInsertionStores.put(gene, new InsertionStore());
+                }
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                parser.parse(rows, nucMutationStore, aaMutationStores, nucInsertionStore, aaInsertionStores);
+                long time = System.nanoTime() - start;
+                long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                if (run >= 3) {
+                    bestTime = Math.min(bestTime, time);
+                    bestAllocated = Math.min(bestAllocated, allocated);
+                }
+            }
+            System.out.println(name + ": t=" + bestTime / 1000000 + " ms, "
+                + (long) (numberRows / (bestTime / 1e9)) + " rows/s, allocated="
+                + bestAllocated / numberRows + " bytes/row");
+        });
+    }
+
+
+    private static List<Row> generateRows(int numberRows, Random random) {
+        String bases = "ACGT";
+        String aminoAcids = "ACDEFGHIKLMNPQRSTVWY*";
+        List<Row> rows = new ArrayList<>(numberRows);
+        for (int i = 0; i < numberRows; i++) {
+            List<String> substitutions = new ArrayList<>();
+            for (int position = 1 + random.nextInt(1000); position < 29903; position += 1 + random.nextInt(2000)) {
+                substitutions.add(bases.charAt(random.nextInt(4)) + "" + position + bases.charAt(random.nextInt(4)));
+            }
+            List<String> deletions = new ArrayList<>();
+            int deletionStart = 1 + random.nextInt(29000);
+            for (int position = deletionStart; position < deletionStart + random.nextInt(10); position++) {
+                deletions.add(bases.charAt(random.nextInt(4)) + "" + position + "-");
+            }
+            List<String> unknowns = new ArrayList<>();
+            for (int position = 1 + random.nextInt(50); position < 29903; position += 1 + random.nextInt(8000)) {
+                int length = random.nextInt(300);
+                unknowns.add(length == 0 ? String.valueOf(position) : position + "-" + (position + length));
+            }
+            List<String> aaMutations = new ArrayList<>();
+            List<String> aaUnknowns = new ArrayList<>();
+            for (String gene : GENES) {
+                for (int position = 1 + random.nextInt(400); position < 1200; position += 1 + random.nextInt(800)) {
+                    aaMutations.add(gene + ":" + aminoAcids.charAt(random.nextInt(21)) + position
+                        + aminoAcids.charAt(random.nextInt(21)));
+                }
+                if (random.nextInt(3) == 0) {
+                    int position = 1 + random.nextInt(200);
+                    aaUnknowns.add(gene + ":" + position + "-" + (position + random.nextInt(30)));
+                }
+            }
+            boolean withInsertion = random.nextInt(10) == 0;
+            rows.add(new Row(
+                String.join(",", substitutions),
+                String.join(",", deletions),
+                String.join(",", unknowns),
+                String.join(",", aaMutations),
+                String.join(",", aaUnknowns),
+                withInsertion ? "22204:GAGCCAGAA" : "",
+                withInsertion ? "S:214:EPE" : ""
+            ));
+        }
+        return rows;
+    }
+
+
+    private static void parseWithScanner(List<Row> rows, MutationStore nucMutationStore,
+                                         Map<String, MutationStore> aaMutationStores,
+                                         InsertionStore nucInsertionStore,
+                                         Map<String, InsertionStore> aaInsertionStores) {
+        SequenceEntryScanner scanner = new SequenceEntryScanner(nucMutationStore, aaMutationStores,
+            nucInsertionStore, aaInsertionStores);
+        for (int id = 0; id < rows.size(); id++) {
+            Row row = rows.get(id);
+            scanner.putNucEntry(id, row.nucSubstitutions(), row.nucDeletions(), row.nucUnknowns());
+            scanner.putAaEntry(id, row.aaMutations(), row.aaUnknowns());
+            scanner.putNucInsertions(id, row.nucInsertions());
+            scanner.putAaInsertions(id, row.aaInsertions());
+        }
+    }
+
+
+    /**
+     * The parsing of the loader before the SequenceEntryScanner was introduced
+     */
+    private static void parseWithSplit(List<Row> rows, MutationStore nucMutationStore,
+                                       Map<String, MutationStore> aaMutationStores,
+                                       InsertionStore nucInsertionStore,
+                                       Map<String, InsertionStore> aaInsertionStores) {
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            int id = i; // Used in the lambdas
+            // Nuc mutations
+            String nucMutationsString = row.nucSubstitutions() + "," + row.nucDeletions();
+            List<MutationStore.Mutation> nucMutations = new ArrayList<>();
+            for (String mut : nucMutationsString.split(",")) {
+                if (mut.isBlank() || mut.equals("null")) {
+                    continue;
+                }
+                nucMutations.add(MutationStore.Mutation.parse(mut));
+            }
+            List<String> nucUnknowns = Arrays.stream(row.nucUnknowns().split(","))
+                .filter(s -> !s.isBlank())
+                .collect(Collectors.toList());
+            nucMutationStore.putEntry(id, nucMutations, nucUnknowns);
+            // AA mutations
+            Map<String, List<MutationStore.Mutation>> aaMutationsPerGene = new HashMap<>();
+            Map<String, List<String>> aaUnknownsPerGene = new HashMap<>();
+            for (String name : GENES) {
+                aaMutationsPerGene.put(name, new ArrayList<>());
+                aaUnknownsPerGene.put(name, new ArrayList<>());
+            }
+            for (String mutWithGene : row.aaMutations().split(",")) {
+                if (mutWithGene.isBlank()) {
+                    continue;
+                }
+                String[] parts = mutWithGene.split(":");
+                aaMutationsPerGene.get(parts[0]).add(MutationStore.Mutation.parse(parts[1]));
+            }
+            Arrays.stream(row.aaUnknowns().split(","))
+                .filter(s -> !s.isBlank())
+                .forEach(unknownsWithGene -> {
+                    String[] parts = unknownsWithGene.split(":");
+                    aaUnknownsPerGene.get(parts[0]).add(parts[1]);
+                });
+            aaMutationStores.forEach((gene, mutationStore) ->
+                mutationStore.putEntry(id, aaMutationsPerGene.get(gene), aaUnknownsPerGene.get(gene)));
+            // Insertions
+            if (!row.nucInsertions().isBlank()) {
+                Arrays.stream(row.nucInsertions().split(","))
+                    .forEach(ins -> nucInsertionStore.putInsertions(id, ins));
+            }
+            if (!row.aaInsertions().isBlank()) {
+                Arrays.stream(row.aaInsertions().split(","))
+                    .forEach(geneIns -> {
+                        String[] split = geneIns.split(":", 2);
+                        aaInsertionStores.get(split[0]).putInsertions(id, split[1]);
+                    });
+            }
+        }
+    }
+}
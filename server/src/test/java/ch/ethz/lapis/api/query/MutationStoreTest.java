@@ -3,8 +3,10 @@ package ch.ethz.lapis.api.query;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 public class MutationStoreTest {
 
@@ -38,7 +40,7 @@ public class MutationStoreTest {
         ));
 
         // Case 1: count single
-        List<MutationStore.MutationCount> counts0 = mutationStore.countMutations(List.of(0));
+        List<MutationStore.MutationCount> counts0 = mutationStore.countMutations(bitmapOf(3, 0));
         Assertions.assertEquals(
             new HashSet<>(List.of(
                 new MutationStore.MutationCount(new MutationStore.Mutation((short) 25, 'T'), 1)
@@ -53,7 +55,7 @@ public class MutationStoreTest {
         );
 
         // Case 2: count all
-        List<MutationStore.MutationCount> counts1 = mutationStore.countMutations(List.of(0, 1, 2));
+        List<MutationStore.MutationCount> counts1 = mutationStore.countMutations(bitmapOf(3, 0, 1, 2));
         Assertions.assertEquals(
             new HashSet<>(List.of(
                 new MutationStore.MutationCount(new MutationStore.Mutation((short) 25, 'T'), 1)
@@ -68,6 +70,210 @@ public class MutationStoreTest {
             new HashSet<>(counts1),
             "Case 2"
         );
+
+        // Case 3: number of sequences with a mutation
+        Assertions.assertEquals(3, mutationStore.getNumberSequencesWithMutation((short) 33, 'G'), "Case 3");
+        Assertions.assertEquals(1, mutationStore.getNumberSequencesWithMutation((short) 42, 'C'), "Case 3");
+        Assertions.assertEquals(0, mutationStore.getNumberSequencesWithMutation((short) 42, 'A'), "Case 3");
+    }
+
+    @Test
+    public void testSkippedIdsHaveEmptyEntries() {
+        MutationStore mutationStore = new MutationStore(4);
+        mutationStore.putEntry(1, List.of(new MutationStore.Mutation((short) 5, 'A')), List.of("1-3"));
+        mutationStore.putEntry(3, List.of(new MutationStore.Mutation((short) 5, 'A')), List.of());
+        mutationStore.trimToSize();
+        Assertions.assertEquals(
+            List.of(new MutationStore.MutationCount(new MutationStore.Mutation((short) 5, 'A'), 2)
+                .setProportion(0.5)),
+            mutationStore.countMutations(bitmapOf(4, 0, 1, 2, 3))
+        );
+        Assertions.assertThrows(RuntimeException.class, () -> mutationStore.putEntry(2, List.of(), List.of()));
+    }
+
+    @Test
+    public void testIndex() {
+        MutationStore mutationStore = new MutationStore(3);
+        mutationStore.putEntry(0, List.of(new MutationStore.Mutation((short) 5, 'A')), List.of("1-3"));
+        mutationStore.putEntry(1, List.of(new MutationStore.Mutation((short) 5, 'C')), List.of("2", "5-9"));
+        mutationStore.putEntry(2, List.of(new MutationStore.Mutation((short) 5, 'A')), List.of());
+        Assertions.assertNull(mutationStore.findRowsWithMutation((short) 5, "A"));
+        mutationStore.buildIndex();
+        Assertions.assertArrayEquals(bitmapOf(3, 0, 2), mutationStore.findRowsWithMutation((short) 5, "A"));
+        Assertions.assertArrayEquals(bitmapOf(3, 0, 1, 2), mutationStore.findRowsWithMutation((short) 5, "AC"));
+        Assertions.assertArrayEquals(bitmapOf(3), mutationStore.findRowsWithMutation((short) 6, "A"));
+    }
+
+    @Test
+    public void testCountingWithIndexEqualsCountingRows() {
+        Random random = new Random(42);
+        int size = 1000;
+        MutationStore mutationStore = new MutationStore(size);
+        for (int id = 0; id < size; id++) {
+            List<MutationStore.Mutation> mutations = new ArrayList<>();
+            for (int position = 1; position <= 100; position += 1 + random.nextInt(20)) {
+                mutations.add(new MutationStore.Mutation((short) position, "ACGT".charAt(random.nextInt(4))));
+            }
+            int unknownStart = 1 + random.nextInt(100);
+            mutationStore.putEntry(id, mutations, List.of(unknownStart + "-" + (unknownStart + random.nextInt(10))));
+        }
+        mutationStore.trimToSize();
+        mutationStore.buildIndex();
+        // A sparse and a dense selection; the unknowns of the latter are counted through the unselected rows.
+        for (double density : new double[] { 0.05, 0.9 }) {
+            long[] matched = Bitmaps.allocate(size);
+            for (int id = 0; id < size; id++) {
+                if (random.nextDouble() < density) {
+                    Bitmaps.set(matched, id);
+                }
+            }
+            Assertions.assertEquals(
+                new HashSet<>(mutationStore.countMutations(matched, false)),
+                new HashSet<>(mutationStore.countMutations(matched, true))
+            );
+        }
+    }
+
+    @Test
+    public void testProfilesEqualCountingRows() {
+        Random random = new Random(42);
+        int size = 1000;
+        MutationStore mutationStore = new MutationStore(size);
+        StringColumn.Builder lineages = new StringColumn.Builder(size);
+        List<String> lineageNames = List.of("B.1", "B.1.1", "B.1.1.7", "BA.1");
+        // The last rows have no entries.
+        for (int id = 0; id < size - 10; id++) {
+            if (random.nextInt(10) > 0) {
+                lineages.set(id, lineageNames.get(random.nextInt(lineageNames.size())));
+            }
+            List<MutationStore.Mutation> mutations = new ArrayList<>();
+            for (int position = 1; position <= 100; position += 1 + random.nextInt(20)) {
+                mutations.add(new MutationStore.Mutation((short) position, "ACGT".charAt(random.nextInt(4))));
+            }
+            int unknownStart = 1 + random.nextInt(100);
+            mutationStore.putEntry(id, mutations, List.of(unknownStart + "-" + (unknownStart + random.nextInt(10))));
+        }
+        for (int id = size - 10; id < size; id++) {
+            lineages.set(id, "B.1");
+        }
+        StringColumn lineageColumn = lineages.build();
+        mutationStore.buildProfiles(lineageColumn);
+        boolean[] acceptedLineages = lineageColumn.findCodes(lineage -> lineage.startsWith("B.1"));
+        Assertions.assertEquals(
+            new HashSet<>(mutationStore.countMutations(lineageColumn.match(acceptedLineages))),
+            new HashSet<>(mutationStore.countMutationsOfGroups(acceptedLineages))
+        );
     }
 
+    @Test
+    public void testPutAllEqualsPuttingEntries() {
+        Random random = new Random(42);
+        int size = 1000;
+        int partitionSize = 320;
+        MutationStore mutationStore = new MutationStore(size);
+        MutationStore mergedStore = new MutationStore(size);
+        for (int from = 0; from < size; from += partitionSize) {
+            int to = Math.min(from + partitionSize, size);
+            MutationStore partition = new MutationStore(to - from);
+            // The last rows of every partition have no entries.
+            for (int id = from; id < to - 5; id++) {
+                List<MutationStore.Mutation> mutations = new ArrayList<>();
+                for (int position = 1; position <= 100; position += 1 + random.nextInt(20)) {
+                    mutations.add(new MutationStore.Mutation((short) position, "ACGT".charAt(random.nextInt(4))));
+                }
+                int unknownStart = 1 + random.nextInt(100);
+                List<String> unknowns = List.of(unknownStart + "-" + (unknownStart + random.nextInt(10)));
+                mutationStore.putEntry(id, mutations, unknowns);
+                partition.putEntry(id - from, mutations, unknowns);
+            }
+            mergedStore.putAll(from, partition);
+        }
+        long[] matched = Bitmaps.allocate(size);
+        for (int id = 0; id < size; id += 3) {
+            Bitmaps.set(matched, id);
+        }
+        Assertions.assertEquals(
+            new HashSet<>(mutationStore.countMutations(matched, false)),
+            new HashSet<>(mergedStore.countMutations(matched, false))
+        );
+        mutationStore.buildIndex();
+        mergedStore.buildIndex();
+        Assertions.assertArrayEquals(mutationStore.findRowsWithMutation((short) 42, "AC"),
+            mergedStore.findRowsWithMutation((short) 42, "AC"));
+    }
+
+    @Test
+    public void testWithChangesEqualsPuttingEntries() {
+        Random random = new Random(7);
+        int baseSize = 500;
+        int size = 600;
+        MutationStore base = new MutationStore(baseSize);
+        List<List<MutationStore.Mutation>> baseMutations = new ArrayList<>();
+        List<List<String>> baseUnknowns = new ArrayList<>();
+        for (int id = 0; id < baseSize; id++) {
+            baseMutations.add(List.of(new MutationStore.Mutation((short) (1 + random.nextInt(50)), 'A')));
+            baseUnknowns.add(List.of(String.valueOf(1 + random.nextInt(50))));
+            base.putEntry(id, baseMutations.get(id), baseUnknowns.get(id));
+        }
+        // Every seventh row is updated and the rows from baseSize on are appended.
+        long[] changedIds = Bitmaps.allocate(size);
+        MutationStore changes = new MutationStore(size);
+        MutationStore expected = new MutationStore(size);
+        int numberChanges = 0;
+        for (int id = 0; id < size; id++) {
+            if (id % 7 == 0 || id >= baseSize) {
+                List<MutationStore.Mutation> mutations =
+                    List.of(new MutationStore.Mutation((short) (1 + random.nextInt(60)), 'C'));
+                List<String> unknowns = List.of(String.valueOf(1 + random.nextInt(60)));
+                Bitmaps.set(changedIds, id);
+                changes.putEntry(numberChanges++, mutations, unknowns);
+                expected.putEntry(id, mutations, unknowns);
+            } else {
+                expected.putEntry(id, baseMutations.get(id), baseUnknowns.get(id));
+            }
+        }
+        MutationStore merged = MutationStore.withChanges(base, size, changedIds, changes);
+
+        long[] matched = Bitmaps.allocate(size);
+        for (int id = 0; id < size; id += 2) {
+            Bitmaps.set(matched, id);
+        }
+        Assertions.assertEquals(
+            new HashSet<>(expected.countMutations(matched, false)),
+            new HashSet<>(merged.countMutations(matched, false))
+        );
+        expected.buildIndex();
+        merged.buildIndex();
+        Assertions.assertArrayEquals(expected.findRowsWithMutation((short) 20, "AC"),
+            merged.findRowsWithMutation((short) 20, "AC"));
+        // The base store is not modified.
+        Assertions.assertEquals(baseSize, base.countMutations(Bitmaps.full(baseSize), false).stream()
+            .mapToInt(MutationStore.MutationCount::getCount).sum());
+    }
+
+    @Test
+    public void testWithChangesDropsUnusedMutations() {
+        MutationStore base = new MutationStore(3);
+        base.putEntry(0, List.of(new MutationStore.Mutation((short) 1, 'A')), List.of());
+        base.putEntry(1, List.of(new MutationStore.Mutation((short) 2, 'A')), List.of());
+        base.putEntry(2, List.of(new MutationStore.Mutation((short) 1, 'A')), List.of());
+        // The only row with 2A is changed and the last row is deleted.
+        MutationStore changes = new MutationStore(1);
+        changes.putEntry(0, List.of(new MutationStore.Mutation((short) 3, 'C')), List.of());
+        MutationStore merged = MutationStore.withChanges(base, 2, bitmapOf(2, 1), changes);
+
+        Assertions.assertEquals(2, merged.getNumberDistinctMutations());
+        Assertions.assertEquals(0, merged.getNumberSequencesWithMutation((short) 2, 'A'));
+        Assertions.assertEquals(1, merged.getNumberSequencesWithMutation((short) 1, 'A'));
+        Assertions.assertEquals(1, merged.getNumberSequencesWithMutation((short) 3, 'C'));
+        Assertions.assertEquals(2, merged.countMutations(Bitmaps.full(2), false).size());
+    }
+
+    private static long[] bitmapOf(int size, int... ids) {
+        long[] bitmap = Bitmaps.allocate(size);
+        for (int id : ids) {
+            Bitmaps.set(bitmap, id);
+        }
+        return bitmap;
+    }
 }
@@ -0,0 +1,37 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class PackedNucleotideStoreTest {
+
+    @Test
+    public void testPackAndMatch() {
+        // An odd number of rows so that the last byte is only half used
+        String bases = "ACGT-NMRWSYKVHDBX";
+        PackedNucleotideStore store = new PackedNucleotideStore(bases.length(), 3);
+        store.putColumn(2, bases.getBytes(StandardCharsets.US_ASCII));
+
+        Assertions.assertTrue(store.hasColumn(2));
+        Assertions.assertFalse(store.hasColumn(1));
+        Assertions.assertFalse(store.hasColumn(4));
+        for (int i = 0; i < bases.length() - 1; i++) {
+            Assertions.assertEquals(bases.charAt(i), store.getBase(2, i));
+        }
+        Assertions.assertEquals('N', store.getBase(2, bases.length() - 1));
+
+        boolean[] acceptedCodes = new boolean[16];
+        acceptedCodes[1] = true; // C
+        acceptedCodes[5] = true; // N
+        long[] result = store.match(2, acceptedCodes);
+        Assertions.assertEquals(1, result.length);
+        Assertions.assertEquals((1L << 1) | (1L << 5) | (1L << 16), result[0]);
+
+        long[] candidates = new long[] { (1L << 0) | (1L << 5) | (1L << 16) };
+        Assertions.assertArrayEquals(new long[] { (1L << 5) | (1L << 16) },
+            store.match(2, acceptedCodes, candidates));
+    }
+
+}
@@ -0,0 +1,36 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.util.PangoLineageQueryConverter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PangoLineageTreeTest {
+
+    @Test
+    public void testMatchesLikeScanningTheDictionary() {
+        List<String> lineages = Arrays.asList(
+            "B", "B.1", "B.1.1.7", null, "B.11", "B.1.1", "BA.1", "B.1.617.2", "B.1.1.7", "A.1");
+        StringColumn.Builder builder = new StringColumn.Builder(lineages.size());
+        for (int row = 0; row < lineages.size(); row++) {
+            builder.set(row, lineages.get(row));
+        }
+        StringColumn column = builder.build();
+        PangoLineageTree tree = PangoLineageTree.build(column);
+
+        // B.1* and B.1.1 (e.g., the resolved alias of another query)
+        PangoLineageQueryConverter.PangoLineageQueryMatch match = new PangoLineageQueryConverter.PangoLineageQueryMatch(
+            List.of("B.1", "B.1.1"), List.of("B.1."));
+        boolean[] expected = column.findCodes(d -> d.equals("B.1") || d.equals("B.1.1") || d.startsWith("B.1."));
+        boolean[] acceptedCodes = tree.findAcceptedCodes(match);
+        Assertions.assertArrayEquals(expected, acceptedCodes);
+        Assertions.assertArrayEquals(column.match(expected), tree.match(acceptedCodes));
+
+        // A lineage that only occurs as an ancestor
+        match = new PangoLineageQueryConverter.PangoLineageQueryMatch(List.of("B.1.617"), List.of("B.1.617."));
+        acceptedCodes = tree.findAcceptedCodes(match);
+        Assertions.assertArrayEquals(column.findCodes(d -> d.equals("B.1.617.2")), acceptedCodes);
+    }
+}
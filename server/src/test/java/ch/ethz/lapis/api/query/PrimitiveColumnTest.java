@@ -0,0 +1,131 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class PrimitiveColumnTest {
+
+    @Test
+    public void testIntColumn() {
+        // More than 64 rows so that the validity bitmap spans multiple words
+        int size = 130;
+        IntColumn column = new IntColumn(size);
+        for (int i = 0; i < size; i++) {
+            column.set(i, i % 10 == 0 ? null : i);
+        }
+        Assertions.assertNull(column.get(70));
+        Assertions.assertEquals(Integer.valueOf(71), column.get(71));
+
+        long[] matched = Bitmaps.full(size);
+        column.filterBetween(matched, 65, 72);
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals(i >= 65 && i <= 72 && i != 70, Bitmaps.get(matched, i));
+        }
+    }
+
+    @Test
+    public void testFloatColumn() {
+        FloatColumn column = new FloatColumn(3);
+        column.set(0, 0.5f);
+        column.set(1, null);
+        column.set(2, 1.5f);
+        long[] matched = Bitmaps.full(3);
+        column.filterBetween(matched, Float.NEGATIVE_INFINITY, 1.0f);
+        Assertions.assertArrayEquals(new long[] { 0b001 }, matched);
+    }
+
+    @Test
+    public void testBooleanColumn() {
+        int size = 100;
+        BooleanColumn column = new BooleanColumn(size);
+        for (int i = 0; i < size; i++) {
+            column.set(i, i % 3 == 0 ? null : i % 3 == 1);
+        }
+        Assertions.assertNull(column.get(99));
+        Assertions.assertEquals(true, column.get(97));
+        Assertions.assertEquals(false, column.get(98));
+
+        long[] matched = Bitmaps.full(size);
+        matched[1] &= ~(1L << 97);
+        column.filterEquals(matched, true);
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals(i % 3 == 1 && i != 97, Bitmaps.get(matched, i));
+        }
+    }
+
+    @Test
+    public void testSetNullClearsValue() {
+        IntColumn intColumn = new IntColumn(2);
+        intColumn.set(1, 42);
+        intColumn.set(1, null);
+        Assertions.assertTrue(intColumn.isNull(1));
+        long[] matched = Bitmaps.full(2);
+        intColumn.filterBetween(matched, 0, 0);
+        Assertions.assertEquals(0, Bitmaps.cardinality(matched));
+
+        FloatColumn floatColumn = new FloatColumn(2);
+        floatColumn.set(1, 0.5f);
+        floatColumn.set(1, null);
+        Assertions.assertTrue(floatColumn.isNull(1));
+        matched = Bitmaps.full(2);
+        floatColumn.filterBetween(matched, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Assertions.assertEquals(0, Bitmaps.cardinality(matched));
+
+        BooleanColumn booleanColumn = new BooleanColumn(2);
+        booleanColumn.set(1, true);
+        booleanColumn.set(1, null);
+        Assertions.assertNull(booleanColumn.get(1));
+        matched = Bitmaps.full(2);
+        booleanColumn.filterEquals(matched, true);
+        Assertions.assertEquals(0, Bitmaps.cardinality(matched));
+        booleanColumn.set(0, false);
+        booleanColumn.set(0, null);
+        matched = Bitmaps.full(2);
+        booleanColumn.filterEquals(matched, false);
+        Assertions.assertEquals(0, Bitmaps.cardinality(matched));
+    }
+
+    @Test
+    public void testCopyOf() {
+        IntColumn intColumn = new IntColumn(70);
+        intColumn.set(0, 1);
+        intColumn.set(69, 2);
+        IntColumn shorterInts = intColumn.copyOf(65);
+        Assertions.assertEquals(65, shorterInts.size());
+        Assertions.assertEquals(Integer.valueOf(1), shorterInts.get(0));
+        Assertions.assertArrayEquals(new int[] { 1, 1 }, shorterInts.getRange());
+        IntColumn longerInts = intColumn.copyOf(130);
+        Assertions.assertEquals(Integer.valueOf(2), longerInts.get(69));
+        Assertions.assertNull(longerInts.get(129));
+        longerInts.set(0, 3);
+        Assertions.assertEquals(Integer.valueOf(1), intColumn.get(0));
+
+        FloatColumn floatColumn = new FloatColumn(70);
+        floatColumn.set(69, 0.5f);
+        FloatColumn longerFloats = floatColumn.copyOf(130);
+        Assertions.assertEquals(130, longerFloats.size());
+        Assertions.assertEquals(Float.valueOf(0.5f), longerFloats.get(69));
+        Assertions.assertNull(longerFloats.get(70));
+        Assertions.assertNull(floatColumn.copyOf(69).get(68));
+        longerFloats.set(69, null);
+        Assertions.assertEquals(Float.valueOf(0.5f), floatColumn.get(69));
+
+        BooleanColumn booleanColumn = new BooleanColumn(70);
+        booleanColumn.set(0, false);
+        booleanColumn.set(69, true);
+        BooleanColumn shorterBooleans = booleanColumn.copyOf(65);
+        Assertions.assertEquals(65, shorterBooleans.size());
+        Assertions.assertEquals(false, shorterBooleans.get(0));
+        BooleanColumn longerBooleans = booleanColumn.copyOf(130);
+        Assertions.assertEquals(true, longerBooleans.get(69));
+        Assertions.assertNull(longerBooleans.get(129));
+        long[] matched = Bitmaps.full(130);
+        longerBooleans.filterEquals(matched, true);
+        Assertions.assertEquals(List.of(69), Bitmaps.toList(matched));
+        longerBooleans.set(69, false);
+        Assertions.assertEquals(true, booleanColumn.get(69));
+    }
+
+}
@@ -0,0 +1,62 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.NucInsertion;
+import ch.ethz.lapis.api.entity.NucMutation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class QueryRewriterTest {
+
+    @Test
+    public void testFlattenAndDeduplicate() {
+        // (ins_1:A & (ins_2:C & ins_1:A)) & !!ins_3:G
+        NucInsertion a = new NucInsertion(1, "A");
+        NucInsertion b = new NucInsertion(2, "C");
+        NucInsertion c = new NucInsertion(3, "G");
+        VariantQueryExpr query = new BiOp(BiOp.OpType.AND,
+            new Single(new BiOp(BiOp.OpType.AND, a, new BiOp(BiOp.OpType.AND, b, new NucInsertion(1, "A")))),
+            new Negation(new Negation(c)));
+
+        Assertions.assertEquals(new NaryOp(BiOp.OpType.AND, List.of(a, b, c)), QueryRewriter.rewrite(query));
+    }
+
+    @Test
+    public void testSingleOperandRemains() {
+        NucInsertion a = new NucInsertion(1, "A");
+        Assertions.assertEquals(a, QueryRewriter.rewrite(new BiOp(BiOp.OpType.OR, a, new NucInsertion(1, "A"))));
+    }
+
+    @Test
+    public void testMergeLeaves() {
+        // 23063T | B.1.1.7 | 23063A | ins_1:A | B.1.617.2*
+        NucMutation t = new NucMutation(23063, 'T');
+        NucMutation a = new NucMutation(23063, 'A');
+        PangoQuery alpha = new PangoQuery("B.1.1.7", false, Database.Columns.PANGO_LINEAGE);
+        PangoQuery delta = new PangoQuery("B.1.617.2", true, Database.Columns.PANGO_LINEAGE);
+        NucInsertion insertion = new NucInsertion(1, "A");
+        VariantQueryExpr query = new BiOp(BiOp.OpType.OR, t, new BiOp(BiOp.OpType.OR, alpha,
+            new BiOp(BiOp.OpType.OR, a, new BiOp(BiOp.OpType.OR, insertion, delta))));
+
+        Assertions.assertEquals(new NaryOp(BiOp.OpType.OR, List.of(
+            new NucMutationSet(BiOp.OpType.OR, List.of(t, a)),
+            new PangoQuerySet(BiOp.OpType.OR, List.of(alpha, delta)),
+            insertion
+        )), QueryRewriter.rewrite(query));
+
+        boolean[] acceptedBases = new NucMutationSet(BiOp.OpType.OR, List.of(t, a)).getAcceptedBases();
+        Assertions.assertTrue(acceptedBases['T']);
+        Assertions.assertTrue(acceptedBases['A']);
+        Assertions.assertFalse(acceptedBases['G']);
+        Assertions.assertFalse(acceptedBases['N']);
+    }
+
+    @Test
+    public void testNOfIsNotDeduplicated() {
+        NucInsertion a = new NucInsertion(1, "A");
+        VariantQueryExpr query = new NOf(false, 2, List.of(a, new Single(new NucInsertion(1, "A"))));
+        Assertions.assertEquals(new NOf(false, 2, List.of(a, a)), QueryRewriter.rewrite(query));
+    }
+
+}
@@ -0,0 +1,52 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.api.entity.NucInsertion;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ResultCacheTest {
+
+    private static final long EXPENSIVE = 10_000_000;
+
+    @Test
+    public void testSparseAndDenseResults() {
+        int size = 1000;
+        ResultCache cache = new ResultCache(1024 * 1024, size);
+        long[] sparse = Bitmaps.allocate(size);
+        Bitmaps.set(sparse, 3);
+        Bitmaps.set(sparse, 999);
+        long[] dense = Bitmaps.full(size);
+
+        cache.offer(new NucInsertion(1, "A"), sparse, EXPENSIVE);
+        cache.offer(new NucInsertion(2, "A"), dense, EXPENSIVE);
+
+        // The keys are compared by value
+        Assertions.assertArrayEquals(sparse, cache.get(new NucInsertion(1, "A")));
+        Assertions.assertArrayEquals(dense, cache.get(new NucInsertion(2, "A")));
+        Assertions.assertEquals(2 * 4 + Bitmaps.allocate(size).length * 8, cache.getCurrentBytes());
+
+        // The returned bitmap belongs to the caller
+        cache.get(new NucInsertion(2, "A"))[0] = 0;
+        Assertions.assertArrayEquals(dense, cache.get(new NucInsertion(2, "A")));
+    }
+
+    @Test
+    public void testAdmissionAndEviction() {
+        int size = 640;
+        // Space for one dense result of 10 words
+        ResultCache cache = new ResultCache(80, size);
+        long[] result = Bitmaps.full(size);
+
+        cache.offer(new NucInsertion(1, "A"), result, 1000);
+        Assertions.assertNull(cache.get(new NucInsertion(1, "A")), "Cheap results are not admitted");
+
+        cache.offer(new NucInsertion(1, "A"), result, EXPENSIVE);
+        cache.offer(new NucInsertion(2, "A"), result, EXPENSIVE);
+        Assertions.assertNull(cache.get(new NucInsertion(1, "A")));
+        Assertions.assertNotNull(cache.get(new NucInsertion(2, "A")));
+        Assertions.assertEquals(1, cache.getNumberEntries());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+}
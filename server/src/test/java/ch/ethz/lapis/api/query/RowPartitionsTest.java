@@ -0,0 +1,76 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class RowPartitionsTest {
+
+    @Test
+    public void testPartitionsCoverAllWords() {
+        int numberWords = 10_000;
+        List<int[]> partitions = RowPartitions.map(numberWords, (fromWord, toWord) -> new int[] { fromWord, toWord });
+        Assertions.assertEquals(Math.min(RowPartitions.getParallelism(), 9), partitions.size());
+        int expectedFrom = 0;
+        for (int[] partition : partitions) {
+            Assertions.assertEquals(expectedFrom, partition[0]);
+            Assertions.assertTrue(partition[1] > partition[0]);
+            expectedFrom = partition[1];
+        }
+        Assertions.assertEquals(numberWords, expectedFrom);
+    }
+
+    @Test
+    public void testParallelMatchEqualsSequentialMatch() {
+        // Large enough to be split into several partitions and not a multiple of 64
+        int size = 1024 * 64 * 4 + 13;
+        byte[] values = new byte[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = (byte) "ACGTN".charAt((i * 7 + i / 3) % 5);
+        }
+        boolean[] accepted = new boolean[256];
+        accepted['G'] = true;
+        accepted['N'] = true;
+
+        long[] result = Bitmaps.match(values, accepted);
+
+        long[] expected = Bitmaps.allocate(size);
+        for (int i = 0; i < size; i++) {
+            if (values[i] == 'G' || values[i] == 'N') {
+                Bitmaps.set(expected, i);
+            }
+        }
+        Assertions.assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void testMapEachKeepsOrder() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(i);
+        }
+        Assertions.assertEquals(items.stream().map(i -> i * i).toList(), RowPartitions.mapEach(items, i -> i * i));
+    }
+
+    @Test
+    public void testCallFromCommonPoolRunsInSharedPool() {
+        int parallelism = RowPartitions.getParallelism();
+        RowPartitions.setParallelism(2);
+        try {
+            List<ForkJoinPool> pools = ForkJoinPool.commonPool().submit(() ->
+                RowPartitions.map(10_000, (fromWord, toWord) -> ForkJoinTask.getPool())).join();
+            Assertions.assertEquals(2, pools.size());
+            for (ForkJoinPool pool : pools) {
+                Assertions.assertNotNull(pool);
+                Assertions.assertNotSame(ForkJoinPool.commonPool(), pool);
+            }
+        } finally {
+            RowPartitions.setParallelism(parallelism);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package ch.ethz.lapis.api.query;
+
+import ch.ethz.lapis.util.MutationEncoding;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class SequenceEntryScannerTest {
+
+    @Test
+    public void testScanningEqualsPuttingEntries() {
+        MutationStore nucMutationStore = new MutationStore(3);
+        MutationStore sMutationStore = new MutationStore(3);
+        MutationStore nMutationStore = new MutationStore(3);
+        InsertionStore nucInsertionStore = new InsertionStore();
+        InsertionStore sInsertionStore = new InsertionStore();
+        SequenceEntryScanner scanner = new SequenceEntryScanner(nucMutationStore,
+            Map.of("S", sMutationStore, "N", nMutationStore), nucInsertionStore,
+            Map.of("S", sInsertionStore, "N", new InsertionStore()));
+
+        scanner.putNucEntry(0, "C241T,A23403G", "C11288-", "1-54,29837");
+        scanner.putAaEntry(0, "S:D614G,N:R203K,S:N501Y", "S:1-3,N:7");
+        scanner.putNucInsertions(0, "22204:GAGCCAGAA,28263:AACA");
+        scanner.putAaInsertions(0, "S:214:EPE");
+        // The second id is skipped.
+        scanner.putNucEntry(2, "A23403G", "", "");
+        scanner.putAaEntry(2, "S:D614G", "");
+        scanner.putNucInsertions(2, "");
+        scanner.putAaInsertions(2, "");
+
+        MutationStore expectedNuc = new MutationStore(3);
+        expectedNuc.putEntry(0, List.of(MutationStore.Mutation.parse("C241T"), MutationStore.Mutation.parse("A23403G"),
+            MutationStore.Mutation.parse("C11288-")), List.of("1-54", "29837"));
+        expectedNuc.putEntry(2, List.of(MutationStore.Mutation.parse("A23403G")), List.of());
+        MutationStore expectedS = new MutationStore(3);
+        expectedS.putEntry(0, List.of(MutationStore.Mutation.parse("D614G"), MutationStore.Mutation.parse("N501Y")),
+            List.of("1-3"));
+        expectedS.putEntry(2, List.of(MutationStore.Mutation.parse("D614G")), List.of());
+
+        long[] all = Bitmaps.full(3);
+        Assertions.assertEquals(new HashSet<>(expectedNuc.countMutations(all)),
+            new HashSet<>(nucMutationStore.countMutations(all)));
+        Assertions.assertEquals(new HashSet<>(expectedS.countMutations(all)),
+            new HashSet<>(sMutationStore.countMutations(all)));
+        Assertions.assertEquals(1, nMutationStore.getNumberSequencesWithMutation((short) 203, 'K'));
+        Assertions.assertEquals(List.of(0), nucInsertionStore.find("28263:AACA"));
+        Assertions.assertEquals(List.of(0), sInsertionStore.find("214:EPE"));
+    }
+
+    @Test
+    public void testEncodedEntriesEqualTextEntries() {
+        String[][] rows = {
+            { "C241T,A23403G", "C11288-,T11289-", "1-54,29837", "S:D614G,N:R203K,S:N501Y", "S:1-3,N:7,S:5" },
+            { "", "", "", "", "" },
+            { "T22917G", "", "22000-22999", "N:R203K", "" }
+        };
+        MutationStore textNuc = new MutationStore(rows.length);
+        Map<String, MutationStore> textAa = Map.of("S", new MutationStore(rows.length),
+            "N", new MutationStore(rows.length));
+        SequenceEntryScanner textScanner = new SequenceEntryScanner(textNuc, textAa, new InsertionStore(),
+            Map.of("S", new InsertionStore(), "N", new InsertionStore()));
+        MutationStore encodedNuc = new MutationStore(rows.length);
+        Map<String, MutationStore> encodedAa = Map.of("S", new MutationStore(rows.length),
+            "N", new MutationStore(rows.length));
+        SequenceEntryScanner encodedScanner = new SequenceEntryScanner(encodedNuc, encodedAa, new InsertionStore(),
+            Map.of("S", new InsertionStore(), "N", new InsertionStore()));
+        for (int id = 0; id < rows.length; id++) {
+            String[] row = rows[id];
+            textScanner.putNucEntry(id, row[0], row[1], row[2]);
+            textScanner.putAaEntry(id, row[3], row[4]);
+            encodedScanner.putEncodedNucEntry(id, MutationEncoding.encodeNuc(row[0], row[1], row[2]));
+            encodedScanner.putEncodedAaEntry(id, MutationEncoding.encodeAa(row[3], row[4]));
+        }
+
+        long[] matched = Bitmaps.allocate(rows.length);
+        Bitmaps.set(matched, 0);
+        Bitmaps.set(matched, 2);
+        Assertions.assertEquals(new HashSet<>(textNuc.countMutations(matched)),
+            new HashSet<>(encodedNuc.countMutations(matched)));
+        for (String gene : List.of("S", "N")) {
+            Assertions.assertEquals(new HashSet<>(textAa.get(gene).countMutations(matched)),
+                new HashSet<>(encodedAa.get(gene).countMutations(matched)));
+        }
+    }
+
+    @Test
+    public void testInvalidValuesAreRejected() {
+        MutationStore nucMutationStore = new MutationStore(3);
+        SequenceEntryScanner scanner = new SequenceEntryScanner(nucMutationStore, Map.of("S", new MutationStore(3)),
+            new InsertionStore(), Map.of("S", new InsertionStore()));
+        Assertions.assertThrows(RuntimeException.class, () -> scanner.putAaEntry(0, "ORF1a:T265I", ""));
+        Assertions.assertThrows(RuntimeException.class, () -> scanner.putNucEntry(1, "C2x1T", "", ""));
+    }
+}
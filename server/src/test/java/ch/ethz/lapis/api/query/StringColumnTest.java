@@ -0,0 +1,69 @@
+package ch.ethz.lapis.api.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StringColumnTest {
+
+    @Test
+    public void testEncodeAndFilter() {
+        StringColumn.Builder builder = new StringColumn.Builder(5);
+        builder.set(0, "Switzerland");
+        builder.set(1, null);
+        builder.set(2, "Germany");
+        builder.set(3, "Switzerland");
+        builder.set(4, "switzerland");
+        StringColumn column = builder.build();
+
+        Assertions.assertEquals(5, column.size());
+        Assertions.assertEquals(4, column.getDictionarySize());
+        Assertions.assertEquals("Switzerland", column.get(3));
+        Assertions.assertNull(column.get(1));
+        Assertions.assertEquals(StringColumn.NULL_CODE, column.getCode(1));
+        Assertions.assertEquals(column.getCode(0), column.getCode(3));
+
+        Assertions.assertArrayEquals(
+            new long[] { 0b01001 },
+            column.match(column.findCodes("Switzerland"::equals))
+        );
+        long[] matched = new long[] { 0b10111 };
+        column.filter(matched, column.findCodes("Switzerland"::equalsIgnoreCase));
+        Assertions.assertArrayEquals(new long[] { 0b10001 }, matched);
+    }
+
+    @Test
+    public void testLargeDictionary() {
+        int size = 70000;
+        StringColumn.Builder builder = new StringColumn.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.set(i, "EPI_ISL_" + i);
+        }
+        StringColumn column = builder.build();
+        Assertions.assertEquals(size + 1, column.getDictionarySize());
+        Assertions.assertEquals("EPI_ISL_69999", column.get(69999));
+        Assertions.assertEquals(size, column.getCode(69999));
+    }
+
+    @Test
+    public void testBuilderOfColumnWithChanges() {
+        StringColumn.Builder builder = new StringColumn.Builder(3);
+        builder.set(0, "B.1.1.7");
+        builder.set(1, "AY.4");
+        builder.set(2, "B.1.1.7");
+        StringColumn base = builder.build();
+
+        StringColumn.Builder changedBuilder = StringColumn.Builder.of(base, 4);
+        changedBuilder.set(1, "BA.2");
+        changedBuilder.set(3, "BA.2");
+        StringColumn changed = changedBuilder.build();
+
+        Assertions.assertEquals(4, changed.size());
+        Assertions.assertEquals("B.1.1.7", changed.get(2));
+        Assertions.assertEquals("BA.2", changed.get(3));
+        // "AY.4" is no longer used and removed from the dictionary; the base column is not modified.
+        Assertions.assertEquals(3, changed.getDictionarySize());
+        Assertions.assertEquals(2, changed.count(changed.findCodes("BA.2"::equals)));
+        Assertions.assertEquals("AY.4", base.get(1));
+    }
+
+}